@@ -0,0 +1,90 @@
+package com.uptimesoftware.uptime.plugin.bench;
+
+import java.lang.invoke.MethodHandle;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.uptimesoftware.uptime.plugin.MonitorWindowsServiceCheckAdvanced.UptimeMonitorWindowsServiceCheckAdvanced;
+import com.uptimesoftware.uptime.plugin.WSCOutputParser;
+import com.uptimesoftware.uptime.plugin.WSCPluginParams;
+import com.uptimesoftware.uptime.plugin.WSCServiceFilter;
+import com.uptimesoftware.uptime.plugin.WSCServiceMatcher;
+
+/**
+ * ParseBenchmark class that measures classifying a line of WMIC output with WSCOutputParser, then splitting and
+ * filtering it with splitLineAndPutInHashMap(), one line per operation. The lines of a host are handed out in turn,
+ * the result starts over for each pass over the host.
+ * 
+ * @author uptime software
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(1)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class ParseBenchmark {
+
+	@Param({ "100", "1000", "10000" })
+	public int services;
+
+	@Param({ "WINDOWS", "LINUX" })
+	public WmicOutput.Format format;
+
+	// A plain name, a prefix and a regex, as monitors are usually set up.
+	@Param({ "Windows Update,Uptime.*,.*SQL.*" })
+	public String serviceDisplayName;
+
+	private UptimeMonitorWindowsServiceCheckAdvanced monitor;
+	private MethodHandle splitLineAndPutInHashMap;
+	private WSCServiceFilter serviceFilter;
+	private WSCPluginParams wscParams;
+	private List<String> lines;
+	private HashMap<String, String[]> result;
+	private WSCOutputParser outputParser;
+	private int index;
+
+	@Setup
+	public void setUp() {
+		monitor = PrivateMethods.newMonitor(format);
+		splitLineAndPutInHashMap = PrivateMethods.find("splitLineAndPutInHashMap", HashMap.class, CharSequence.class,
+				WSCServiceFilter.class, WSCPluginParams.class);
+		wscParams = new WSCPluginParams("bench-host", "domain", "user", "password", serviceDisplayName, "Auto", null,
+				null, null);
+		serviceFilter = new WSCServiceFilter(new WSCServiceMatcher(Arrays.asList(serviceDisplayName.split(","))),
+				wscParams);
+		lines = WmicOutput.lines(services, format);
+		result = new HashMap<String, String[]>();
+		outputParser = new WSCOutputParser("Caption,Name,StartMode,State");
+		outputParser.classify(format == WmicOutput.Format.WINDOWS ? "Node,Caption,Name,StartMode,State"
+				: "Caption,Name,StartMode,State");
+	}
+
+	@Benchmark
+	public boolean splitLineAndPutInHashMap() throws Throwable {
+		if (index == lines.size()) {
+			index = 0;
+			result.clear();
+		}
+		CharSequence line = lines.get(index++);
+		if (outputParser.classify(line) != WSCOutputParser.LineType.SERVICE) {
+			// The class markers and column names the Linux WMIC client repeats.
+			return true;
+		}
+		return (boolean) splitLineAndPutInHashMap.invokeExact(monitor, result, line, serviceFilter, wscParams);
+	}
+}
@@ -0,0 +1,60 @@
+package com.uptimesoftware.uptime.plugin.bench;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+
+import com.uptimesoftware.uptime.plugin.MonitorWindowsServiceCheckAdvanced.UptimeMonitorWindowsServiceCheckAdvanced;
+import com.uptimesoftware.uptime.plugin.WSCLineTokenizer;
+
+/**
+ * PrivateMethods class that opens the private helpers of the monitor to the benchmarks, the same way
+ * MonitorWindowsServiceCheckAdvancedTest does. Method handles are used instead of Method.invoke() so that reflection
+ * does not show up in the numbers.
+ * 
+ * @author uptime software
+ */
+class PrivateMethods {
+
+	private PrivateMethods() {
+	}
+
+	/**
+	 * Get a private method of the monitor.
+	 * 
+	 * @param name
+	 *            Name of the method.
+	 * @param parameterTypes
+	 *            Parameter types of the method.
+	 * @return Method handle, the first argument is the monitor.
+	 */
+	static MethodHandle find(String name, Class<?>... parameterTypes) {
+		try {
+			Method method = UptimeMonitorWindowsServiceCheckAdvanced.class.getDeclaredMethod(name, parameterTypes);
+			method.setAccessible(true);
+			return MethodHandles.lookup().unreflect(method);
+		} catch (ReflectiveOperationException e) {
+			throw new IllegalStateException("Monitor has no method " + name + ".", e);
+		}
+	}
+
+	/**
+	 * Make a monitor that parses the given format, whatever OS the benchmark runs on.
+	 * 
+	 * @param format
+	 *            Output format.
+	 * @return Monitor.
+	 */
+	static UptimeMonitorWindowsServiceCheckAdvanced newMonitor(WmicOutput.Format format) {
+		UptimeMonitorWindowsServiceCheckAdvanced monitor = new UptimeMonitorWindowsServiceCheckAdvanced();
+		try {
+			Field lineTokenizer = UptimeMonitorWindowsServiceCheckAdvanced.class.getDeclaredField("lineTokenizer");
+			lineTokenizer.setAccessible(true);
+			lineTokenizer.set(monitor, new WSCLineTokenizer(',', format == WmicOutput.Format.WINDOWS));
+		} catch (ReflectiveOperationException e) {
+			throw new IllegalStateException("Monitor has no lineTokenizer.", e);
+		}
+		return monitor;
+	}
+}
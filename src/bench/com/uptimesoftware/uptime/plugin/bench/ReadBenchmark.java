@@ -0,0 +1,74 @@
+package com.uptimesoftware.uptime.plugin.bench;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.uptimesoftware.uptime.plugin.WSCLineReader;
+
+/**
+ * ReadBenchmark class that measures reading the whole standard output of a wmic command into lines, with WSCLineReader
+ * and with the BufferedReader it replaced. One operation reads every line of a host.
+ * 
+ * @author uptime software
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class ReadBenchmark {
+
+	@Param({ "100", "1000", "10000" })
+	public int services;
+
+	@Param({ "WINDOWS", "LINUX" })
+	public WmicOutput.Format format;
+
+	private byte[] stdout;
+
+	@Setup
+	public void setUp() {
+		stdout = WmicOutput.bytes(services, format);
+	}
+
+	@Benchmark
+	public int lineReader() throws IOException {
+		WSCLineReader lineReader = new WSCLineReader(new ByteArrayInputStream(stdout));
+		int length = 0;
+		CharSequence line;
+		while ((line = lineReader.readLine()) != null) {
+			length += line.length();
+		}
+		return length;
+	}
+
+	@Benchmark
+	public int bufferedReader() throws IOException {
+		// The charset has to be known in advance here, the old code used the platform charset.
+		BufferedReader bufferedReader = new BufferedReader(new InputStreamReader(new ByteArrayInputStream(stdout),
+				format == WmicOutput.Format.WINDOWS ? StandardCharsets.UTF_16 : StandardCharsets.UTF_8));
+		int length = 0;
+		String line;
+		while ((line = bufferedReader.readLine()) != null) {
+			length += line.length();
+		}
+		return length;
+	}
+}
@@ -0,0 +1,84 @@
+package com.uptimesoftware.uptime.plugin.bench;
+
+import java.lang.invoke.MethodHandle;
+import java.util.HashSet;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.uptimesoftware.uptime.plugin.MonitorWindowsServiceCheckAdvanced.UptimeMonitorWindowsServiceCheckAdvanced;
+import com.uptimesoftware.uptime.plugin.WSCPluginParams;
+import com.uptimesoftware.uptime.plugin.WSCServiceMatcher;
+
+/**
+ * RegexBenchmark class that measures the regex handling: checkRegexAndAdd() and compiling a WSCServiceMatcher once
+ * per change of the service display name, and matching one display name per operation.
+ * 
+ * @author uptime software
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(1)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class RegexBenchmark {
+
+	@Param({ "1000" })
+	public int services;
+
+	@Param({ "Windows Update,Print Spooler,DHCP Client", "Uptime.*,SQL Server.*",
+			".*Update.*,Win(dows)? .*,[A-Z]+ Agent" })
+	public String serviceDisplayName;
+
+	private UptimeMonitorWindowsServiceCheckAdvanced monitor;
+	private MethodHandle checkRegexAndAdd;
+	private WSCPluginParams wscParams;
+	private WSCServiceMatcher serviceMatcher;
+	private String[] displayNames;
+	private int index;
+
+	@Setup
+	public void setUp() {
+		monitor = PrivateMethods.newMonitor(WmicOutput.Format.LINUX);
+		checkRegexAndAdd = PrivateMethods.find("checkRegexAndAdd", HashSet.class, HashSet.class,
+				WSCPluginParams.class);
+		wscParams = new WSCPluginParams("bench-host", "domain", "user", "password", serviceDisplayName, null, null,
+				null, null);
+		HashSet<String> regexes = new HashSet<String>();
+		for (String regex : serviceDisplayName.split(",")) {
+			regexes.add(regex);
+		}
+		serviceMatcher = new WSCServiceMatcher(regexes);
+		displayNames = new String[services];
+		for (int i = 0; i < services; i++) {
+			displayNames[i] = WmicOutput.displayName(i);
+		}
+	}
+
+	@Benchmark
+	public WSCServiceMatcher checkRegexAndCompile() throws Throwable {
+		HashSet<String> literals = new HashSet<String>();
+		HashSet<String> regexes = new HashSet<String>();
+		boolean valid = (boolean) checkRegexAndAdd.invokeExact(monitor, literals, regexes, wscParams);
+		return valid ? new WSCServiceMatcher(literals, regexes) : null;
+	}
+
+	@Benchmark
+	public boolean matches() {
+		if (index == displayNames.length) {
+			index = 0;
+		}
+		return serviceMatcher.matches(displayNames[index++]);
+	}
+}
@@ -0,0 +1,117 @@
+package com.uptimesoftware.uptime.plugin.bench;
+
+import java.util.HashMap;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.uptimesoftware.uptime.plugin.WSCServiceRenderer;
+
+/**
+ * RenderBenchmark class that measures WSCServiceRenderer, the matchedServices output of monitor(). Each invocation
+ * renders all matched services, scores are per service line so that the sizes compare with the other benchmarks.
+ * renderN benchmarks alternate between two results that differ in one service, so the output is always built again.
+ * renderUnchanged1000 renders the same result, the output of the previous poll is re-used.
+ * 
+ * @author uptime software
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(1)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class RenderBenchmark {
+
+	@Benchmark
+	@OperationsPerInvocation(100)
+	public String render100(Services100 state) {
+		return state.render();
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(1000)
+	public String render1000(Services1000 state) {
+		return state.render();
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(10000)
+	public String render10000(Services10000 state) {
+		return state.render();
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(1000)
+	public String renderUnchanged1000(Services1000 state) {
+		return state.renderUnchanged();
+	}
+
+	/**
+	 * Result of a monitor that matched the given number of services.
+	 */
+	public abstract static class MatchedServices {
+
+		private final int services;
+		private WSCServiceRenderer renderer;
+		private HashMap<String, String[]> result;
+		private HashMap<String, String[]> changedResult;
+		private boolean changed;
+
+		MatchedServices(int services) {
+			this.services = services;
+		}
+
+		@Setup
+		public void setUp() {
+			// Large enough for the whole list, the limits would cut the 10,000 services otherwise.
+			renderer = new WSCServiceRenderer();
+			renderer.setLimits(services, Integer.MAX_VALUE);
+			result = new HashMap<String, String[]>();
+			for (int i = 0; i < services; i++) {
+				result.put(WmicOutput.displayName(i), new String[] { "Auto", i % 2 == 0 ? "Running" : "Stopped" });
+			}
+			changedResult = new HashMap<String, String[]>(result);
+			changedResult.put(WmicOutput.displayName(0), new String[] { "Auto", "Stopped" });
+		}
+
+		String render() {
+			changed = !changed;
+			return renderer.render(changed ? changedResult : result);
+		}
+
+		String renderUnchanged() {
+			return renderer.render(result);
+		}
+	}
+
+	@State(Scope.Thread)
+	public static class Services100 extends MatchedServices {
+		public Services100() {
+			super(100);
+		}
+	}
+
+	@State(Scope.Thread)
+	public static class Services1000 extends MatchedServices {
+		public Services1000() {
+			super(1000);
+		}
+	}
+
+	@State(Scope.Thread)
+	public static class Services10000 extends MatchedServices {
+		public Services10000() {
+			super(10000);
+		}
+	}
+}
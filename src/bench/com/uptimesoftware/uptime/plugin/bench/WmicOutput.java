@@ -0,0 +1,101 @@
+package com.uptimesoftware.uptime.plugin.bench;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * WmicOutput class that generates synthetic WMIC output of a host with the given number of services.
+ * 
+ * @author uptime software
+ */
+public class WmicOutput {
+
+	/**
+	 * Output format of the WMIC client.
+	 */
+	public enum Format {
+		// wmic ... GET Caption,Name,StartMode,State /format:csv
+		WINDOWS,
+		// wmic ... "select Caption,Name,StartMode,State from Win32_Service" --delimiter=,
+		LINUX
+	}
+
+	private static final String[] DISPLAY_NAMES = { "Windows Update", "Print Spooler", "DHCP Client",
+			"Uptime Agent", "SQL Server (MSSQLSERVER)", "Remote Desktop Services UserMode Port Redirector",
+			"Windows Management Instrumentation", "Background Intelligent Transfer Service", "Random, Display, Awesome" };
+	private static final String[] STARTUP_TYPES = { "Auto", "Manual", "Disabled" };
+	private static final String[] STATUSES = { "Running", "Stopped", "Running", "Paused" };
+
+	private static final String NODE = "BENCH-HOST";
+	private static final String COLUMN_NAMES = "Caption,Name,StartMode,State";
+	// The Linux WMIC client repeats the class and the column names every now and then.
+	private static final int LINUX_REPEAT_HEADER = 100;
+
+	private WmicOutput() {
+	}
+
+	/**
+	 * Get the lines after the column names, as handed to WSCOutputParser.
+	 * 
+	 * @param services
+	 *            Number of services of the host.
+	 * @param format
+	 *            Output format.
+	 * @return Lines of WMIC output.
+	 */
+	public static List<String> lines(int services, Format format) {
+		List<String> lines = new ArrayList<String>(services + services / LINUX_REPEAT_HEADER * 2);
+		for (int i = 0; i < services; i++) {
+			if (format == Format.LINUX && i > 0 && i % LINUX_REPEAT_HEADER == 0) {
+				lines.add("CLASS: Win32_Service");
+				lines.add(COLUMN_NAMES);
+			}
+			lines.add((format == Format.WINDOWS ? NODE + "," : "") + displayName(i) + ",svc" + i + ","
+					+ STARTUP_TYPES[i % STARTUP_TYPES.length] + "," + STATUSES[i % STATUSES.length]);
+		}
+		return lines;
+	}
+
+	/**
+	 * Get the whole output as the process writes it : UTF-16LE with a byte order mark and "\r\r\n" line endings on
+	 * Windows, UTF-8 with "\n" on Linux.
+	 * 
+	 * @param services
+	 *            Number of services of the host.
+	 * @param format
+	 *            Output format.
+	 * @return Bytes of standard output.
+	 */
+	public static byte[] bytes(int services, Format format) {
+		String lineEnd = format == Format.WINDOWS ? "\r\r\n" : "\n";
+		StringBuilder output = new StringBuilder();
+		output.append(format == Format.WINDOWS ? lineEnd + "Node," : "CLASS: Win32_Service" + lineEnd);
+		output.append(COLUMN_NAMES).append(lineEnd);
+		for (String line : lines(services, format)) {
+			output.append(line).append(lineEnd);
+		}
+		if (format == Format.LINUX) {
+			return output.toString().getBytes(StandardCharsets.UTF_8);
+		}
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream(output.length() * 2 + 2);
+		bytes.write(0xff);
+		bytes.write(0xfe);
+		byte[] text = output.toString().getBytes(StandardCharsets.UTF_16LE);
+		bytes.write(text, 0, text.length);
+		return bytes.toByteArray();
+	}
+
+	/**
+	 * Get the display name of the given service.
+	 * 
+	 * @param service
+	 *            Index of the service.
+	 * @return Display name, unique per index.
+	 */
+	public static String displayName(int service) {
+		String displayName = DISPLAY_NAMES[service % DISPLAY_NAMES.length];
+		return service < DISPLAY_NAMES.length ? displayName : displayName + " " + service;
+	}
+}
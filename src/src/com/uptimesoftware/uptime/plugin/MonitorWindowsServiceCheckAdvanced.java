@@ -1,11 +1,17 @@
 package com.uptimesoftware.uptime.plugin;
 
-import java.io.BufferedReader;
 import java.io.IOException;
-import java.io.InputStreamReader;
+import java.io.InputStream;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
 import java.util.regex.Pattern;
 import java.util.regex.PatternSyntaxException;
 
@@ -19,6 +25,7 @@ import com.uptimesoftware.uptime.plugin.api.Plugin;
 import com.uptimesoftware.uptime.plugin.api.PluginMonitor;
 import com.uptimesoftware.uptime.plugin.monitor.MonitorState;
 import com.uptimesoftware.uptime.plugin.monitor.Parameters;
+import com.uptimesoftware.uptime.plugin.monitor.PluginMonitorVariable;
 
 /**
  * Advanced Windows Service Check Monitor
@@ -64,6 +71,43 @@ public class MonitorWindowsServiceCheckAdvanced extends Plugin {
 		private static final String SERVICE_STATUS_EXCLUDE = "serviceStatusExclude";
 		private static final String MATCHED_SERVICES = "matchedServices";
 		private static final String NUMBER_OF_MATCHES = "numberOfMatches";
+		// [Advanced Input]
+		private static final String SNAPSHOT_MAX_AGE = "snapshotMaxAge";
+		private static final String TIMEOUT = "timeout";
+		private static final String PRIORITY = "priority";
+		private static final String MATCHED_SERVICES_MAX_LINES = "matchedServicesMaxLines";
+		private static final String MATCHED_SERVICES_MAX_CHARACTERS = "matchedServicesMaxCharacters";
+		private static final String NUMBER_OF_MATCHES_CAP = "numberOfMatchesCap";
+		private static final String MAX_REFRESH_INTERVAL = "maxRefreshInterval";
+		private static final String FLAP_WINDOW = "flapWindow";
+		private static final String PROCESS_METRICS = "processMetrics";
+		// [Advanced Output], the time of each phase is output too (see WSCPhaseTimer).
+		private static final String SERVICES_ADDED = "servicesAdded";
+		private static final String SERVICES_REMOVED = "servicesRemoved";
+		private static final String STARTUP_TYPE_CHANGES = "startupTypeChanges";
+		private static final String STATE_TRANSITIONS = "stateTransitions";
+		private static final String SERVICE_CHANGES = "serviceChanges";
+		private static final String RESULT_AGE = "resultAge";
+		private static final String FLAPPING_SERVICES = "flappingServices";
+		private static final String FLAPPING_SERVICE_LIST = "flappingServiceList";
+		private static final String WORST_AVAILABILITY = "worstAvailability";
+		private static final String WINDOW_TRANSITIONS = "windowTransitions";
+		private static final String SERVICE_WORKING_SET = "serviceWorkingSet";
+		private static final String SERVICE_CPU_USAGE = "serviceCpuUsage";
+		private static final String TOTAL_WORKING_SET = "totalWorkingSet";
+		private static final String TOTAL_CPU_USAGE = "totalCpuUsage";
+
+		// Seconds a wmic command can run if timeout is not set.
+		private static final int DEFAULT_TIMEOUT = 60;
+		// Checks that take longer are logged at INFO, set with the system property wsc.slowCheck in seconds.
+		private static final long SLOW_CHECK_MILLIS = TimeUnit.SECONDS
+				.toMillis(Integer.getInteger("wsc.slowCheck", 10));
+		// WMIC output of a few thousand services is far below this.
+		private static final long MAX_OUTPUT_BYTES = 8 * 1024 * 1024;
+
+		private static final String AUTHENTICATION_FAILED = "Authentication failed";
+
+		private static final String YES = "Yes";
 
 		private static final String AUTOMATIC = "Automatic";
 		private static final String AUTO = "Auto";
@@ -73,17 +117,59 @@ public class MonitorWindowsServiceCheckAdvanced extends Plugin {
 		private static final String DISPLAY_NAME = "Caption";
 		// SERVICE_NAME is selected but it's not used in output because WMIC client on Linux returns Name always.
 		private static final String SERVICE_NAME = "Name";
+		private static final String PROCESS_ID = "ProcessId";
 		private static final String STARTUP_MODE = "StartMode";
 		private static final String STATE = "State";
 		private static final String WMIC_TOKENS = DISPLAY_NAME + COMMA_DELIMITER + SERVICE_NAME + COMMA_DELIMITER
 				+ STARTUP_MODE + COMMA_DELIMITER + STATE;
-
-		private static final int SERVICE_STARTUPTYPE_INDEX = 0;
-		private static final int SERVICE_STATUS_INDEX = 1;
+		// With processMetrics, in the order WMIC outputs the columns.
+		private static final String WMIC_TOKENS_WITH_PROCESS_ID = DISPLAY_NAME + COMMA_DELIMITER + SERVICE_NAME
+				+ COMMA_DELIMITER + PROCESS_ID + COMMA_DELIMITER + STARTUP_MODE + COMMA_DELIMITER + STATE;
 
 		// WSCPluginParams object will store all input params from Up.time
 		private WSCPluginParams wscParams;
 
+		// On Windows, we expect to have Node,Caption,Name,StartMode,State. On Linux, we expect to have
+		// Caption,Name,StartMode,State.
+		private final WSCLineTokenizer lineTokenizer = new WSCLineTokenizer(COMMA_DELIMITER.charAt(0),
+				SystemUtils.IS_OS_WINDOWS);
+		// With processMetrics, ProcessId is between Name and StartMode.
+		private final WSCLineTokenizer processIdTokenizer = new WSCLineTokenizer(COMMA_DELIMITER.charAt(0),
+				SystemUtils.IS_OS_WINDOWS, true);
+
+		// Validated inputs, compiled filters and wmic command, shared with the monitors that have the same inputs.
+		private WSCCheckPlan plan;
+
+		// Time of each phase of the current check.
+		private final WSCPhaseTimer phaseTimer = new WSCPhaseTimer();
+
+		// Result of the previous poll and the filters it was made with, to output what changed since then.
+		private HashMap<String, String[]> previousResult;
+		private String previousFilters;
+
+		// How the wmic command of the current check ended for the host, see WSCCircuitBreaker.
+		private WSCCircuitBreaker.Outcome wmicOutcome;
+
+		// Decides when the rest of the output of the current wmic command is not needed, null if it is read to the end.
+		private WSCEarlyStop earlyStop;
+
+		// With maxRefreshInterval (see WSCRefreshScheduler) : when the previous result was refreshed, from when it must
+		// be refreshed again, and the refresh interval of this monitor. Not scheduled after a capped result.
+		private boolean refreshScheduled;
+		private long lastRefreshNanos;
+		private long nextRefreshNanos;
+		private WSCRefreshScheduler.Schedule refreshSchedule = new WSCRefreshScheduler.Schedule();
+
+		// Status of the matched services over the last polls, for availability and flapping.
+		private final WSCFlapDetector flapDetector = new WSCFlapDetector();
+
+		// With processMetrics : process ID of each matched service of the current check, and the processes.
+		private HashMap<String, Long> processIds;
+		private final WSCProcessMetrics processMetrics = new WSCProcessMetrics(COMMA_DELIMITER.charAt(0));
+
+		// Builds matchedServices, re-uses the previous output while the matched services do not change.
+		private final WSCServiceRenderer serviceRenderer = new WSCServiceRenderer();
+
 		// See definition in .xml file for plugin. Each plugin has different number of input/output parameters.
 		// [Input]
 		String hostName;
@@ -95,6 +181,16 @@ public class MonitorWindowsServiceCheckAdvanced extends Plugin {
 		String startupTypeExclude;
 		String serviceStatusInclude;
 		String serviceStatusExclude;
+		// [Advanced Input]
+		int snapshotMaxAge; // Seconds a WMIC snapshot of the host can be shared with other monitors, 0 to disable.
+		int timeout; // Seconds a WMIC command can run before it is killed, 0 for DEFAULT_TIMEOUT.
+		String priority; // Critical, Normal or Low, when WMIC commands wait for a slot.
+		int matchedServicesMaxLines; // 0 for WSCServiceRenderer.DEFAULT_MAX_LINES.
+		int matchedServicesMaxCharacters; // 0 for WSCServiceRenderer.DEFAULT_MAX_CHARACTERS.
+		int numberOfMatchesCap; // Stop reading WMIC output once this many services matched, 0 to read all of it.
+		int maxRefreshInterval; // Maximum seconds to output the previous result of a stable host, 0 to disable.
+		int flapWindow; // Polls of availability and flapping, 0 for WSCFlapDetector.DEFAULT_WINDOW.
+		String processMetricsEnabled; // Yes to output the working set and CPU of the processes of the services.
 
 		/**
 		 * The setParameters function will accept a Parameters object containing the values filled into the monitor's
@@ -116,9 +212,27 @@ public class MonitorWindowsServiceCheckAdvanced extends Plugin {
 			startupTypeExclude = params.getString(STARTUP_TYPE_EXCLUDE);
 			serviceStatusInclude = params.getString(SERVICE_STATUS_INCLUDE);
 			serviceStatusExclude = params.getString(SERVICE_STATUS_EXCLUDE);
+			// [Advanced Input]
+			snapshotMaxAge = params.getInt(SNAPSHOT_MAX_AGE);
+			timeout = params.getInt(TIMEOUT);
+			priority = params.getString(PRIORITY);
+			matchedServicesMaxLines = params.getInt(MATCHED_SERVICES_MAX_LINES);
+			matchedServicesMaxCharacters = params.getInt(MATCHED_SERVICES_MAX_CHARACTERS);
+			numberOfMatchesCap = params.getInt(NUMBER_OF_MATCHES_CAP);
+			maxRefreshInterval = params.getInt(MAX_REFRESH_INTERVAL);
+			flapWindow = params.getInt(FLAP_WINDOW);
+			processMetricsEnabled = params.getString(PROCESS_METRICS);
 
 			wscParams = new WSCPluginParams(hostName, domainName, adminName, password, serviceDisplayName,
 					startupTypeInclude, startupTypeExclude, serviceStatusInclude, serviceStatusExclude);
+			wscParams.setSnapshotMaxAge(snapshotMaxAge);
+			wscParams.setTimeout(timeout);
+			wscParams.setPriority(WSCProcessGovernor.Priority.of(priority));
+			wscParams.setMatchesCap(numberOfMatchesCap);
+			wscParams.setMaxRefreshInterval(maxRefreshInterval);
+			wscParams.setProcessMetrics(YES.equalsIgnoreCase(processMetricsEnabled));
+			serviceRenderer.setLimits(matchedServicesMaxLines, matchedServicesMaxCharacters);
+			flapDetector.setWindow(flapWindow);
 
 			// If startup type is "Automatic", convert it to "Auto" because WMI only outputs "Auto".
 			if (wscParams.isStartupTypeIncluded() && wscParams.getStartupTypeInclude() != null
@@ -128,6 +242,9 @@ public class MonitorWindowsServiceCheckAdvanced extends Plugin {
 					&& wscParams.getStartupTypeExclude().equals(AUTOMATIC)) {
 				wscParams.setStartupTypeExclude(AUTO);
 			}
+
+			LOGGER.debug("Make the check plan, polls re-use it.");
+			plan = planOf(wscParams);
 		}
 
 		/**
@@ -136,46 +253,286 @@ public class MonitorWindowsServiceCheckAdvanced extends Plugin {
 		 */
 		@Override
 		public void monitor() {
-			LOGGER.debug("Error handling : Check either Admin name or password is missing");
-			if (!checkAdminOrPasswordMissing(wscParams)) {
-				return;
+			phaseTimer.reset();
+			long startNanos = System.nanoTime();
+			checkServices();
+			// One line per check, to find out which phase makes a check slow. Only checks that failed or were slow are
+			// logged at INFO, so that a large installation does not flood the log.
+			long totalMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+			Object[] arguments = new Object[] { hostName, getState(), totalMillis, phaseTimer };
+			if (getState() != MonitorState.OK || totalMillis > SLOW_CHECK_MILLIS) {
+				LOGGER.info("Checked host={} state={} totalTime={} {}", arguments);
+			} else {
+				LOGGER.debug("Checked host={} state={} totalTime={} {}", arguments);
 			}
+		}
 
-			LOGGER.debug("Error handling : A user cannot select both Include and Exclude in a same category.");
-			if (!checkIncludeExclude(wscParams)) {
-				return;
+		/**
+		 * Private helper method with the main functionality of monitor(). Sets the monitor's state and result message.
+		 */
+		private void checkServices() {
+			long phaseStartNanos = System.nanoTime();
+			if (!plan.isValid() || !isWmicClientCurrent(plan)) {
+				// Inputs that were not valid are validated again, the WMIC client may have been installed meanwhile. A
+				// plan made for a WMIC client that was replaced since is made again for the new one.
+				plan = planOf(wscParams);
+				if (!plan.isValid()) {
+					setStateAndMessage(MonitorState.UNKNOWN, plan.getErrorMessage());
+					return;
+				}
 			}
+			WSCPluginParams wscParams = plan.getParams();
+			String filters = WSCCheckPlan.filtersOf(wscParams);
+			phaseTimer.addSince(WSCPhaseTimer.Phase.VALIDATE, phaseStartNanos);
 
-			LOGGER.debug("Error handling : Check validity of regex syntax.");
-			HashSet<String> regexes = new HashSet<String>();
-			if (!checkRegexAndAdd(regexes, wscParams)) {
-				return;
+			if (wscParams.isRefreshAdaptive()) {
+				long nowNanos = System.nanoTime();
+				if (isPreviousResultCurrent(wscParams, filters, nowNanos)) {
+					LOGGER.debug("The host is stable, output the previous result.");
+					outputResult(previousResult, new WSCServiceDiff(previousResult, previousResult),
+							Math.max(1, TimeUnit.NANOSECONDS.toSeconds(nowNanos - lastRefreshNanos)), nowNanos);
+					return;
+				}
 			}
 
-			LOGGER.debug("Step 2 : Check OS type and build args of ProcessBuilder.");
-			ArrayList<String> args = new ArrayList<String>();
-			if (!buildArgsOfProcessBuilder(args, wscParams)) {
+			LOGGER.debug("Fail at once if the host keeps failing.");
+			WSCCircuitBreaker breaker = WSCCircuitBreaker.getInstance();
+			String breakerKey = WSCServiceSnapshotCache.keyOf(wscParams);
+			String breakerMessage = breaker.admit(breakerKey, System.nanoTime());
+			if (breakerMessage != null) {
+				setStateAndMessage(MonitorState.UNKNOWN, breakerMessage);
 				return;
 			}
 
 			LOGGER.debug("Step 3 : Execute WMIC command");
 			HashMap<String, String[]> result = new HashMap<String, String[]>();
-			if (!execWmicCommand(result, args, regexes, wscParams)) {
+			processIds = wscParams.isProcessMetrics() ? new HashMap<String, Long>() : null;
+			refreshScheduled = false;
+			wmicOutcome = WSCCircuitBreaker.Outcome.OTHER;
+			long wmicStartNanos = System.nanoTime();
+			boolean executed = execWmicCommand(result, plan.getWmicCommand(), plan.getServiceFilter(), wscParams);
+			// A shared snapshot that was not loaded by this check still shows that the host answered.
+			breakerMessage = breaker.record(breakerKey, executed ? WSCCircuitBreaker.Outcome.SUCCESS : wmicOutcome,
+					executed ? null : getMessage(), System.nanoTime());
+			if (!executed) {
+				if (breakerMessage != null) {
+					String errorMessage = getMessage();
+					setStateAndMessage(MonitorState.UNKNOWN, errorMessage + (errorMessage.endsWith(".") ? " " : ". ")
+							+ breakerMessage);
+				}
 				return;
 			}
 
-			LOGGER.debug("Output the filtered list of services.");
-			StringBuilder theList = new StringBuilder();
-			for (String key : result.keySet()) {
-				theList.append(System.lineSeparator());
-				theList.append(key + " / Startup Type : " + result.get(key)[SERVICE_STARTUPTYPE_INDEX] + " / Status : "
-						+ result.get(key)[SERVICE_STATUS_INDEX]);
+			String processMessage = null;
+			if (wscParams.isProcessMetrics()) {
+				LOGGER.debug("Query the processes of the matched services.");
+				processMessage = queryProcesses(result, wscParams, wmicStartNanos);
+			}
+
+			phaseStartNanos = System.nanoTime();
+			recordHistory(wscParams, result);
+
+			LOGGER.debug("Compare the filtered list of services with the previous poll.");
+			boolean capped = earlyStop != null && earlyStop.isCapped();
+			boolean comparable = previousResult != null && filters.equals(previousFilters) && !capped;
+			// The first poll, or the first after the filters changed, is the baseline and has no changes. A capped
+			// result misses services, it is never compared.
+			WSCServiceDiff diff = new WSCServiceDiff(comparable ? previousResult : result, result);
+			if (!capped) {
+				if (!filters.equals(previousFilters)) {
+					flapDetector.clear();
+					refreshSchedule = new WSCRefreshScheduler.Schedule();
+				}
+				flapDetector.update(result);
+			}
+
+			previousResult = capped ? null : result;
+			previousFilters = filters;
+			if (wscParams.isRefreshAdaptive() && !capped) {
+				scheduleNextRefresh(wscParams, !diff.isEmpty(), phaseStartNanos);
 			}
-			addVariable(MATCHED_SERVICES, theList.toString().trim());
+
+			if (wscParams.isProcessMetrics() && processMessage == null) {
+				outputProcessMetrics(result);
+			}
+			outputResult(result, diff, 0, phaseStartNanos);
+			if (processMessage != null) {
+				// The services were checked, only the process outputs are missing.
+				setStateAndMessage(MonitorState.OK, getMessage() + " Process metrics are not available : "
+						+ processMessage);
+			}
+		}
+
+		/**
+		 * Private helper method to output the matched services, what changed since the previous poll and the time of
+		 * each phase. Sets the monitor state to OK.
+		 * 
+		 * @param result
+		 *            Matched services.
+		 * @param diff
+		 *            Changes since the previous poll.
+		 * @param resultAge
+		 *            Seconds since the result was refreshed, at least 1. 0 if it was refreshed by this poll.
+		 * @param phaseStartNanos
+		 *            System.nanoTime() when the render phase started.
+		 */
+		private void outputResult(HashMap<String, String[]> result, WSCServiceDiff diff, long resultAge,
+				long phaseStartNanos) {
+			LOGGER.debug("Output the filtered list of services.");
+			addVariable(MATCHED_SERVICES, serviceRenderer.render(result));
 			addVariable(NUMBER_OF_MATCHES, result.size());
+			addVariable(SERVICES_ADDED, diff.getAdded().size());
+			addVariable(SERVICES_REMOVED, diff.getRemoved().size());
+			addVariable(STARTUP_TYPE_CHANGES, diff.getStartupTypeChanges().size());
+			addVariable(STATE_TRANSITIONS, diff.getStateTransitions().size());
+			addVariable(SERVICE_CHANGES, diff.getChanges());
+			addVariable(RESULT_AGE, resultAge);
+			List<String> flapping = flapDetector.getFlapping();
+			addVariable(FLAPPING_SERVICES, flapping.size());
+			List<String> flappingNames = new ArrayList<String>(flapping.size());
+			for (String service : flapping) {
+				flappingNames.add(WSCServiceRenderer.labelOf(service, result.get(service)));
+			}
+			Collections.sort(flappingNames);
+			StringBuilder flappingList = new StringBuilder();
+			for (String service : flappingNames) {
+				if (flappingList.length() > 0) {
+					flappingList.append(System.lineSeparator());
+				}
+				flappingList.append(service);
+			}
+			addVariable(FLAPPING_SERVICE_LIST, flappingList.toString());
+			addVariable(WORST_AVAILABILITY, flapDetector.getWorstAvailability());
+			addVariable(WINDOW_TRANSITIONS, flapDetector.getTransitions());
+			phaseTimer.addSince(WSCPhaseTimer.Phase.RENDER, phaseStartNanos);
+			for (WSCPhaseTimer.Phase phase : WSCPhaseTimer.Phase.values()) {
+				addVariable(phase.getVariableName(), phaseTimer.getMillis(phase));
+			}
 
 			LOGGER.debug("Monitor ran successfully. Set monitor state to OK.");
-			setStateAndMessage(MonitorState.OK, "Monitor ran successfully.");
+			setStateAndMessage(MonitorState.OK, resultAge > 0 ? "Monitor ran successfully. Services as of " + resultAge
+					+ " seconds ago." : "Monitor ran successfully.");
+		}
+
+		/**
+		 * Private helper method to append the states of the matched services to the history, if it is enabled (see
+		 * WSCHistoryStore). Only the states that changed are written.
+		 * 
+		 * @param wscParams
+		 *            An object that holds all input params from Up.time.
+		 * @param result
+		 *            Matched services.
+		 */
+		private void recordHistory(WSCPluginParams wscParams, HashMap<String, String[]> result) {
+			WSCHistoryStore historyStore = WSCHistoryStore.getInstance();
+			if (historyStore == null) {
+				return;
+			}
+			long timeMillis = System.currentTimeMillis();
+			try {
+				for (Map.Entry<String, String[]> service : result.entrySet()) {
+					String[] values = service.getValue();
+					historyStore.append(wscParams.getHostName(), values[WSCStringPool.DISPLAY_NAME_INDEX],
+							WSCStartupType.of(values[WSCStringPool.STARTUP_TYPE_INDEX]),
+							WSCServiceStatus.of(values[WSCStringPool.STATUS_INDEX]), timeMillis);
+				}
+			} catch (IOException e) {
+				LOGGER.error("Error occurred while writing the history of service states.", e);
+			}
+		}
+
+		/**
+		 * Private helper method to check if the previous result can be output instead of running WMIC.
+		 * 
+		 * @param wscParams
+		 *            An object that holds all input params from Up.time.
+		 * @param filters
+		 *            Filters of this poll, see WSCCheckPlan.filtersOf().
+		 * @param nowNanos
+		 *            System.nanoTime() of this poll.
+		 * @return True if the refresh deadline did not pass and the host had no changes since the previous result,
+		 *         false otherwise.
+		 */
+		private boolean isPreviousResultCurrent(WSCPluginParams wscParams, String filters, long nowNanos) {
+			long changeCount = WSCRefreshScheduler.getInstance().getChangeCount(wscParams.getHostName());
+			return refreshScheduled && previousResult != null && filters.equals(previousFilters)
+					&& nowNanos - nextRefreshNanos < 0 && changeCount == refreshSchedule.getChangeCount();
+		}
+
+		/**
+		 * Private helper method to schedule the next refresh after WMIC ran.
+		 * 
+		 * @param wscParams
+		 *            An object that holds all input params from Up.time.
+		 * @param changed
+		 *            True if services changed since the previous poll.
+		 * @param nowNanos
+		 *            System.nanoTime() of the refresh.
+		 */
+		private void scheduleNextRefresh(WSCPluginParams wscParams, boolean changed, long nowNanos) {
+			// The first deadline gets a random offset, the first poll itself is not delayed.
+			nextRefreshNanos = WSCRefreshScheduler.getInstance().refreshed(wscParams.getHostName(), refreshSchedule,
+					changed, TimeUnit.SECONDS.toMillis(wscParams.getMaxRefreshInterval()), nowNanos);
+			lastRefreshNanos = nowNanos;
+			refreshScheduled = true;
+		}
+
+		/**
+		 * Private helper method to get the check plan of the given inputs, from WSCCheckPlanCache or by validating
+		 * them. A validation error sets the monitor's state and is kept in a plan that is not valid.
+		 * 
+		 * @param wscParams
+		 *            An object that holds all input params from Up.time.
+		 * @return Check plan, valid or not.
+		 */
+		private WSCCheckPlan planOf(WSCPluginParams wscParams) {
+			WSCWmicClient wmicClient = SystemUtils.IS_OS_LINUX ? WSCWmicClient.getInstance() : null;
+			String fingerprint = WSCCheckPlan.fingerprintOf(wscParams, wmicClient);
+			WSCCheckPlan cachedPlan = WSCCheckPlanCache.getInstance().get(fingerprint);
+			if (cachedPlan != null) {
+				return cachedPlan;
+			}
+
+			LOGGER.debug("Error handling : Check either Admin name or password is missing");
+			if (!checkAdminOrPasswordMissing(wscParams)) {
+				return WSCCheckPlan.failed(getMessage());
+			}
+
+			LOGGER.debug("Error handling : A user cannot select both Include and Exclude in a same category.");
+			if (!checkIncludeExclude(wscParams)) {
+				return WSCCheckPlan.failed(getMessage());
+			}
+
+			LOGGER.debug("Error handling : Check validity of regex syntax.");
+			HashSet<String> literals = new HashSet<String>();
+			HashSet<String> regexes = new HashSet<String>();
+			if (!checkRegexAndAdd(literals, regexes, wscParams)) {
+				return WSCCheckPlan.failed(getMessage());
+			}
+
+			LOGGER.debug("Step 2 : Check OS type and build args of ProcessBuilder.");
+			ArrayList<String> args = new ArrayList<String>();
+			if (!buildArgsOfProcessBuilder(args, wscParams)) {
+				return WSCCheckPlan.failed(getMessage());
+			}
+
+			WSCCheckPlan newPlan = new WSCCheckPlan(fingerprint, wscParams, new WSCServiceFilter(new WSCServiceMatcher(
+					literals, regexes), wscParams), args, wmicClient);
+			WSCCheckPlanCache.getInstance().put(newPlan);
+			return newPlan;
+		}
+
+		/**
+		 * Private helper method to check if the WMIC client of a plan is still the one on the monitoring station.
+		 * WSCWmicClient probes the binary again if its path or modification time changed.
+		 * 
+		 * @param plan
+		 *            Valid check plan.
+		 * @return True if the plan does not use the WMIC client (Windows) or its client is the current one, false
+		 *         otherwise.
+		 */
+		private boolean isWmicClientCurrent(WSCCheckPlan plan) {
+			return plan.getWmicClient() == null || plan.getWmicClient() == WSCWmicClient.getInstance();
 		}
 
 		/**
@@ -242,54 +599,50 @@ public class MonitorWindowsServiceCheckAdvanced extends Plugin {
 		 */
 		private boolean buildArgsOfProcessBuilder(ArrayList<String> args, WSCPluginParams wscParams) {
 
-			String hostName = wscParams.getHostName();
-			String domainName = wscParams.getDomainName();
-			String userName = wscParams.getUserName();
-			String password = wscParams.getPassword();
 			boolean isItLocalhost = wscParams.isItLocalhost();
+			// A shared snapshot has to contain every service, do not push the filters of this monitor down to WMI.
+			String whereClause = wscParams.isSnapshotShared() ? null : WSCQueryPlanner.whereClause(wscParams);
+			String wmicTokens = wscParams.isProcessMetrics() ? WMIC_TOKENS_WITH_PROCESS_ID : WMIC_TOKENS;
 
 			if (SystemUtils.IS_OS_WINDOWS) {
-				LOGGER.debug("[Windows] Set a new admin name if domain is entered");
-				userName = domainName != null ? domainName + "\\" + userName : userName;
 				// Windows WMIC : wmic /node:<hostname> /user:<username> /password:<password> Service GET
 				// Caption,Name,StartMode,State.
-				if (isItLocalhost) {
-					args.add("wmic");
-					args.add("/node:\"" + hostName + "\"");
-					args.add("Service");
-					args.add("GET");
-					args.add(WMIC_TOKENS);
-					args.add("/format:csv");
-				} else {
-					args.add("wmic");
-					args.add("/node:\"" + hostName + "\"");
-					args.add("/user:" + userName);
-					args.add("/password:" + password);
-					args.add("Service");
-					args.add("GET");
-					args.add(WMIC_TOKENS);
-					args.add("/format:csv");
+				addConnectionArgs(args, "wmic", wscParams);
+				args.add("Service");
+				if (whereClause != null) {
+					// wmic Service WHERE "(<WQL>)" GET ...
+					args.add("WHERE");
+					args.add("(" + whereClause + ")");
 				}
+				args.add("GET");
+				args.add(wmicTokens);
+				args.add("/format:csv");
 			} else if (SystemUtils.IS_OS_LINUX) {
 				LOGGER.debug("[Linux] Check if a plugin is trying to run against localhost and WMI Client is installed.");
 				if (isItLocalhost) {
 					setStateAndMessage(MonitorState.UNKNOWN, "The localhost is Linux OS, Choose remote Windows host.");
 					return false;
-				} else if (!isWmicClientInstalled()) {
+				}
+				WSCWmicClient wmicClient = WSCWmicClient.getInstance();
+				if (wmicClient == null) {
 					setStateAndMessage(MonitorState.UNKNOWN,
 							"WMIC Client is not installed on the Linux monitoring station.");
 					return false;
+				} else if (!wmicClient.isProbed()) {
+					setStateAndMessage(MonitorState.UNKNOWN, "WMIC Client " + wmicClient.getPath()
+							+ " could not be probed, it is probed again on the next check.");
+					return false;
+				} else if (!wmicClient.isDelimiterSupported()) {
+					setStateAndMessage(MonitorState.UNKNOWN, "WMIC Client " + wmicClient.getPath()
+							+ " does not support --delimiter option.");
+					return false;
 				}
-				LOGGER.debug("[Linux] Set a new admin name if domain is entered");
-				userName = domainName != null ? domainName + "/" + userName : userName;
 				// Linux WMIC : wmic -U [domain/]<username>%<password> //<hostname>
 				// "select * from Win32_Service --delimiter=,"
-				args.add("wmic");
-				args.add("-U");
-				args.add(userName + "%" + password);
-				args.add("//" + hostName);
+				addConnectionArgs(args, wmicClient.getPath(), wscParams);
 				// No need to escape quotes even though the usage description WMIC client uses it around WQL.
-				args.add("select " + WMIC_TOKENS + " from Win32_Service");
+				args.add("select " + wmicTokens + " from Win32_Service"
+						+ (whereClause != null ? " where " + whereClause : ""));
 				args.add("--delimiter=" + COMMA_DELIMITER);
 			} else {
 				setStateAndMessage(MonitorState.UNKNOWN,
@@ -300,29 +653,70 @@ public class MonitorWindowsServiceCheckAdvanced extends Plugin {
 		}
 
 		/**
-		 * Private helper method to check if WMIC Client is installed on Linux.
+		 * Build the arguments of the Win32_Process query of the processes of the matched services, on the operating
+		 * system the check plan was made for.
 		 * 
-		 * @return True if WMIC Client is installed on Linux, false otherwise.
+		 * @param wscParams
+		 *            An object that holds all input params from Up.time.
+		 * @param whereClause
+		 *            WQL condition on the process IDs, null to query every process (see WSCProcessMetrics).
+		 * @return Arguments of the wmic command.
 		 */
-		private boolean isWmicClientInstalled() {
-			boolean itIsThere = false;
-			try {
-				LOGGER.debug("Check if WMIC Client is installed on the Linux monitoring station or not.");
-				// Run this command on Linux, "0" if wmic is installed, "1" otherwise.
-				ArrayList<String> args = new ArrayList<String>();
-				args.add("/bin/sh");
-				args.add("-c");
-				args.add("which wmic 2>/dev/null 1>&2");
-
-				ProcessBuilder pb = new ProcessBuilder(args);
-				Process process = pb.start();
-				process.waitFor();
-				itIsThere = process.exitValue() == 0;
-				process.destroy();
-			} catch (IOException | InterruptedException e) {
-				LOGGER.error("Error occurred while checking availability of WMIC Client on Linux.", e);
+		private List<String> buildProcessQueryArgs(WSCPluginParams wscParams, String whereClause) {
+			ArrayList<String> args = new ArrayList<String>();
+			// Same binary as the query of the services, the WMIC client on Linux was checked by the plan.
+			addConnectionArgs(args, plan.getWmicCommand().get(0), wscParams);
+			if (SystemUtils.IS_OS_WINDOWS) {
+				// wmic Process WHERE "(ProcessId=x or ...)" GET KernelModeTime,ProcessId,UserModeTime,WorkingSetSize
+				args.add("Process");
+				if (whereClause != null) {
+					args.add("WHERE");
+					args.add("(" + whereClause + ")");
+				}
+				args.add("GET");
+				args.add(WSCProcessMetrics.COLUMN_NAMES);
+				args.add("/format:csv");
+			} else {
+				args.add("select " + WSCProcessMetrics.COLUMN_NAMES + " from Win32_Process"
+						+ (whereClause != null ? " where " + whereClause : ""));
+				args.add("--delimiter=" + COMMA_DELIMITER);
+			}
+			return args;
+		}
+
+		/**
+		 * Add the wmic binary, the host and the credentials to the given arguments.
+		 * 
+		 * @param args
+		 *            Arguments of the wmic command.
+		 * @param wmicBinary
+		 *            wmic on Windows, path of the WMIC client on Linux.
+		 * @param wscParams
+		 *            An object that holds all input params from Up.time.
+		 */
+		private void addConnectionArgs(List<String> args, String wmicBinary, WSCPluginParams wscParams) {
+			String hostName = wscParams.getHostName();
+			String domainName = wscParams.getDomainName();
+			String userName = wscParams.getUserName();
+			String password = wscParams.getPassword();
+
+			if (SystemUtils.IS_OS_WINDOWS) {
+				LOGGER.debug("[Windows] Set a new admin name if domain is entered");
+				userName = domainName != null ? domainName + "\\" + userName : userName;
+				args.add(wmicBinary);
+				args.add("/node:\"" + hostName + "\"");
+				if (!wscParams.isItLocalhost()) {
+					args.add("/user:" + userName);
+					args.add("/password:" + password);
+				}
+			} else {
+				LOGGER.debug("[Linux] Set a new admin name if domain is entered");
+				userName = domainName != null ? domainName + "/" + userName : userName;
+				args.add(wmicBinary);
+				args.add("-U");
+				args.add(userName + "%" + password);
+				args.add("//" + hostName);
 			}
-			return itIsThere;
 		}
 
 		/**
@@ -332,175 +726,593 @@ public class MonitorWindowsServiceCheckAdvanced extends Plugin {
 		 *            HashMap that will store result of executing wmic command.
 		 * @param wmicCommand
 		 *            Command to execute.
-		 * @param regexes
-		 *            A list of regexes.
+		 * @param serviceFilter
+		 *            Compiled filters of the check plan.
 		 * @param wscParams
 		 *            An object that holds all input params from Up.time.
 		 * @return True if executing wmic command is successful, false otherwise.
 		 */
-		private boolean execWmicCommand(HashMap<String, String[]> result, ArrayList<String> wmicCommand,
-				HashSet<String> regexes, WSCPluginParams wscParams) {
-			boolean gotResult = false;
+		private boolean execWmicCommand(final HashMap<String, String[]> result, List<String> wmicCommand,
+				final WSCServiceFilter serviceFilter, final WSCPluginParams wscParams) {
+			if (wscParams.isSnapshotShared()) {
+				// A snapshot must hold every service of the host, it is never stopped early.
+				earlyStop = null;
+				return execSharedWmicCommand(result, wmicCommand, serviceFilter, wscParams);
+			}
+			earlyStop = new WSCEarlyStop(serviceFilter.getExactNames(), wscParams.getMatchesCap());
+			String probeMessage = probeHost(wscParams);
+			if (probeMessage != null) {
+				setStateAndMessage(MonitorState.UNKNOWN, probeMessage);
+				return false;
+			}
 			try {
 				LOGGER.debug("Make a Process to execute wmic command.");
-				ProcessBuilder pb = new ProcessBuilder(wmicCommand);
-				Process process = pb.start();
-
-				BufferedReader bufferedReader = new BufferedReader(new InputStreamReader(process.getInputStream()));
+				WmicOutputHandler outputHandler = new WmicOutputHandler(wscParams.isProcessMetrics()
+						? WMIC_TOKENS_WITH_PROCESS_ID : WMIC_TOKENS) {
+					@Override
+					boolean handleLine(CharSequence line) {
+						return splitLineAndPutInHashMap(result, line, serviceFilter, wscParams);
+					}
 
-				// TODO : (Find a way to get rid of the errors) On Linux, first few lines of output contain weird error
-				// messages, find a line that contains the column names (aka WMIC_TOKENS) and then start parsing.
-				LOGGER.debug("Read line(s) and put them in the HashMap.");
-				boolean columnNamesFound = false;
-				String line = "";
-				while ((line = bufferedReader.readLine()) != null) {
-					if (!columnNamesFound) {
-						columnNamesFound = line.contains(WMIC_TOKENS);
-						continue;
+					@Override
+					boolean isComplete() {
+						return earlyStop.isComplete(result.size());
 					}
-					if (!line.trim().equals("") && columnNamesFound) {
-						// On Linux, WMIC_TOKENS re-appears multiple times, splitLineAndPutInHashMap() will handle the
-						// duplication.
-						gotResult = splitLineAndPutInHashMap(result, line, regexes, wscParams);
-						if (!gotResult) {
-							// Splitting the given line was unsuccessful. Break out of while loop and destroy process.
-							break;
+				};
+				WSCProcessResult processResult = newProcessRunner(wscParams).run(wmicCommand, outputHandler);
+				addProcessTimes(processResult);
+
+				if (outputHandler.lineFailed) {
+					// Splitting a line was unsuccessful, the state is already set.
+					return false;
+				}
+				String errorMessage = checkProcessResult(processResult, outputHandler.outputParser,
+						WSCQueryPlanner.whereClause(wscParams) != null);
+				wmicOutcome = outcomeOf(processResult, errorMessage);
+				if (errorMessage != null) {
+					setStateAndMessage(MonitorState.UNKNOWN, errorMessage);
+					return false;
+				}
+			} catch (IOException | InterruptedException e) {
+				LOGGER.error("Error occurred while executing wmic command.", e);
+				setStateAndMessage(MonitorState.UNKNOWN, "Error occurred while executing wmic command.");
+				return false;
+			}
+			return true;
+		}
+
+		/**
+		 * Private helper method to query the working set and CPU time of the processes of the matched services, with
+		 * one wmic command limited to their process IDs (see WSCProcessMetrics). WMIC runs one WMI class per command,
+		 * so this is a second command in the same check, it does not probe the host again. Both commands share the
+		 * timeout of the monitor.
+		 * 
+		 * @param result
+		 *            Matched services.
+		 * @param wscParams
+		 *            An object that holds all input params from Up.time.
+		 * @param wmicStartNanos
+		 *            System.nanoTime() when the query of the services started.
+		 * @return Null if successful, otherwise the error message. The state of the monitor is not set.
+		 */
+		private String queryProcesses(HashMap<String, String[]> result, WSCPluginParams wscParams,
+				long wmicStartNanos) {
+			TreeSet<Long> runningProcessIds = new TreeSet<Long>();
+			for (Map.Entry<String, Long> processId : processIds.entrySet()) {
+				if (result.containsKey(processId.getKey())) {
+					runningProcessIds.add(processId.getValue());
+				}
+			}
+			processMetrics.start(System.nanoTime());
+			if (runningProcessIds.isEmpty()) {
+				LOGGER.debug("None of the matched services is running, no process to query.");
+				processMetrics.commit();
+				return null;
+			}
+			long remainingMillis = timeoutMillisOf(wscParams)
+					- TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - wmicStartNanos);
+			if (remainingMillis <= 0) {
+				return "The query of the services used the whole timeout.";
+			}
+			String whereClause = WSCProcessMetrics.whereClause(runningProcessIds);
+			try {
+				WmicOutputHandler outputHandler = new WmicOutputHandler(WSCProcessMetrics.COLUMN_NAMES) {
+					@Override
+					boolean handleLine(CharSequence line) {
+						long parseStartNanos = System.nanoTime();
+						if (!processMetrics.add(line)) {
+							LOGGER.error("WMIC output contains a line with incorrect format : {}", line);
+							return false;
 						}
+						phaseTimer.addSince(WSCPhaseTimer.Phase.PARSE, parseStartNanos);
+						return true;
 					}
+				};
+				WSCProcessResult processResult = newProcessRunner(wscParams, remainingMillis).run(
+						buildProcessQueryArgs(wscParams, whereClause), outputHandler);
+				addProcessTimes(processResult);
+
+				if (outputHandler.lineFailed) {
+					return "WMIC output contains a line with incorrect format.";
+				}
+				// The processes may have ended since the services were queried, then none is found.
+				String errorMessage = checkProcessResult(processResult, outputHandler.outputParser,
+						whereClause != null);
+				if (errorMessage != null) {
+					return errorMessage;
+				}
+			} catch (IOException | InterruptedException e) {
+				LOGGER.error("Error occurred while executing wmic command.", e);
+				return "Error occurred while executing wmic command.";
+			}
+			processMetrics.commit();
+			return null;
+		}
+
+		/**
+		 * Private helper method to output the working set and CPU usage of the process of each matched service that is
+		 * running, ranged by service, and their totals. Services that share a process are counted once in the totals.
+		 * 
+		 * @param result
+		 *            Matched services.
+		 */
+		private void outputProcessMetrics(HashMap<String, String[]> result) {
+			HashSet<Long> counted = new HashSet<Long>();
+			double totalWorkingSet = 0;
+			double totalCpuUsage = 0;
+			for (String service : result.keySet()) {
+				Long processId = processIds.get(service);
+				long workingSet = processId != null ? processMetrics.getWorkingSet(processId) : -1;
+				if (workingSet < 0) {
+					continue;
+				}
+				double cpuUsage = processMetrics.getCpuUsage(processId);
+				String displayName = WSCServiceRenderer.labelOf(service, result.get(service));
+				addRangedVariable(SERVICE_WORKING_SET, displayName, String.valueOf(round(toMegabytes(workingSet))));
+				if (cpuUsage >= 0) {
+					addRangedVariable(SERVICE_CPU_USAGE, displayName, String.valueOf(round(cpuUsage)));
 				}
+				if (counted.add(processId)) {
+					totalWorkingSet += toMegabytes(workingSet);
+					totalCpuUsage += Math.max(0, cpuUsage);
+				}
+			}
+			addVariable(TOTAL_WORKING_SET, round(totalWorkingSet));
+			addVariable(TOTAL_CPU_USAGE, round(totalCpuUsage));
+		}
 
+		/**
+		 * Add an output of one service.
+		 * 
+		 * @param name
+		 *            Name of the output.
+		 * @param service
+		 *            Service display name, the object name of the ranged output.
+		 * @param value
+		 *            Value of the output.
+		 */
+		private void addRangedVariable(String name, String service, String value) {
+			PluginMonitorVariable variable = new PluginMonitorVariable(name, value);
+			variable.setObjectName(service);
+			addVariable(variable);
+		}
+
+		private static double toMegabytes(long bytes) {
+			return bytes / (1024.0 * 1024.0);
+		}
+
+		private static double round(double value) {
+			return Math.round(value * 10) / 10.0;
+		}
+
+		/**
+		 * Private helper method to check that a remote host is reachable before a wmic command is started against it,
+		 * see WSCHostProbe. The probe is counted in the spawn phase.
+		 * 
+		 * @param wscParams
+		 *            An object that holds all input params from Up.time.
+		 * @return Null if the host is reachable, otherwise the error message.
+		 */
+		private String probeHost(WSCPluginParams wscParams) {
+			if (wscParams.isItLocalhost()) {
+				return null;
+			}
+			long probeStartNanos = System.nanoTime();
+			String probeMessage = WSCHostProbe.getInstance().check(wscParams.getHostName());
+			phaseTimer.addSince(WSCPhaseTimer.Phase.SPAWN, probeStartNanos);
+			if (probeMessage != null) {
+				// An unreachable host counts as a failure of the host, see WSCCircuitBreaker.
+				wmicOutcome = WSCCircuitBreaker.Outcome.HOST_FAILURE;
+			}
+			return probeMessage;
+		}
+
+		/**
+		 * Private helper method to make a WSCProcessRunner with the timeout of the monitor. Its wmic commands wait for
+		 * a slot of the WSCProcessGovernor shared by all monitors.
+		 * 
+		 * @param wscParams
+		 *            An object that holds all input params from Up.time.
+		 * @return WSCProcessRunner.
+		 */
+		private WSCProcessRunner newProcessRunner(WSCPluginParams wscParams) {
+			return newProcessRunner(wscParams, timeoutMillisOf(wscParams));
+		}
+
+		/**
+		 * Private helper method to make a WSCProcessRunner with the given part of the timeout of the monitor.
+		 * 
+		 * @param wscParams
+		 *            An object that holds all input params from Up.time.
+		 * @param timeoutMillis
+		 *            Deadline of its wmic commands, the wait for a slot included.
+		 * @return WSCProcessRunner.
+		 */
+		private WSCProcessRunner newProcessRunner(WSCPluginParams wscParams, long timeoutMillis) {
+			return new WSCProcessRunner(timeoutMillis, MAX_OUTPUT_BYTES, WSCProcessGovernor.getInstance(),
+					wscParams.getHostName(), wscParams.getPriority());
+		}
+
+		/**
+		 * Private helper method to get the timeout of the monitor.
+		 * 
+		 * @param wscParams
+		 *            An object that holds all input params from Up.time.
+		 * @return Milliseconds the wmic commands of a check can take, their wait for a slot included.
+		 */
+		private long timeoutMillisOf(WSCPluginParams wscParams) {
+			int timeout = wscParams.getTimeout() > 0 ? wscParams.getTimeout() : DEFAULT_TIMEOUT;
+			return TimeUnit.SECONDS.toMillis(timeout);
+		}
+
+		/**
+		 * Private helper method to add the time the wmic command spent before its output to the phases.
+		 * 
+		 * @param processResult
+		 *            How the wmic command ended.
+		 */
+		private void addProcessTimes(WSCProcessResult processResult) {
+			phaseTimer.add(WSCPhaseTimer.Phase.QUEUE,
+					TimeUnit.MILLISECONDS.toNanos(processResult.getQueueWaitMillis()));
+			phaseTimer.add(WSCPhaseTimer.Phase.SPAWN, TimeUnit.MILLISECONDS.toNanos(processResult.getSpawnMillis()));
+			phaseTimer.add(WSCPhaseTimer.Phase.FIRST_BYTE,
+					TimeUnit.MILLISECONDS.toNanos(processResult.getFirstByteMillis()));
+		}
+
+		/**
+		 * Private helper method to check how the wmic command ended.
+		 * 
+		 * @param processResult
+		 *            How the wmic command ended.
+		 * @param outputParser
+		 *            Parser of the output, knows if the column names (aka WMIC_TOKENS) were found.
+		 * @param whereClausePushed
+		 *            True if the wmic command has a WHERE clause, false otherwise.
+		 * @return Error message for the monitor, null if the wmic command was successful.
+		 */
+		private String checkProcessResult(WSCProcessResult processResult, WSCOutputParser outputParser,
+				boolean whereClausePushed) {
+			boolean columnNamesFound = outputParser.isColumnNamesFound();
+			if (!processResult.getStderr().isEmpty()) {
+				LOGGER.debug("WMIC standard error : {}", processResult.getStderr());
+			}
+			switch (processResult.getStatus()) {
+			case TIMED_OUT:
+				return "WMIC command timed out after " + processResult.getElapsedMillis() + " ms.";
+			case OUTPUT_LIMIT_REACHED:
+				return "WMIC output is larger than " + MAX_OUTPUT_BYTES + " bytes.";
+			case QUEUE_TIMED_OUT:
+				return "WMIC command waited " + processResult.getQueueWaitMillis()
+						+ " ms for a slot, too many WMIC commands are running.";
+			default:
+				break;
+			}
+			if (!columnNamesFound && processResult.getExitValue() == 0 && whereClausePushed) {
+				// WMI found no service that matches the WHERE clause, WMIC does not output column names then.
+				LOGGER.debug("No instance available for the WHERE clause.");
+				return null;
+			} else if (!columnNamesFound) {
 				// If output does not contain wmic tokens, authentication failed.
-				if (!columnNamesFound) {
-					setStateAndMessage(MonitorState.UNKNOWN, "Authentication failed");
+				LOGGER.error("Authentication failed : {} {}", processResult.getStderr(), outputParser.getDiagnostics());
+				return AUTHENTICATION_FAILED;
+			}
+			if (outputParser.getPreambleLines() > 0) {
+				LOGGER.debug("WMIC client printed {} line(s) before the column names : {}",
+						outputParser.getPreambleLines(), outputParser.getDiagnostics());
+			}
+			return null;
+		}
+
+		/**
+		 * Private helper method to tell the failures of the host apart from the other failures of a wmic command.
+		 * 
+		 * @param processResult
+		 *            How the wmic command ended.
+		 * @param errorMessage
+		 *            Error message of checkProcessResult(), null if the wmic command was successful.
+		 * @return HOST_FAILURE if the wmic command timed out or the authentication failed.
+		 */
+		private static WSCCircuitBreaker.Outcome outcomeOf(WSCProcessResult processResult, String errorMessage) {
+			if (processResult.getStatus() == WSCProcessResult.Status.TIMED_OUT
+					|| AUTHENTICATION_FAILED.equals(errorMessage)) {
+				return WSCCircuitBreaker.Outcome.HOST_FAILURE;
+			}
+			return errorMessage == null ? WSCCircuitBreaker.Outcome.SUCCESS : WSCCircuitBreaker.Outcome.OTHER;
+		}
+
+		/**
+		 * Reads WMIC output line by line and hands the service lines to handleLine().
+		 */
+		private abstract class WmicOutputHandler implements WSCProcessRunner.OutputHandler {
+
+			final WSCOutputParser outputParser;
+			boolean columnNamesFound;
+			boolean lineFailed;
+
+			WmicOutputHandler() {
+				this(WMIC_TOKENS);
+			}
+
+			/**
+			 * Create WmicOutputHandler of a query with other columns than WMIC_TOKENS.
+			 * 
+			 * @param columnNames
+			 *            Column names of the query, without the Node column.
+			 */
+			WmicOutputHandler(String columnNames) {
+				this.outputParser = new WSCOutputParser(columnNames);
+			}
+
+			@Override
+			public void handle(InputStream stdout) throws IOException {
+				// Decodes UTF-16LE of Windows WMIC and UTF-8 of the Linux WMIC client, without a String per line.
+				WSCLineReader lineReader = new WSCLineReader(stdout);
+
+				// On Linux, first few lines of output contain error messages of the WMIC client, the parser keeps them
+				// as diagnostics until the column names (aka WMIC_TOKENS), and skips the class markers and column names
+				// that appear again between the services.
+				LOGGER.debug("Read line(s) and put them in the HashMap.");
+				CharSequence line;
+				long firstLineNanos = 0;
+				while ((line = lineReader.readLine()) != null) {
+					firstLineNanos = firstLineNanos == 0 ? System.nanoTime() : firstLineNanos;
+					WSCOutputParser.LineType lineType = outputParser.classify(line);
+					if (lineType == WSCOutputParser.LineType.COLUMN_NAMES && !columnNamesFound) {
+						columnNamesFound = true;
+						phaseTimer.addSince(WSCPhaseTimer.Phase.HEADER, firstLineNanos);
+					} else if (lineType == WSCOutputParser.LineType.SERVICE) {
+						if (!handleLine(line)) {
+							// Handling the given line was unsuccessful. Stop reading, the process will be destroyed.
+							lineFailed = true;
+							return;
+						}
+						if (isComplete()) {
+							LOGGER.debug("The rest of WMIC output cannot change the result. Stop reading.");
+							return;
+						}
+					}
 				}
+			}
 
-				process.waitFor();
-				process.destroy();
-			} catch (IOException | InterruptedException e) {
-				LOGGER.error("Error occurred while executing wmic command.", e);
-				gotResult = false;
+			/**
+			 * Handle a service line, see WSCOutputParser.
+			 * 
+			 * @param line
+			 *            A line of WMIC output, only valid until the next line is read.
+			 * @return True if successful, false to stop reading.
+			 */
+			abstract boolean handleLine(CharSequence line);
+
+			/**
+			 * Check if the rest of the output is not needed, see WSCEarlyStop.
+			 * 
+			 * @return True to stop reading without an error, false to read on.
+			 */
+			boolean isComplete() {
+				return false;
 			}
-			return gotResult;
 		}
 
 		/**
-		 * Private helper method to split a line by comma delimiter on Windows and Linux. And put the split data into
-		 * the given HashMap.
+		 * Helper to get the services of the host from the plugin-wide snapshot cache, and filter them. Monitors of the
+		 * same host and credentials share one wmic command within snapshotMaxAge.
 		 * 
 		 * @param result
 		 *            HashMap that will store result of executing wmic command.
 		 * @param wmicCommand
-		 *            Command to execute.
-		 * @param regexes
-		 *            A list of regexes.
+		 *            Command to execute if there is no fresh snapshot.
+		 * @param serviceFilter
+		 *            Compiled filters of the check plan.
 		 * @param wscParams
 		 *            An object that holds all input params from Up.time.
-		 * @return True if successful, false otherwise.
+		 * @return True if getting the snapshot is successful, false otherwise.
 		 */
-		private boolean splitLineAndPutInHashMap(HashMap<String, String[]> result, String line,
-				HashSet<String> regexes, WSCPluginParams wscParams) {
-
-			// Special case : On Linux, output returned from WMIC client often contains unwanted lines such as
-			// "CLASS: Win32_Service" and "Caption,Name,StartMode,State" and "CLASS: Win32_TerminalService" in the list
-			// of Windows services, and the unwanted lines appear multiple times in the list. Ignore them.
-			if (line.contains("CLASS: Win32_Service") || line.contains(WMIC_TOKENS)
-					|| line.contains("CLASS: Win32_TerminalService")) {
-				// Ignore these lines and continue parsing.
-				return true;
-			}
-
-			String serviceDisplayName = "", serviceShortName = "", startupType = "", status = "";
-
-			String[] tokens = line.split(COMMA_DELIMITER);
-			int arrayLength = tokens.length;
-			// On Windows, we expect to have Node,Caption,Name,StartMode,State. (5 columns / tokens)
-			// On Linux, we expect to have Caption,Name,StartMode,State. (4 columns / tokens)
-			int expectedNumOfTokens = SystemUtils.IS_OS_WINDOWS ? 5 : 4;
-			// If more than expectedNumOfTokens (5 on Windows, 4 on Linux) tokens in the array, the Caption( aka Service
-			// Display Name) contains ','
-			if (arrayLength > expectedNumOfTokens) {
-				// On Windows, iteration starts at index 1 because tokens[0] aka Node is not needed.
-				for (int i = (expectedNumOfTokens - 4); i < arrayLength - 3; i++) {
-					// If i is not arrayLength - 4, concatenate strings with comma. Otherwise just add a string.
-					// For example, "Service" + " Display" = "Service, Display" (original string contains comma).
-					serviceDisplayName += i != arrayLength - 4 ? tokens[i] + COMMA_DELIMITER : tokens[i];
-				}
-				// last three items will always be Service Name, Startup Type, and Service Status.
-				serviceShortName = tokens[arrayLength - 3];
-				startupType = tokens[arrayLength - 2];
-				status = tokens[arrayLength - 1];
-			} else if (arrayLength < expectedNumOfTokens) {
-				setStateAndMessage(MonitorState.UNKNOWN, "WMIC output contains a line with incorrect format.");
+		private boolean execSharedWmicCommand(HashMap<String, String[]> result, final List<String> wmicCommand,
+				WSCServiceFilter serviceFilter, final WSCPluginParams wscParams) {
+			WSCServiceSnapshot snapshot;
+			try {
+				snapshot = WSCServiceSnapshotCache.getInstance().get(WSCServiceSnapshotCache.keyOf(wscParams),
+						TimeUnit.SECONDS.toMillis(wscParams.getSnapshotMaxAge()), new Callable<WSCServiceSnapshot>() {
+							@Override
+							public WSCServiceSnapshot call() {
+								return fetchSnapshot(wmicCommand, wscParams);
+							}
+						});
+			} catch (InterruptedException e) {
+				LOGGER.error("Interrupted while waiting for a shared wmic command.", e);
+				Thread.currentThread().interrupt();
 				return false;
-			} else {
-				// On Windows, we ignore tokens[0] aka Node because not needed
-				serviceDisplayName = tokens[arrayLength - 4];
-				serviceShortName = tokens[arrayLength - 3];
-				startupType = tokens[arrayLength - 2];
-				status = tokens[arrayLength - 1];
-			}
-
-			if (serviceDisplayName.equals("") || serviceShortName.equals("") || startupType.equals("")
-					|| status.equals("")) {
-				// serviceShortName is not used in this plugin, but just making sure splitting the input went well.
-				// serviceShortName may be useful later.
-				LOGGER.error("Check which one of serviceDisplayName, serviceShortName, startupType, and/or status is empty.");
+			}
+
+			if (!snapshot.isSuccessful()) {
+				setStateAndMessage(MonitorState.UNKNOWN, snapshot.getErrorMessage());
 				return false;
 			}
 
-			boolean hasMatch = false;
-			boolean startupTypeIncluded = wscParams.isStartupTypeIncluded();
-			boolean startupTypeExcluded = wscParams.isStartupTypeExcluded();
-			String startupTypeInclude = wscParams.getStartupTypeInclude();
-			String startupTypeExclude = wscParams.getStartupTypeExclude();
-
-			for (String regex : regexes) {
-				// Filter the list of services with service name / regex. and filter again with startup type.
-				hasMatch = serviceDisplayName.matches(regex);
-				if (hasMatch && startupTypeIncluded && startupType.contains(startupTypeInclude)) {
-					// (Include) is selected, and the line contains selected startup type.
-					result.put(serviceDisplayName, new String[] { startupType, status });
-				} else if (hasMatch && startupTypeExcluded && !startupType.contains(startupTypeExclude)) {
-					// (Exclude) is selected, and the line does not contain the selected Startup type.
-					result.put(serviceDisplayName, new String[] { startupType, status });
-				} else if (hasMatch && !startupTypeIncluded && !startupTypeExcluded) {
-					// If neither Startup Type (Include) / (Exclude) is selected, no need to filter.
-					result.put(serviceDisplayName, new String[] { startupType, status });
-				}
+			LOGGER.debug("Filter {} service(s) of a snapshot that is {} ms old.", snapshot.size(),
+					snapshot.getAgeMillis());
+			long filterStartNanos = System.nanoTime();
+			for (int i = 0; i < snapshot.size(); i++) {
+				putInHashMapIfMatched(result, snapshot.getDisplayName(i), snapshot.getServiceName(i),
+						snapshot.getStartupType(i), snapshot.getStatus(i), serviceFilter);
 			}
+			phaseTimer.addSince(WSCPhaseTimer.Phase.FILTER, filterStartNanos);
+			return true;
+		}
 
-			boolean serviceStatusIncluded = wscParams.isServiceStatusIncluded();
-			boolean serviceStatusExcluded = wscParams.isServiceStatusExcluded();
-			String serviceStatusInclude = wscParams.getServiceStatusInclude();
-			String serviceStatusExclude = wscParams.getServiceStatusExclude();
+		/**
+		 * Private helper method to execute wmic command and keep every service it returns, unfiltered. This runs once
+		 * per snapshot so it must not set the state of the monitor, errors are returned in the snapshot instead.
+		 * 
+		 * @param wmicCommand
+		 *            Command to execute.
+		 * @param wscParams
+		 *            An object that holds all input params from Up.time.
+		 * @return Snapshot of all the services of the host.
+		 */
+		private WSCServiceSnapshot fetchSnapshot(List<String> wmicCommand, WSCPluginParams wscParams) {
+			final WSCServiceSnapshot.Builder services = new WSCServiceSnapshot.Builder();
+			String probeMessage = probeHost(wscParams);
+			if (probeMessage != null) {
+				return WSCServiceSnapshot.failed(probeMessage);
+			}
+			try {
+				LOGGER.debug("Make a Process to execute wmic command for a shared snapshot.");
+				WmicOutputHandler outputHandler = new WmicOutputHandler() {
+					@Override
+					boolean handleLine(CharSequence line) {
+						long parseStartNanos = System.nanoTime();
+						if (!lineTokenizer.tokenize(line)) {
+							LOGGER.error("WMIC output contains a line with incorrect format : {}", line);
+							return false;
+						}
+						services.add(lineTokenizer.getDisplayName(), lineTokenizer.getServiceName(),
+								lineTokenizer.getStartupType(), lineTokenizer.getStatus());
+						phaseTimer.addSince(WSCPhaseTimer.Phase.PARSE, parseStartNanos);
+						return true;
+					}
+				};
+				WSCProcessResult processResult = newProcessRunner(wscParams).run(wmicCommand, outputHandler);
+				addProcessTimes(processResult);
 
-			if (!serviceStatusIncluded && !serviceStatusExcluded) {
-				// If service status (Include) or (Exclude) is not selected, no more filtering is needed.
-				return true;
+				if (outputHandler.lineFailed) {
+					return WSCServiceSnapshot.failed("WMIC output contains a line with incorrect format.");
+				}
+				String errorMessage = checkProcessResult(processResult, outputHandler.outputParser, false);
+				wmicOutcome = outcomeOf(processResult, errorMessage);
+				if (errorMessage != null) {
+					return WSCServiceSnapshot.failed(errorMessage);
+				}
+			} catch (IOException | InterruptedException e) {
+				LOGGER.error("Error occurred while executing wmic command.", e);
+				return WSCServiceSnapshot.failed("Error occurred while executing wmic command.");
 			}
+			return services.build();
+		}
+
+		/**
+		 * Private helper method to split a service line by comma delimiter on Windows and Linux. And put the split data
+		 * into the given HashMap. Class markers and column names are not service lines, see WSCOutputParser.
+		 * 
+		 * @param result
+		 *            HashMap that will store result of executing wmic command.
+		 * @param line
+		 *            A line of WMIC output.
+		 * @param serviceFilter
+		 *            Compiled filters of the check plan.
+		 * @param wscParams
+		 *            An object that holds all input params from Up.time.
+		 * @return True if successful, false otherwise.
+		 */
+		private boolean splitLineAndPutInHashMap(HashMap<String, String[]> result, CharSequence line,
+				WSCServiceFilter serviceFilter, WSCPluginParams wscParams) {
 
-			// Last filtering with service status(Include) or (Exclude).
-			boolean serviceAddedFromAbove = result.containsKey(serviceDisplayName);
-			String servStatusOfKey = serviceAddedFromAbove ? result.get(serviceDisplayName)[SERVICE_STATUS_INDEX] : "";
-			if (serviceStatusIncluded && serviceAddedFromAbove && !servStatusOfKey.contains(serviceStatusInclude)) {
-				result.remove(serviceDisplayName);
-			} else if (serviceStatusExcluded && serviceAddedFromAbove && servStatusOfKey.contains(serviceStatusExclude)) {
-				result.remove(serviceDisplayName);
+			long parseStartNanos = System.nanoTime();
+			WSCLineTokenizer tokenizer = wscParams.isProcessMetrics() ? processIdTokenizer : lineTokenizer;
+			if (!tokenizer.tokenize(line)) {
+				LOGGER.error("WMIC output contains a line with incorrect format : {}", line);
+				setStateAndMessage(MonitorState.UNKNOWN, "WMIC output contains a line with incorrect format.");
+				return false;
 			}
+			long filterStartNanos = phaseTimer.addSince(WSCPhaseTimer.Phase.PARSE, parseStartNanos);
 
+			String key = putInHashMapIfMatched(result, tokenizer.getDisplayName(), tokenizer.getServiceName(),
+					WSCStartupType.of(tokenizer.getStartupType()), WSCServiceStatus.of(tokenizer.getStatus()),
+					serviceFilter);
+			if (key != null && processIds != null) {
+				// A service that is not running has ProcessId 0.
+				long processId = WSCLineTokenizer.parseLong(tokenizer.getProcessId());
+				if (processId > 0) {
+					processIds.put(key, processId);
+				} else {
+					processIds.remove(key);
+				}
+			}
+			phaseTimer.addSince(WSCPhaseTimer.Phase.FILTER, filterStartNanos);
 			return true;
 		}
 
 		/**
-		 * Check regex syntax and add it to the given HashSet<String>
+		 * Private helper method to filter a service with service name / regex, startup type and service status. And put
+		 * it into the given HashMap if it matches, keyed by its service name, which is unique on a host while display
+		 * names are not. The names can be views on a line (see WSCLineTokenizer), Strings are only made for matched
+		 * services. Names come from WSCStringPool and the values are shared arrays, so the results that monitors keep
+		 * between polls do not copy the same Strings for every host.
 		 * 
+		 * @param result
+		 *            HashMap that will store result of executing wmic command.
+		 * @param serviceDisplayName
+		 *            Caption (aka Service Display Name) of the service.
+		 * @param serviceName
+		 *            Name (aka Service Name) of the service.
+		 * @param startupType
+		 *            StartMode (aka Startup Type) of the service.
+		 * @param status
+		 *            State (aka Service Status) of the service.
+		 * @param serviceFilter
+		 *            Compiled filters of the check plan.
+		 * @return Key of the service in the HashMap, null if it was not put.
+		 */
+		private String putInHashMapIfMatched(HashMap<String, String[]> result, CharSequence serviceDisplayName,
+				CharSequence serviceName, WSCStartupType startupType, WSCServiceStatus status,
+				WSCServiceFilter serviceFilter) {
+			// Filter the list of services with service name / regex. and filter again with startup type.
+			if (!serviceFilter.matches(serviceDisplayName, serviceName)) {
+				return null;
+			}
+			if (earlyStop != null) {
+				earlyStop.found(serviceName);
+			}
+			if (!serviceFilter.passes(startupType)) {
+				return null;
+			}
+
+			// Last filtering with service status(Include) or (Exclude). A service that does not pass also removes an
+			// earlier line of the same service, the WMIC client on Linux may list a service under two classes.
+			if (!serviceFilter.passes(status)) {
+				result.remove(serviceName.toString());
+				return null;
+			}
+			WSCStringPool stringPool = WSCStringPool.getInstance();
+			String key = stringPool.intern(serviceName);
+			result.put(key, stringPool.resultValues(serviceDisplayName, startupType, status));
+			return key;
+		}
+
+		/**
+		 * Check regex syntax and add it to the given HashSet<String>. Names without regex metacharacters (escaped ones
+		 * are allowed) are added to literals instead, they are matched by a hash lookup on the display name and the
+		 * service name (see WSCServiceMatcher).
+		 * 
+		 * @param literals
+		 *            A list of plain names, unescaped.
 		 * @param regexes
 		 *            A list of regexes.
 		 * @param wscParams
 		 *            An object that holds all input params from Up.time.
-		 * @return True if the given regexes are valid and added to the HashSet, false otherwise.
+		 * @return True if the given regexes are valid and added to the HashSets, false otherwise.
 		 */
-		private boolean checkRegexAndAdd(HashSet<String> regexes, WSCPluginParams wscParams) {
+		private boolean checkRegexAndAdd(HashSet<String> literals, HashSet<String> regexes, WSCPluginParams wscParams) {
 
 			String serviceDisplayName = wscParams.getServiceDisplayName();
 
@@ -513,7 +1325,7 @@ public class MonitorWindowsServiceCheckAdvanced extends Plugin {
 								"One or more service display name(s) contains invalid regex syntax.");
 						return false;
 					} else {
-						regexes.add(regex);
+						addLiteralOrRegex(literals, regexes, regex);
 					}
 				}
 			} else {
@@ -522,12 +1334,31 @@ public class MonitorWindowsServiceCheckAdvanced extends Plugin {
 					setStateAndMessage(MonitorState.UNKNOWN, "The service display name has invalid regex syntax.");
 					return false;
 				} else {
-					regexes.add(serviceDisplayName);
+					addLiteralOrRegex(literals, regexes, serviceDisplayName);
 				}
 			}
 			return true;
 		}
 
+		/**
+		 * Private helper method to add a valid regex to literals if it only matches one String, to regexes otherwise.
+		 * 
+		 * @param literals
+		 *            A list of plain names, unescaped.
+		 * @param regexes
+		 *            A list of regexes.
+		 * @param regex
+		 *            Regex string, already checked.
+		 */
+		private void addLiteralOrRegex(HashSet<String> literals, HashSet<String> regexes, String regex) {
+			String literal = WSCQueryPlanner.unescape(regex);
+			if (literal != null) {
+				literals.add(literal);
+			} else {
+				regexes.add(regex);
+			}
+		}
+
 		/**
 		 * Private helper method to check syntax of the given regex.
 		 * 
@@ -546,4 +1377,214 @@ public class MonitorWindowsServiceCheckAdvanced extends Plugin {
 		}
 
 	}
+
+	/**
+	 * A nested static class which checks the same services on many hosts, so that a farm does not need a monitor per
+	 * host. Each host is checked by its own UptimeMonitorWindowsServiceCheckAdvanced, in parallel, kept across polls
+	 * while the host is in the host list. Number of matches is ranged by host name, the other outputs summarize all
+	 * hosts.
+	 */
+	@Extension
+	public static class UptimeMonitorWindowsServiceCheckAdvancedMultiHost extends PluginMonitor {
+
+		// Simple Logging Facade for Java (SLF4J)
+		private static final Logger LOGGER = LoggerFactory
+				.getLogger(UptimeMonitorWindowsServiceCheckAdvancedMultiHost.class);
+
+		private static final String HOST_LIST = "hostList";
+		private static final String MINIMUM_MATCHES = "minimumMatches";
+		private static final String NUMBER_OF_HOSTS = "numberOfHosts";
+		private static final String HOSTS_FAILED = "hostsFailed";
+		private static final String FAILED_HOSTS = "failedHosts";
+		private static final String HOSTS_BELOW_MINIMUM = "hostsBelowMinimum";
+		private static final String HOSTS_BELOW_MINIMUM_LIST = "hostsBelowMinimumList";
+		private static final String TOTAL_NUMBER_OF_MATCHES = "totalNumberOfMatches";
+		// [Advanced Input]
+		private static final String PARALLELISM = "parallelism";
+
+		// Hosts checked at the same time if parallelism is not set.
+		private static final int DEFAULT_PARALLELISM = 16;
+
+		// Inputs shared by the checks of all hosts.
+		private Parameters params;
+
+		// Monitor of each host by lower-cased host name, so that a host keeps its previous result, flapping window,
+		// process CPU baseline and refresh schedule from one poll to the next. Hosts removed from the list are dropped.
+		private HashMap<String, UptimeMonitorWindowsServiceCheckAdvanced> hostMonitors =
+				new HashMap<String, UptimeMonitorWindowsServiceCheckAdvanced>();
+
+		// [Input]
+		String hostList;
+		int minimumMatches; // Hosts with less matches are counted in hostsBelowMinimum, 0 to disable.
+		// [Advanced Input]
+		int parallelism; // Hosts checked at the same time, 0 for DEFAULT_PARALLELISM.
+
+		/**
+		 * The setParameters function will accept a Parameters object containing the values filled into the monitor's
+		 * configuration page in Up.time.
+		 * 
+		 * @param params
+		 *            Parameters object which contains inputs.
+		 */
+		@Override
+		public void setParameters(Parameters params) {
+			LOGGER.debug("Step 1 : Setting parameters.");
+			this.params = params;
+			// [Input]
+			hostList = params.getString(HOST_LIST);
+			minimumMatches = params.getInt(MINIMUM_MATCHES);
+			// [Advanced Input]
+			parallelism = params.getInt(PARALLELISM);
+		}
+
+		/**
+		 * The monitor function will implement the main functionality and should set the monitor's state and result
+		 * message prior to completion.
+		 */
+		@Override
+		public void monitor() {
+			LOGGER.debug("Error handling : Check the host list.");
+			List<String> hosts;
+			try {
+				hosts = WSCHostList.parse(hostList);
+			} catch (IllegalArgumentException e) {
+				setStateAndMessage(MonitorState.UNKNOWN, e.getMessage());
+				return;
+			}
+			if (hosts.isEmpty()) {
+				setStateAndMessage(MonitorState.UNKNOWN, "Please enter Host list.");
+				return;
+			}
+
+			LOGGER.debug("Step 2 : Check {} hosts in parallel.", hosts.size());
+			List<HostCheck> checks = new ArrayList<HostCheck>(hosts.size());
+			HashMap<String, UptimeMonitorWindowsServiceCheckAdvanced> monitors =
+					new HashMap<String, UptimeMonitorWindowsServiceCheckAdvanced>();
+			for (String host : hosts) {
+				String key = host.toLowerCase(Locale.ENGLISH);
+				UptimeMonitorWindowsServiceCheckAdvanced monitor = hostMonitors.get(key);
+				if (monitor == null) {
+					monitor = new UptimeMonitorWindowsServiceCheckAdvanced();
+				}
+				monitors.put(key, monitor);
+				checks.add(new HostCheck(host, monitor, params));
+			}
+			hostMonitors = monitors;
+			try {
+				WSCHostExecutor.runAll(checks, parallelism > 0 ? parallelism : DEFAULT_PARALLELISM);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				setStateAndMessage(MonitorState.UNKNOWN, "Monitor was interrupted while checking the hosts.");
+				return;
+			}
+
+			LOGGER.debug("Step 3 : Output the result of each host and the aggregates.");
+			int hostsFailed = 0;
+			int hostsBelowMinimum = 0;
+			long totalNumberOfMatches = 0;
+			StringBuilder failedHosts = new StringBuilder();
+			StringBuilder belowMinimumList = new StringBuilder();
+			StringBuilder matchedServices = new StringBuilder();
+			for (HostCheck check : checks) {
+				UptimeMonitorWindowsServiceCheckAdvanced monitor = check.monitor;
+				if (monitor.getState() != MonitorState.OK) {
+					hostsFailed++;
+					failedHosts.append(System.lineSeparator());
+					failedHosts.append(check.host + " : "
+							+ (monitor.getMessage() != null ? monitor.getMessage() : "Monitor did not run."));
+					continue;
+				}
+				String numberOfMatches = getValue(monitor, UptimeMonitorWindowsServiceCheckAdvanced.NUMBER_OF_MATCHES);
+				totalNumberOfMatches += Integer.parseInt(numberOfMatches);
+				if (Integer.parseInt(numberOfMatches) < minimumMatches) {
+					hostsBelowMinimum++;
+					belowMinimumList.append(System.lineSeparator());
+					belowMinimumList.append(check.host + " : " + numberOfMatches);
+				}
+				addRangedVariable(UptimeMonitorWindowsServiceCheckAdvanced.NUMBER_OF_MATCHES, check.host,
+						numberOfMatches);
+				String hostServices = getValue(monitor, UptimeMonitorWindowsServiceCheckAdvanced.MATCHED_SERVICES);
+				if (!hostServices.isEmpty()) {
+					matchedServices.append(System.lineSeparator());
+					matchedServices.append("[" + check.host + "]" + System.lineSeparator() + hostServices);
+				}
+			}
+			addVariable(NUMBER_OF_HOSTS, hosts.size());
+			addVariable(HOSTS_FAILED, hostsFailed);
+			addVariable(FAILED_HOSTS, failedHosts.toString().trim());
+			addVariable(HOSTS_BELOW_MINIMUM, hostsBelowMinimum);
+			addVariable(HOSTS_BELOW_MINIMUM_LIST, belowMinimumList.toString().trim());
+			addVariable(TOTAL_NUMBER_OF_MATCHES, totalNumberOfMatches);
+			addVariable(UptimeMonitorWindowsServiceCheckAdvanced.MATCHED_SERVICES, matchedServices.toString().trim());
+
+			if (hostsFailed == hosts.size()) {
+				setStateAndMessage(MonitorState.UNKNOWN,
+						"None of the hosts could be checked. " + failedHosts.toString().trim());
+			} else if (hostsFailed > 0) {
+				setStateAndMessage(MonitorState.OK, "Monitor ran successfully. " + hostsFailed + " of " + hosts.size()
+						+ " hosts could not be checked.");
+			} else {
+				LOGGER.debug("Monitor ran successfully. Set monitor state to OK.");
+				setStateAndMessage(MonitorState.OK, "Monitor ran successfully.");
+			}
+		}
+
+		/**
+		 * Add an output of one host.
+		 * 
+		 * @param name
+		 *            Name of the output.
+		 * @param host
+		 *            Host name, the object name of the ranged output.
+		 * @param value
+		 *            Value of the output.
+		 */
+		private void addRangedVariable(String name, String host, String value) {
+			PluginMonitorVariable variable = new PluginMonitorVariable(name, value);
+			variable.setObjectName(host);
+			addVariable(variable);
+		}
+
+		/**
+		 * Private helper method to get an output of the given monitor.
+		 * 
+		 * @param monitor
+		 *            Monitor that ran.
+		 * @param name
+		 *            Name of the output.
+		 * @return Value of the output, null if the monitor did not output it.
+		 */
+		private String getValue(PluginMonitor monitor, String name) {
+			for (PluginMonitorVariable variable : monitor.getVariables()) {
+				if (variable.getName().equals(name)) {
+					return variable.getValue();
+				}
+			}
+			return null;
+		}
+
+		/**
+		 * Check of one host by its monitor, with the inputs of the multi-host monitor and the host name of the host.
+		 */
+		private static class HostCheck implements Runnable {
+
+			private final String host;
+			private final UptimeMonitorWindowsServiceCheckAdvanced monitor;
+
+			HostCheck(String host, UptimeMonitorWindowsServiceCheckAdvanced monitor, Parameters params) {
+				this.host = host;
+				this.monitor = monitor;
+				// Only the outputs of this poll.
+				monitor.getVariables().clear();
+				Parameters hostParams = new Parameters(params);
+				hostParams.put(UptimeMonitorWindowsServiceCheckAdvanced.HOSTNAME, host);
+				monitor.setParameters(hostParams);
+			}
+
+			@Override
+			public void run() {
+				monitor.monitor();
+			}
+		}
+	}
 }
\ No newline at end of file
@@ -0,0 +1,216 @@
+package com.uptimesoftware.uptime.plugin;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * WSCCheckPlan class that holds everything a monitor needs to check a host once its inputs are validated : the input
+ * params, the compiled WSCServiceFilter and the arguments of the wmic command. A plan is made by setParameters() and
+ * is immutable, so monitors with the same inputs share one plan (see WSCCheckPlanCache) and a poll validates nothing.
+ * 
+ * On Linux, a plan is made for one WSCWmicClient (its path and the --delimiter support). A poll only checks that the
+ * client is still the current one, a replaced binary gets a new plan.
+ * 
+ * @author uptime software
+ */
+public class WSCCheckPlan {
+
+	private static final String SEPARATOR = "|";
+
+	private final String fingerprint;
+	private final WSCPluginParams wscParams;
+	private final WSCServiceFilter serviceFilter;
+	private final List<String> wmicCommand;
+	private final WSCWmicClient wmicClient;
+	private final String errorMessage;
+
+	/**
+	 * Create a valid WSCCheckPlan.
+	 * 
+	 * @param fingerprint
+	 *            Fingerprint of the inputs, see fingerprintOf().
+	 * @param wscParams
+	 *            Validated input params. Must not be modified any more.
+	 * @param serviceFilter
+	 *            Compiled filters.
+	 * @param wmicCommand
+	 *            Arguments of the wmic command.
+	 */
+	public WSCCheckPlan(String fingerprint, WSCPluginParams wscParams, WSCServiceFilter serviceFilter,
+			List<String> wmicCommand) {
+		this(fingerprint, wscParams, serviceFilter, wmicCommand, null, null);
+	}
+
+	/**
+	 * Create a valid WSCCheckPlan for the given WMIC client.
+	 * 
+	 * @param fingerprint
+	 *            Fingerprint of the inputs and the WMIC client, see fingerprintOf().
+	 * @param wscParams
+	 *            Validated input params. Must not be modified any more.
+	 * @param serviceFilter
+	 *            Compiled filters.
+	 * @param wmicCommand
+	 *            Arguments of the wmic command.
+	 * @param wmicClient
+	 *            WMIC client the arguments were built for, null on Windows.
+	 */
+	public WSCCheckPlan(String fingerprint, WSCPluginParams wscParams, WSCServiceFilter serviceFilter,
+			List<String> wmicCommand, WSCWmicClient wmicClient) {
+		this(fingerprint, wscParams, serviceFilter, wmicCommand, wmicClient, null);
+	}
+
+	private WSCCheckPlan(String fingerprint, WSCPluginParams wscParams, WSCServiceFilter serviceFilter,
+			List<String> wmicCommand, WSCWmicClient wmicClient, String errorMessage) {
+		this.fingerprint = fingerprint;
+		this.wscParams = wscParams;
+		this.serviceFilter = serviceFilter;
+		this.wmicCommand = Collections.unmodifiableList(new ArrayList<String>(wmicCommand));
+		this.wmicClient = wmicClient;
+		this.errorMessage = errorMessage;
+	}
+
+	/**
+	 * Create a WSCCheckPlan for inputs that are not valid.
+	 * 
+	 * @param errorMessage
+	 *            Message to show on the monitor.
+	 * @return Invalid plan.
+	 */
+	public static WSCCheckPlan failed(String errorMessage) {
+		return new WSCCheckPlan(null, null, null, Collections.<String> emptyList(), null, errorMessage);
+	}
+
+	/**
+	 * Build the fingerprint of the given input params. Monitors with the same fingerprint can share a plan.
+	 * 
+	 * @param wscParams
+	 *            An object that holds all input params from Up.time.
+	 * @return Host and credential identity (see WSCServiceSnapshotCache.keyOf()), filters and advanced inputs.
+	 */
+	public static String fingerprintOf(WSCPluginParams wscParams) {
+		return fingerprintOf(wscParams, null);
+	}
+
+	/**
+	 * Build the fingerprint of the given input params and WMIC client. Monitors with the same fingerprint can share a
+	 * plan. Each field is prefixed with its length, so that inputs containing the separator cannot give the
+	 * fingerprint of other inputs.
+	 * 
+	 * @param wscParams
+	 *            An object that holds all input params from Up.time.
+	 * @param wmicClient
+	 *            WMIC client the plan is made for, null on Windows.
+	 * @return Host and credential identity (see WSCServiceSnapshotCache.keyOf()), filters, advanced inputs and path and
+	 *         last modification time of the WMIC client.
+	 */
+	public static String fingerprintOf(WSCPluginParams wscParams, WSCWmicClient wmicClient) {
+		StringBuilder fingerprint = new StringBuilder();
+		append(fingerprint, WSCServiceSnapshotCache.keyOf(wscParams));
+		append(fingerprint, filtersOf(wscParams));
+		append(fingerprint, wscParams.getSnapshotMaxAge());
+		append(fingerprint, wscParams.getTimeout());
+		append(fingerprint, wscParams.getPriority());
+		append(fingerprint, wscParams.getMatchesCap());
+		append(fingerprint, wscParams.getMaxRefreshInterval());
+		append(fingerprint, wscParams.isProcessMetrics());
+		append(fingerprint, wmicClient != null ? wmicClient.getPath() : null);
+		append(fingerprint, wmicClient != null ? wmicClient.getLastModified() : null);
+		return fingerprint.toString();
+	}
+
+	/**
+	 * Get the inputs that decide which services are matched.
+	 * 
+	 * @param wscParams
+	 *            An object that holds all input params from Up.time.
+	 * @return Host name and filters, each prefixed with its length.
+	 */
+	public static String filtersOf(WSCPluginParams wscParams) {
+		StringBuilder filters = new StringBuilder();
+		append(filters, wscParams.getHostName());
+		append(filters, wscParams.getServiceDisplayName());
+		append(filters, wscParams.getStartupTypeInclude());
+		append(filters, wscParams.getStartupTypeExclude());
+		append(filters, wscParams.getServiceStatusInclude());
+		append(filters, wscParams.getServiceStatusExclude());
+		return filters.toString();
+	}
+
+	/**
+	 * Append a field as "length:value|", or "-|" if it is null.
+	 */
+	private static void append(StringBuilder fields, Object field) {
+		if (field == null) {
+			fields.append('-');
+		} else {
+			String value = field.toString();
+			fields.append(value.length()).append(':').append(value);
+		}
+		fields.append(SEPARATOR);
+	}
+
+	/**
+	 * Get fingerprint.
+	 * 
+	 * @return Fingerprint of the inputs, null if the plan is not valid.
+	 */
+	public String getFingerprint() {
+		return this.fingerprint;
+	}
+
+	/**
+	 * Get wscParams.
+	 * 
+	 * @return Validated input params, must not be modified.
+	 */
+	public WSCPluginParams getParams() {
+		return this.wscParams;
+	}
+
+	/**
+	 * Get serviceFilter.
+	 * 
+	 * @return Compiled filters.
+	 */
+	public WSCServiceFilter getServiceFilter() {
+		return this.serviceFilter;
+	}
+
+	/**
+	 * Get wmicCommand.
+	 * 
+	 * @return Unmodifiable arguments of the wmic command.
+	 */
+	public List<String> getWmicCommand() {
+		return this.wmicCommand;
+	}
+
+	/**
+	 * Get wmicClient.
+	 * 
+	 * @return WMIC client the plan was made for, null on Windows or if the plan is not valid.
+	 */
+	public WSCWmicClient getWmicClient() {
+		return this.wmicClient;
+	}
+
+	/**
+	 * Get errorMessage.
+	 * 
+	 * @return errorMessage, null if the plan is valid.
+	 */
+	public String getErrorMessage() {
+		return this.errorMessage;
+	}
+
+	/**
+	 * Check if the inputs are valid or not.
+	 * 
+	 * @return True if valid, false otherwise.
+	 */
+	public boolean isValid() {
+		return this.errorMessage == null;
+	}
+}
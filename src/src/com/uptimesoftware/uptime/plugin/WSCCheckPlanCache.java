@@ -0,0 +1,72 @@
+package com.uptimesoftware.uptime.plugin;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Plugin-wide cache of valid WSCCheckPlans keyed by the fingerprint of their inputs. Only the most recently used
+ * MAX_PLANS plans are kept, so plans of old inputs (for example a changed password) do not stay forever.
+ * 
+ * @author uptime software
+ */
+public class WSCCheckPlanCache {
+
+	// Far more than the monitors of a large installation.
+	private static final int MAX_PLANS = 10000;
+
+	private static final WSCCheckPlanCache INSTANCE = new WSCCheckPlanCache();
+
+	private final LinkedHashMap<String, WSCCheckPlan> plans = new LinkedHashMap<String, WSCCheckPlan>(16, 0.75f, true) {
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, WSCCheckPlan> eldest) {
+			return size() > MAX_PLANS;
+		}
+	};
+
+	/**
+	 * Get the cache shared by all monitors of the plugin.
+	 * 
+	 * @return Plugin-wide WSCCheckPlanCache.
+	 */
+	public static WSCCheckPlanCache getInstance() {
+		return INSTANCE;
+	}
+
+	/**
+	 * Get the plan of a fingerprint.
+	 * 
+	 * @param fingerprint
+	 *            Fingerprint of the inputs, see WSCCheckPlan.fingerprintOf().
+	 * @return Cached plan, null if there is none.
+	 */
+	public WSCCheckPlan get(String fingerprint) {
+		synchronized (plans) {
+			return plans.get(fingerprint);
+		}
+	}
+
+	/**
+	 * Cache a plan. Plans that are not valid are not cached, their inputs are validated again on the next poll.
+	 * 
+	 * @param plan
+	 *            Plan to cache.
+	 */
+	public void put(WSCCheckPlan plan) {
+		if (plan.isValid()) {
+			synchronized (plans) {
+				plans.put(plan.getFingerprint(), plan);
+			}
+		}
+	}
+
+	/**
+	 * Remove all plans. Mainly for re-use in unit tests.
+	 */
+	public void clear() {
+		synchronized (plans) {
+			plans.clear();
+		}
+	}
+}
@@ -0,0 +1,237 @@
+package com.uptimesoftware.uptime.plugin;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Plugin-wide WSCCircuitBreaker class that stops running wmic commands against a host that keeps failing. Breakers are
+ * keyed by host and credential identity (see WSCServiceSnapshotCache.keyOf()), so expired credentials of one monitor do
+ * not stop the monitors of the same host with other credentials.
+ * 
+ * - CLOSED : checks run. After failureThreshold consecutive timeouts or authentication failures, the breaker opens.
+ * 
+ * - OPEN : checks fail at once with the last error, without a wmic command that would hold a slot of the
+ * WSCProcessGovernor until its timeout. Once the backoff passed, the next check is the probe.
+ * 
+ * - HALF_OPEN : one probe runs, other checks still fail at once. A successful probe closes the breaker, a failed one
+ * opens it again with a doubled backoff, up to maxBackoffMillis. A probe that never ended is replaced after
+ * maxBackoffMillis.
+ * 
+ * Only the breakers of the most recently used MAX_BREAKERS keys are kept, so the breakers of removed hosts or of old
+ * credentials do not stay forever.
+ * 
+ * @author uptime software
+ */
+public class WSCCircuitBreaker {
+
+	/**
+	 * State of the breaker of one key.
+	 */
+	public enum State {
+		CLOSED, OPEN, HALF_OPEN
+	}
+
+	/**
+	 * How a check ended, as far as the host is concerned.
+	 */
+	public enum Outcome {
+		// The host answered.
+		SUCCESS,
+		// The wmic command timed out or the authentication failed.
+		HOST_FAILURE,
+		// Nothing is known of the host, for example the check waited too long for a slot.
+		OTHER
+	}
+
+	private static final WSCCircuitBreaker INSTANCE = new WSCCircuitBreaker(Integer.getInteger("wsc.breakerThreshold",
+			3), TimeUnit.SECONDS.toMillis(Integer.getInteger("wsc.breakerMinBackoff", 30)),
+			TimeUnit.SECONDS.toMillis(Integer.getInteger("wsc.breakerMaxBackoff", 600)));
+
+	// Far more than the hosts of a large installation.
+	private static final int MAX_BREAKERS = 10000;
+
+	private final int failureThreshold;
+	private final long minBackoffMillis;
+	private final long maxBackoffMillis;
+
+	private final LinkedHashMap<String, Breaker> breakers = new LinkedHashMap<String, Breaker>(16, 0.75f, true) {
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, Breaker> eldest) {
+			return size() > MAX_BREAKERS;
+		}
+	};
+
+	/**
+	 * Create WSCCircuitBreaker.
+	 * 
+	 * @param failureThreshold
+	 *            Consecutive host failures that open a breaker, 0 to never open.
+	 * @param minBackoffMillis
+	 *            Time before the first probe of an open breaker.
+	 * @param maxBackoffMillis
+	 *            Maximum time between two probes.
+	 */
+	public WSCCircuitBreaker(int failureThreshold, long minBackoffMillis, long maxBackoffMillis) {
+		this.failureThreshold = failureThreshold;
+		this.minBackoffMillis = minBackoffMillis;
+		this.maxBackoffMillis = maxBackoffMillis;
+	}
+
+	/**
+	 * Get the breakers shared by all monitors of the plugin. Settings can be changed with the system properties
+	 * wsc.breakerThreshold, wsc.breakerMinBackoff and wsc.breakerMaxBackoff (in seconds).
+	 * 
+	 * @return Plugin-wide WSCCircuitBreaker.
+	 */
+	public static WSCCircuitBreaker getInstance() {
+		return INSTANCE;
+	}
+
+	/**
+	 * Admit a check of the given key. An admitted check must record its outcome, see record().
+	 * 
+	 * @param key
+	 *            Host and credential identity.
+	 * @param nowNanos
+	 *            System.nanoTime() of the check.
+	 * @return Null if the check can run, otherwise the message of the open breaker.
+	 */
+	public String admit(String key, long nowNanos) {
+		Breaker breaker = breakerOf(key);
+		return breaker != null ? breaker.admit(nowNanos) : null;
+	}
+
+	/**
+	 * Record the outcome of an admitted check.
+	 * 
+	 * @param key
+	 *            Host and credential identity.
+	 * @param outcome
+	 *            How the check ended.
+	 * @param errorMessage
+	 *            Error message of the check, null if it was successful.
+	 * @param nowNanos
+	 *            System.nanoTime() when the check ended.
+	 * @return Null if the breaker is closed, otherwise its state for the monitor message.
+	 */
+	public String record(String key, Outcome outcome, String errorMessage, long nowNanos) {
+		Breaker breaker;
+		synchronized (breakers) {
+			breaker = breakers.get(key);
+			if (breaker == null) {
+				if (outcome != Outcome.HOST_FAILURE || failureThreshold <= 0) {
+					return null;
+				}
+				breaker = new Breaker();
+				breakers.put(key, breaker);
+			}
+		}
+		return breaker.record(outcome, errorMessage, nowNanos);
+	}
+
+	/**
+	 * Get the state of the breaker of the given key.
+	 * 
+	 * @param key
+	 *            Host and credential identity.
+	 * @return State, CLOSED if the key never failed.
+	 */
+	public State getState(String key) {
+		Breaker breaker = breakerOf(key);
+		return breaker != null ? breaker.getState() : State.CLOSED;
+	}
+
+	/**
+	 * Close every breaker. Mainly for tests.
+	 */
+	public void clear() {
+		synchronized (breakers) {
+			breakers.clear();
+		}
+	}
+
+	/**
+	 * Get the number of breakers. Mainly for tests.
+	 * 
+	 * @return Number of keys that failed.
+	 */
+	public int size() {
+		synchronized (breakers) {
+			return breakers.size();
+		}
+	}
+
+	private Breaker breakerOf(String key) {
+		synchronized (breakers) {
+			return breakers.get(key);
+		}
+	}
+
+	/**
+	 * Breaker of one key.
+	 */
+	private class Breaker {
+
+		private State state = State.CLOSED;
+		private int failures;
+		private long backoffMillis;
+		private long nextProbeNanos;
+		private long probeStartNanos;
+		private String lastError;
+
+		synchronized String admit(long nowNanos) {
+			if (state == State.CLOSED) {
+				return null;
+			} else if (state == State.OPEN && nowNanos - nextProbeNanos >= 0 || state == State.HALF_OPEN
+					&& nowNanos - probeStartNanos > TimeUnit.MILLISECONDS.toNanos(maxBackoffMillis)) {
+				state = State.HALF_OPEN;
+				probeStartNanos = nowNanos;
+				return null;
+			}
+			return describe(nowNanos) + " Last error : " + lastError;
+		}
+
+		synchronized String record(Outcome outcome, String errorMessage, long nowNanos) {
+			if (outcome == Outcome.SUCCESS) {
+				state = State.CLOSED;
+				failures = 0;
+				backoffMillis = 0;
+				return null;
+			} else if (outcome == Outcome.OTHER) {
+				if (state == State.HALF_OPEN) {
+					// The probe told nothing, the next check probes again.
+					state = State.OPEN;
+				}
+				return state == State.CLOSED ? null : describe(nowNanos);
+			}
+			failures++;
+			lastError = errorMessage;
+			if (state == State.HALF_OPEN) {
+				backoffMillis = Math.min(backoffMillis * 2, maxBackoffMillis);
+			} else if (state == State.CLOSED && failures >= failureThreshold) {
+				backoffMillis = minBackoffMillis;
+			} else {
+				return state == State.CLOSED ? null : describe(nowNanos);
+			}
+			state = State.OPEN;
+			nextProbeNanos = nowNanos + TimeUnit.MILLISECONDS.toNanos(backoffMillis);
+			return describe(nowNanos);
+		}
+
+		synchronized State getState() {
+			return state;
+		}
+
+		private String describe(long nowNanos) {
+			if (state == State.HALF_OPEN) {
+				return "Circuit breaker is half-open after " + failures
+						+ " consecutive failures, another check is probing the host.";
+			}
+			return "Circuit breaker is open after " + failures + " consecutive failures, next probe in "
+					+ TimeUnit.NANOSECONDS.toSeconds(Math.max(0, nextProbeNanos - nowNanos)) + " s.";
+		}
+	}
+}
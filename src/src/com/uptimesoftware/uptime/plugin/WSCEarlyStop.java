@@ -0,0 +1,81 @@
+package com.uptimesoftware.uptime.plugin;
+
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * WSCEarlyStop class that decides, while WMIC output is read, when the rest of the output cannot change the result of a
+ * check. Then the monitor stops reading and the wmic process is killed, instead of waiting for every service of the
+ * host. Two cases are known :
+ * 
+ * - Every service display name is a plain name (see WSCServiceFilter.getExactNames()) and all of them are found as
+ * service names. Service names are unique on a host, display names are not : a plain name found as a display name
+ * may still match more services, so it does not count.
+ * 
+ * - numberOfMatchesCap is set and that many services matched. Only numberOfMatches is meaningful then, matchedServices
+ * lists the services found before the cap.
+ * 
+ * One WSCEarlyStop is used for one wmic command, it is not thread-safe.
+ * 
+ * @author uptime software
+ */
+public class WSCEarlyStop {
+
+	private final Set<String> exactNames;
+	private final int matchesCap;
+	private final Set<String> foundNames = new HashSet<String>();
+	private boolean capped;
+
+	/**
+	 * Create WSCEarlyStop.
+	 * 
+	 * @param exactNames
+	 *            Service display names / service names that are all plain names, empty if one of them is a regex.
+	 * @param matchesCap
+	 *            Number of matched services to stop at, 0 for no cap.
+	 */
+	public WSCEarlyStop(Set<String> exactNames, int matchesCap) {
+		this.exactNames = exactNames;
+		this.matchesCap = matchesCap;
+	}
+
+	/**
+	 * Count a service that matches, whether or not it passes the startup type and status filters.
+	 * 
+	 * @param serviceName
+	 *            Name (aka Service Name) of the service.
+	 */
+	public void found(CharSequence serviceName) {
+		if (exactNames.isEmpty()) {
+			return;
+		}
+		String name = serviceName.toString();
+		if (exactNames.contains(name)) {
+			foundNames.add(name);
+		}
+	}
+
+	/**
+	 * Check if the rest of WMIC output can be skipped.
+	 * 
+	 * @param matches
+	 *            Number of services in the result so far.
+	 * @return True if the result cannot change any more, false otherwise.
+	 */
+	public boolean isComplete(int matches) {
+		if (matchesCap > 0 && matches >= matchesCap) {
+			capped = true;
+			return true;
+		}
+		return !exactNames.isEmpty() && foundNames.size() == exactNames.size();
+	}
+
+	/**
+	 * Check if reading stopped because of numberOfMatchesCap.
+	 * 
+	 * @return True if the result holds only the services found before the cap, false otherwise.
+	 */
+	public boolean isCapped() {
+		return this.capped;
+	}
+}
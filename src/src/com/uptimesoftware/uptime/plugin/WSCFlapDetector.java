@@ -0,0 +1,195 @@
+package com.uptimesoftware.uptime.plugin;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * WSCFlapDetector class that keeps the status of each matched service over the last polls of a monitor, to output
+ * availability and flapping without the stored matchedServices history.
+ * 
+ * The window of a service is two bit sets in a long : whether it was running, and whether its status changed, on each
+ * of the last window polls. A poll shifts one bit into each, so its cost does not depend on the window. Availability is
+ * the share of the polls the service was running. The flap score is the share of the polls its status changed, a
+ * service starts flapping at FLAP_START and stops at FLAP_STOP, like the flap detection of Nagios.
+ * 
+ * A service that is not matched any more is forgotten. A WSCFlapDetector belongs to one monitor, it is not
+ * thread-safe.
+ * 
+ * @author uptime software
+ */
+public class WSCFlapDetector {
+
+	public static final int DEFAULT_WINDOW = 20;
+	// One bit per poll in a long.
+	public static final int MAX_WINDOW = 64;
+
+	// Share of status changes in the window to start and to stop flapping.
+	private static final double FLAP_START = 0.3;
+	private static final double FLAP_STOP = 0.2;
+	// Polls before a service can be flapping, a few changes in the first polls are not enough.
+	private static final int MIN_POLLS = 5;
+
+	private final HashMap<String, Window> windows = new HashMap<String, Window>();
+	private int window = DEFAULT_WINDOW;
+	private long mask = maskOf(DEFAULT_WINDOW);
+
+	/**
+	 * Set the number of polls of the window. The windows are cleared if it changes.
+	 * 
+	 * @param window
+	 *            Polls in the window, 0 for DEFAULT_WINDOW, at most MAX_WINDOW.
+	 */
+	public void setWindow(int window) {
+		int polls = window > 0 ? Math.min(window, MAX_WINDOW) : DEFAULT_WINDOW;
+		if (polls != this.window) {
+			this.window = polls;
+			this.mask = maskOf(polls);
+			windows.clear();
+		}
+	}
+
+	/**
+	 * Add a poll.
+	 * 
+	 * @param services
+	 *            Matched services of the poll, key to {startup type, status}.
+	 */
+	public void update(Map<String, String[]> services) {
+		Iterator<Map.Entry<String, Window>> iterator = windows.entrySet().iterator();
+		while (iterator.hasNext()) {
+			if (!services.containsKey(iterator.next().getKey())) {
+				iterator.remove();
+			}
+		}
+		for (Map.Entry<String, String[]> service : services.entrySet()) {
+			WSCServiceStatus status = WSCServiceStatus.of(service.getValue()[WSCStringPool.STATUS_INDEX]);
+			Window serviceWindow = windows.get(service.getKey());
+			if (serviceWindow == null) {
+				serviceWindow = new Window();
+				windows.put(service.getKey(), serviceWindow);
+			}
+			serviceWindow.add(status, mask);
+		}
+	}
+
+	/**
+	 * Forget every service, for example after the filters changed.
+	 */
+	public void clear() {
+		windows.clear();
+	}
+
+	/**
+	 * Get the services that are flapping.
+	 * 
+	 * @return Sorted keys of the flapping services.
+	 */
+	public List<String> getFlapping() {
+		List<String> flapping = new ArrayList<String>();
+		for (Map.Entry<String, Window> service : windows.entrySet()) {
+			if (service.getValue().flapping) {
+				flapping.add(service.getKey());
+			}
+		}
+		Collections.sort(flapping);
+		return flapping;
+	}
+
+	/**
+	 * Get the lowest availability of the services.
+	 * 
+	 * @return Percentage of the polls the least available service was running, 100 if there is no service.
+	 */
+	public int getWorstAvailability() {
+		int worst = 100;
+		for (Window serviceWindow : windows.values()) {
+			worst = Math.min(worst, serviceWindow.getAvailability());
+		}
+		return worst;
+	}
+
+	/**
+	 * Get the status changes of all services in the window.
+	 * 
+	 * @return Number of status changes.
+	 */
+	public int getTransitions() {
+		int transitions = 0;
+		for (Window serviceWindow : windows.values()) {
+			transitions += serviceWindow.getTransitions();
+		}
+		return transitions;
+	}
+
+	/**
+	 * Get the availability of a service.
+	 * 
+	 * @param key
+	 *            Key of the service in the monitor result.
+	 * @return Percentage of the polls in the window the service was running, -1 if it is not matched.
+	 */
+	public int getAvailability(String key) {
+		Window serviceWindow = windows.get(key);
+		return serviceWindow != null ? serviceWindow.getAvailability() : -1;
+	}
+
+	/**
+	 * Get the flap score of a service.
+	 * 
+	 * @param key
+	 *            Key of the service in the monitor result.
+	 * @return Share of the polls in the window the status changed, from 0 to 1. 0 if it is not matched.
+	 */
+	public double getFlapScore(String key) {
+		Window serviceWindow = windows.get(key);
+		return serviceWindow != null ? serviceWindow.getFlapScore() : 0;
+	}
+
+	private static long maskOf(int window) {
+		return window == MAX_WINDOW ? -1L : (1L << window) - 1;
+	}
+
+	/**
+	 * The last polls of one service.
+	 */
+	private static class Window {
+
+		private long running;
+		private long transitions;
+		private int polls;
+		private WSCServiceStatus lastStatus;
+		private boolean flapping;
+
+		void add(WSCServiceStatus status, long mask) {
+			boolean transition = lastStatus != null && status != lastStatus;
+			running = (running << 1 | (status == WSCServiceStatus.RUNNING ? 1 : 0)) & mask;
+			// The change of the oldest poll is from a poll out of the window, it is not counted.
+			transitions = (transitions << 1 | (transition ? 1 : 0)) & (mask >>> 1);
+			polls = Math.min(polls + 1, Long.bitCount(mask));
+			lastStatus = status;
+			double flapScore = getFlapScore();
+			if (!flapping && polls >= MIN_POLLS && flapScore >= FLAP_START) {
+				flapping = true;
+			} else if (flapping && flapScore < FLAP_STOP) {
+				flapping = false;
+			}
+		}
+
+		int getAvailability() {
+			return polls > 0 ? 100 * Long.bitCount(running) / polls : 100;
+		}
+
+		int getTransitions() {
+			return Long.bitCount(transitions);
+		}
+
+		double getFlapScore() {
+			// The first poll of a service has no status to change from.
+			return polls > 1 ? (double) Long.bitCount(transitions) / (polls - 1) : 0;
+		}
+	}
+}
@@ -0,0 +1,499 @@
+package com.uptimesoftware.uptime.plugin;
+
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * WSCHistoryStore class that keeps the history of the startup type and status of services, per host, in local files.
+ * Only transitions are kept : a state is appended when it differs from the last state of the service in this JVM, so
+ * the first check of every service after a restart is appended again.
+ * 
+ * The history is an append-only log of fixed-size records (timestamp, host id, service id, startup type, status) in
+ * memory-mapped segment files of recordsPerSegment records. A full segment is sealed and the next one is started,
+ * segments older than retentionMillis are deleted. Host and service names are kept once in a names file, records only
+ * hold their ids. Records are appended in time order, so a query finds the start of its time range with a binary
+ * search in each segment and only reads the records in the range, segments out of the range are not read at all.
+ * 
+ * The store of the plugin is enabled with the system property wsc.historyDir.
+ * 
+ * @author uptime software
+ */
+public class WSCHistoryStore {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(WSCHistoryStore.class);
+
+	// "WSCH"
+	private static final int MAGIC = 0x57534348;
+	private static final short VERSION = 1;
+
+	// Segment header : magic, version, record size, count, reserved, first and last timestamp.
+	private static final int COUNT_OFFSET = 8;
+	private static final int MIN_TIMESTAMP_OFFSET = 16;
+	private static final int MAX_TIMESTAMP_OFFSET = 24;
+	private static final int HEADER_SIZE = 32;
+
+	// Record : timestamp, host id, service id, startup type, status, reserved. Startup type and status are the
+	// ordinals of WSCStartupType and WSCServiceStatus, their values must only be appended to.
+	private static final int HOST_OFFSET = 8;
+	private static final int SERVICE_OFFSET = 12;
+	private static final int STARTUP_TYPE_OFFSET = 16;
+	private static final int STATUS_OFFSET = 17;
+	private static final int RECORD_SIZE = 20;
+
+	private static final String NAMES_FILE = "names.dat";
+	private static final String SEGMENT_PREFIX = "segment-";
+	private static final String SEGMENT_SUFFIX = ".wsh";
+
+	private static final WSCStartupType[] STARTUP_TYPES = WSCStartupType.values();
+	private static final WSCServiceStatus[] STATUSES = WSCServiceStatus.values();
+
+	private static WSCHistoryStore instance;
+	private static boolean initialized;
+
+	private final File directory;
+	private final int recordsPerSegment;
+	private final long retentionMillis;
+
+	// Names of hosts and services, the id is the index.
+	private final List<String> names = new ArrayList<String>();
+	private final HashMap<String, Integer> ids = new HashMap<String, Integer>();
+	private final DataOutputStream namesOut;
+
+	// Sealed segments, oldest first, and the segment records are appended to.
+	private final List<Segment> sealed = new ArrayList<Segment>();
+	private Segment active;
+	private MappedByteBuffer activeBuffer;
+	private long lastTimestamp;
+
+	// Last state appended of each service, (host id << 32 | service id) to (startup type << 8 | status).
+	private final HashMap<Long, Short> lastStates = new HashMap<Long, Short>();
+
+	/**
+	 * Open the store in the given directory, or create it.
+	 * 
+	 * @param directory
+	 *            Directory of the names file and the segment files.
+	 * @param recordsPerSegment
+	 *            Records of a segment before it is sealed.
+	 * @param retentionMillis
+	 *            Age of the last record of a sealed segment before it is deleted.
+	 * @throws IOException
+	 *             If the directory or its files cannot be read or written.
+	 */
+	public WSCHistoryStore(File directory, int recordsPerSegment, long retentionMillis) throws IOException {
+		if (!directory.isDirectory() && !directory.mkdirs()) {
+			throw new IOException("Cannot create the history directory " + directory);
+		}
+		this.directory = directory;
+		this.recordsPerSegment = recordsPerSegment;
+		this.retentionMillis = retentionMillis;
+		File namesFile = new File(directory, NAMES_FILE);
+		readNames(namesFile);
+		this.namesOut = new DataOutputStream(new FileOutputStream(namesFile, true));
+		openSegments();
+		deleteExpiredSegments(System.currentTimeMillis());
+	}
+
+	/**
+	 * Get the store of the plugin. It is opened on the first call if the system property wsc.historyDir is set, with
+	 * wsc.historyRetentionDays (180 if not set) and wsc.historySegmentRecords (1048576 if not set).
+	 * 
+	 * @return WSCHistoryStore, null if the history is not enabled or cannot be opened.
+	 */
+	public static synchronized WSCHistoryStore getInstance() {
+		if (!initialized) {
+			initialized = true;
+			String directory = System.getProperty("wsc.historyDir");
+			if (directory != null && !directory.isEmpty()) {
+				try {
+					instance = new WSCHistoryStore(new File(directory), Integer.getInteger(
+							"wsc.historySegmentRecords", 1 << 20), TimeUnit.DAYS.toMillis(Integer.getInteger(
+							"wsc.historyRetentionDays", 180)));
+				} catch (IOException e) {
+					LOGGER.error("History of service states is disabled, " + directory + " cannot be opened.", e);
+				}
+			}
+		}
+		return instance;
+	}
+
+	/**
+	 * Append the state of a service if it differs from its last state.
+	 * 
+	 * @param hostName
+	 *            Host of the service.
+	 * @param serviceDisplayName
+	 *            Caption (aka Service Display Name) of the service.
+	 * @param startupType
+	 *            Startup type of the service.
+	 * @param status
+	 *            Status of the service.
+	 * @param timeMillis
+	 *            Time the state was seen. Records never go back in time, an earlier time is recorded as the time of
+	 *            the last record.
+	 * @return True if the state was appended, false if it is the last state of the service.
+	 * @throws IOException
+	 *             If the names file or a new segment cannot be written.
+	 */
+	public synchronized boolean append(String hostName, String serviceDisplayName, WSCStartupType startupType,
+			WSCServiceStatus status, long timeMillis) throws IOException {
+		int hostId = idOf(hostName.toLowerCase(Locale.ENGLISH));
+		int serviceId = idOf(serviceDisplayName);
+		Long service = (long) hostId << 32 | serviceId;
+		short state = (short) (startupType.ordinal() << 8 | status.ordinal());
+		Short lastState = lastStates.get(service);
+		if (lastState != null && lastState == state) {
+			return false;
+		}
+
+		if (active == null || active.count == active.capacity) {
+			rotate(timeMillis);
+		}
+		long timestamp = Math.max(timeMillis, lastTimestamp);
+		int position = HEADER_SIZE + active.count * RECORD_SIZE;
+		activeBuffer.putLong(position, timestamp);
+		activeBuffer.putInt(position + HOST_OFFSET, hostId);
+		activeBuffer.putInt(position + SERVICE_OFFSET, serviceId);
+		activeBuffer.put(position + STARTUP_TYPE_OFFSET, (byte) startupType.ordinal());
+		activeBuffer.put(position + STATUS_OFFSET, (byte) status.ordinal());
+		if (active.count == 0) {
+			activeBuffer.putLong(MIN_TIMESTAMP_OFFSET, timestamp);
+			active.minTimestamp = timestamp;
+		}
+		activeBuffer.putLong(MAX_TIMESTAMP_OFFSET, timestamp);
+		active.maxTimestamp = timestamp;
+		// The record is part of the segment once the count includes it.
+		active.count++;
+		activeBuffer.putInt(COUNT_OFFSET, active.count);
+		lastTimestamp = timestamp;
+		lastStates.put(service, state);
+		return true;
+	}
+
+	/**
+	 * Get the states of the services of a host in a time range.
+	 * 
+	 * @param hostName
+	 *            Host name.
+	 * @param fromMillis
+	 *            Start of the time range, inclusive.
+	 * @param toMillis
+	 *            End of the time range, inclusive.
+	 * @return States in time order, empty if the host has none in the range.
+	 * @throws IOException
+	 *             If a sealed segment cannot be read.
+	 */
+	public synchronized List<Entry> query(String hostName, long fromMillis, long toMillis) throws IOException {
+		Integer hostId = ids.get(hostName.toLowerCase(Locale.ENGLISH));
+		if (hostId == null) {
+			return Collections.emptyList();
+		}
+		List<Entry> entries = new ArrayList<Entry>();
+		for (Segment segment : sealed) {
+			if (segment.overlaps(fromMillis, toMillis)) {
+				query(segment.map(), segment.count, hostId, fromMillis, toMillis, entries);
+			}
+		}
+		if (active != null && active.overlaps(fromMillis, toMillis)) {
+			query(activeBuffer, active.count, hostId, fromMillis, toMillis, entries);
+		}
+		return entries;
+	}
+
+	/**
+	 * Get the number of segment files.
+	 * 
+	 * @return Sealed segments and the segment records are appended to.
+	 */
+	public synchronized int getSegmentCount() {
+		return sealed.size() + (active != null ? 1 : 0);
+	}
+
+	/**
+	 * Write the records and names to disk and close the names file. The store cannot be used any more.
+	 * 
+	 * @throws IOException
+	 *             If the names file cannot be closed.
+	 */
+	public synchronized void close() throws IOException {
+		if (activeBuffer != null) {
+			activeBuffer.force();
+		}
+		namesOut.close();
+	}
+
+	private void query(ByteBuffer buffer, int count, int hostId, long fromMillis, long toMillis, List<Entry> entries) {
+		// First record at or after fromMillis.
+		int low = 0;
+		int high = count;
+		while (low < high) {
+			int middle = (low + high) >>> 1;
+			if (buffer.getLong(HEADER_SIZE + middle * RECORD_SIZE) < fromMillis) {
+				low = middle + 1;
+			} else {
+				high = middle;
+			}
+		}
+		for (int i = low; i < count; i++) {
+			int position = HEADER_SIZE + i * RECORD_SIZE;
+			long timestamp = buffer.getLong(position);
+			if (timestamp > toMillis) {
+				break;
+			}
+			if (buffer.getInt(position + HOST_OFFSET) == hostId) {
+				entries.add(new Entry(timestamp, names.get(buffer.getInt(position + SERVICE_OFFSET)),
+						STARTUP_TYPES[buffer.get(position + STARTUP_TYPE_OFFSET)],
+						STATUSES[buffer.get(position + STATUS_OFFSET)]));
+			}
+		}
+	}
+
+	private int idOf(String name) throws IOException {
+		Integer id = ids.get(name);
+		if (id == null) {
+			namesOut.writeUTF(name);
+			namesOut.flush();
+			id = names.size();
+			names.add(name);
+			ids.put(name, id);
+		}
+		return id;
+	}
+
+	private void readNames(File namesFile) throws IOException {
+		if (!namesFile.exists()) {
+			return;
+		}
+		RandomAccessFile raf = new RandomAccessFile(namesFile, "rw");
+		long length = 0;
+		try {
+			while (true) {
+				String name = raf.readUTF();
+				length = raf.getFilePointer();
+				ids.put(name, names.size());
+				names.add(name);
+			}
+		} catch (EOFException e) {
+			// A name cut by a crash is dropped, the next names are appended in its place.
+			raf.setLength(length);
+		} finally {
+			raf.close();
+		}
+	}
+
+	private void openSegments() throws IOException {
+		File[] files = directory.listFiles(new FilenameFilter() {
+			@Override
+			public boolean accept(File dir, String name) {
+				return name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX);
+			}
+		});
+		Arrays.sort(files);
+		for (File file : files) {
+			Segment segment = Segment.open(file);
+			if (segment == null) {
+				LOGGER.warn("{} is not a history segment, it is skipped.", file);
+				continue;
+			}
+			sealed.add(segment);
+			lastTimestamp = Math.max(lastTimestamp, segment.maxTimestamp);
+		}
+		if (!sealed.isEmpty()) {
+			Segment last = sealed.get(sealed.size() - 1);
+			if (last.count < last.capacity) {
+				// Go on appending to the last segment.
+				sealed.remove(sealed.size() - 1);
+				active = last;
+				activeBuffer = last.mapForAppend();
+			}
+		}
+	}
+
+	private void rotate(long timeMillis) throws IOException {
+		long sequence = 0;
+		if (active != null) {
+			activeBuffer.force();
+			sealed.add(active);
+			sequence = active.sequence + 1;
+		} else if (!sealed.isEmpty()) {
+			sequence = sealed.get(sealed.size() - 1).sequence + 1;
+		}
+		File file = new File(directory, String.format("%s%010d%s", SEGMENT_PREFIX, sequence, SEGMENT_SUFFIX));
+		active = Segment.create(file, sequence, recordsPerSegment);
+		activeBuffer = active.mapForAppend();
+		deleteExpiredSegments(timeMillis);
+	}
+
+	private void deleteExpiredSegments(long nowMillis) {
+		for (int i = 0; i < sealed.size(); i++) {
+			Segment segment = sealed.get(i);
+			if (nowMillis - segment.maxTimestamp <= retentionMillis) {
+				continue;
+			}
+			if (segment.file.delete()) {
+				sealed.remove(i--);
+			} else {
+				// On Windows, a segment that is still mapped by a query cannot be deleted. Try again later.
+				LOGGER.debug("History segment {} cannot be deleted yet.", segment.file);
+			}
+		}
+	}
+
+	/**
+	 * A segment file and its header.
+	 */
+	private static class Segment {
+
+		private final File file;
+		private final long sequence;
+		private final int capacity;
+		private int count;
+		private long minTimestamp;
+		private long maxTimestamp;
+
+		private Segment(File file, long sequence, int capacity) {
+			this.file = file;
+			this.sequence = sequence;
+			this.capacity = capacity;
+		}
+
+		static Segment create(File file, long sequence, int capacity) throws IOException {
+			RandomAccessFile raf = new RandomAccessFile(file, "rw");
+			try {
+				raf.setLength(HEADER_SIZE + (long) capacity * RECORD_SIZE);
+				raf.writeInt(MAGIC);
+				raf.writeShort(VERSION);
+				raf.writeShort(RECORD_SIZE);
+			} finally {
+				raf.close();
+			}
+			return new Segment(file, sequence, capacity);
+		}
+
+		/**
+		 * Read the header of a segment file.
+		 * 
+		 * @return Segment, null if the file is not a segment.
+		 */
+		static Segment open(File file) throws IOException {
+			String name = file.getName();
+			long sequence;
+			try {
+				sequence = Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length()
+						- SEGMENT_SUFFIX.length()));
+			} catch (NumberFormatException e) {
+				return null;
+			}
+			RandomAccessFile raf = new RandomAccessFile(file, "r");
+			try {
+				long length = raf.length();
+				if (length < HEADER_SIZE || raf.readInt() != MAGIC || raf.readShort() != VERSION
+						|| raf.readShort() != RECORD_SIZE) {
+					return null;
+				}
+				Segment segment = new Segment(file, sequence, (int) ((length - HEADER_SIZE) / RECORD_SIZE));
+				segment.count = Math.min(raf.readInt(), segment.capacity);
+				raf.seek(MIN_TIMESTAMP_OFFSET);
+				segment.minTimestamp = raf.readLong();
+				segment.maxTimestamp = raf.readLong();
+				return segment;
+			} finally {
+				raf.close();
+			}
+		}
+
+		boolean overlaps(long fromMillis, long toMillis) {
+			return count > 0 && maxTimestamp >= fromMillis && minTimestamp <= toMillis;
+		}
+
+		MappedByteBuffer map() throws IOException {
+			return map(FileChannel.MapMode.READ_ONLY, "r");
+		}
+
+		MappedByteBuffer mapForAppend() throws IOException {
+			return map(FileChannel.MapMode.READ_WRITE, "rw");
+		}
+
+		private MappedByteBuffer map(FileChannel.MapMode mode, String fileMode) throws IOException {
+			RandomAccessFile raf = new RandomAccessFile(file, fileMode);
+			try {
+				// The mapping stays valid after the file is closed.
+				return raf.getChannel().map(mode, 0, HEADER_SIZE + (long) capacity * RECORD_SIZE);
+			} finally {
+				raf.close();
+			}
+		}
+	}
+
+	/**
+	 * State of a service at a time, see query().
+	 */
+	public static class Entry {
+
+		private final long timeMillis;
+		private final String serviceDisplayName;
+		private final WSCStartupType startupType;
+		private final WSCServiceStatus status;
+
+		Entry(long timeMillis, String serviceDisplayName, WSCStartupType startupType, WSCServiceStatus status) {
+			this.timeMillis = timeMillis;
+			this.serviceDisplayName = serviceDisplayName;
+			this.startupType = startupType;
+			this.status = status;
+		}
+
+		/**
+		 * Get timeMillis.
+		 * 
+		 * @return Time the state was seen.
+		 */
+		public long getTimeMillis() {
+			return this.timeMillis;
+		}
+
+		/**
+		 * Get serviceDisplayName.
+		 * 
+		 * @return Caption (aka Service Display Name) of the service.
+		 */
+		public String getServiceDisplayName() {
+			return this.serviceDisplayName;
+		}
+
+		/**
+		 * Get startupType.
+		 * 
+		 * @return Startup type of the service.
+		 */
+		public WSCStartupType getStartupType() {
+			return this.startupType;
+		}
+
+		/**
+		 * Get status.
+		 * 
+		 * @return Status of the service.
+		 */
+		public WSCServiceStatus getStatus() {
+			return this.status;
+		}
+	}
+}
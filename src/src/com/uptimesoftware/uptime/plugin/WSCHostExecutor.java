@@ -0,0 +1,102 @@
+package com.uptimesoftware.uptime.plugin;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * WSCHostExecutor class that runs the checks of many hosts in parallel. At most "parallelism" checks of a call run at
+ * the same time, each worker takes the next host when its check ends. Workers are virtual threads when the Java
+ * runtime has them, they mostly wait for WMIC processes.
+ * 
+ * @author uptime software
+ */
+public class WSCHostExecutor {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(WSCHostExecutor.class);
+
+	// Shared by all multi-host monitors of the plugin.
+	private static final ExecutorService WORKERS = newWorkers();
+
+	private WSCHostExecutor() {
+	}
+
+	/**
+	 * Run all tasks and wait until they end.
+	 * 
+	 * @param tasks
+	 *            Checks of the hosts. A task that throws is logged, the other tasks still run.
+	 * @param parallelism
+	 *            Maximum number of tasks running at the same time.
+	 * @throws InterruptedException
+	 *             If interrupted while waiting. Running tasks are interrupted, the others do not start.
+	 */
+	public static void runAll(final List<? extends Runnable> tasks, int parallelism) throws InterruptedException {
+		int workers = Math.max(1, Math.min(parallelism, tasks.size()));
+		final AtomicInteger next = new AtomicInteger();
+		final CountDownLatch done = new CountDownLatch(workers);
+		List<Future<?>> futures = new ArrayList<Future<?>>(workers);
+		for (int i = 0; i < workers; i++) {
+			futures.add(WORKERS.submit(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						int index;
+						while ((index = next.getAndIncrement()) < tasks.size()
+								&& !Thread.currentThread().isInterrupted()) {
+							try {
+								tasks.get(index).run();
+							} catch (RuntimeException e) {
+								LOGGER.error("Error occurred while checking a host.", e);
+							}
+						}
+					} finally {
+						done.countDown();
+					}
+				}
+			}));
+		}
+		try {
+			done.await();
+		} catch (InterruptedException e) {
+			// Skip the hosts that did not start yet.
+			next.set(tasks.size());
+			for (Future<?> future : futures) {
+				future.cancel(true);
+			}
+			throw e;
+		}
+	}
+
+	/**
+	 * Virtual threads on Java 21 and later, a cached pool of daemon threads otherwise. The pool is bounded by the
+	 * parallelism of the calls.
+	 */
+	private static ExecutorService newWorkers() {
+		try {
+			ExecutorService virtualThreads = (ExecutorService) Executors.class.getMethod(
+					"newVirtualThreadPerTaskExecutor").invoke(null);
+			LOGGER.debug("Hosts are checked on virtual threads.");
+			return virtualThreads;
+		} catch (ReflectiveOperationException | RuntimeException e) {
+			LOGGER.debug("Virtual threads are not available, hosts are checked on platform threads.");
+		}
+		final AtomicInteger count = new AtomicInteger();
+		return Executors.newCachedThreadPool(new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, "wsc-host-" + count.incrementAndGet());
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+	}
+}
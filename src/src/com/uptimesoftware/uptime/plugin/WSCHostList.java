@@ -0,0 +1,79 @@
+package com.uptimesoftware.uptime.plugin;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * WSCHostList class that turns the host list input into host names. Host names are separated by commas or whitespace,
+ * and a numeric range in brackets stands for a group of hosts, for example "web[01-20].example.com" is web01 to web20.
+ * 
+ * @author uptime software
+ */
+public class WSCHostList {
+
+	// Keep a typo like "web[1-99999]" from starting a WMIC query per host.
+	public static final int MAX_HOSTS = 1000;
+
+	private static final Pattern SEPARATORS = Pattern.compile("[,\\s]+");
+	private static final Pattern RANGE = Pattern.compile("\\[(\\d+)-(\\d+)\\]");
+
+	private WSCHostList() {
+	}
+
+	/**
+	 * Parse the host list input.
+	 * 
+	 * @param hostList
+	 *            Host names / host patterns separated by commas or whitespace.
+	 * @return Host names in the order they were entered, without duplicates. Host names are case-insensitive, the
+	 *         first spelling is kept.
+	 * @throws IllegalArgumentException
+	 *             If a range is reversed, or the list has more than MAX_HOSTS hosts.
+	 */
+	public static List<String> parse(String hostList) {
+		// Lower-cased host name to host name.
+		LinkedHashMap<String, String> hosts = new LinkedHashMap<String, String>();
+		if (hostList == null) {
+			return new ArrayList<String>(hosts.values());
+		}
+		for (String pattern : SEPARATORS.split(hostList.trim())) {
+			if (!pattern.isEmpty()) {
+				expand(pattern, hosts);
+			}
+		}
+		return new ArrayList<String>(hosts.values());
+	}
+
+	private static void expand(String pattern, LinkedHashMap<String, String> hosts) {
+		Matcher range = RANGE.matcher(pattern);
+		if (!range.find()) {
+			String key = pattern.toLowerCase(Locale.ENGLISH);
+			if (!hosts.containsKey(key)) {
+				hosts.put(key, pattern);
+			}
+			if (hosts.size() > MAX_HOSTS) {
+				throw new IllegalArgumentException("Host list has more than " + MAX_HOSTS + " hosts.");
+			}
+			return;
+		}
+		String from = range.group(1);
+		String to = range.group(2);
+		long first = Long.parseLong(from);
+		long last = Long.parseLong(to);
+		if (first > last || last - first >= MAX_HOSTS) {
+			throw new IllegalArgumentException("Host range [" + from + "-" + to + "] is not valid.");
+		}
+		// "[01-20]" keeps the leading zero, "[1-20]" does not.
+		String format = from.length() > 1 && from.charAt(0) == '0' ? "%0" + from.length() + "d" : "%d";
+		String prefix = pattern.substring(0, range.start());
+		String suffix = pattern.substring(range.end());
+		for (long i = first; i <= last; i++) {
+			// The suffix can have another range, for example "rack[1-2]-node[1-8]".
+			expand(prefix + String.format(format, i) + suffix, hosts);
+		}
+	}
+}
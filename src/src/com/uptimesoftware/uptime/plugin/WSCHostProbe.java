@@ -0,0 +1,202 @@
+package com.uptimesoftware.uptime.plugin;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.UnknownHostException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * WSCHostProbe class that checks a host is reachable before a wmic command is started against it. WMI needs the RPC
+ * endpoint mapper (port 135), so a non-blocking connect to that port with a short deadline tells in milliseconds what
+ * wmic only tells after its RPC timeout, with a process and a slot of the WSCProcessGovernor held meanwhile.
+ * 
+ * Resolved addresses are cached for dnsTtlMillis. Hosts that cannot be resolved or reached are kept in a negative
+ * cache for negativeTtlMillis, their checks fail at once without a lookup or a connect. Reachable hosts are not cached,
+ * they are probed again by the next wmic command.
+ * 
+ * @author uptime software
+ */
+public class WSCHostProbe {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(WSCHostProbe.class);
+
+	/**
+	 * Probe that never probes, for tests with fake host names (see setInstance()).
+	 */
+	public static final WSCHostProbe DISABLED = new WSCHostProbe(0, 0, 0, 0);
+
+	private static volatile WSCHostProbe instance = new WSCHostProbe(Integer.getInteger("wsc.probePort", 135),
+			Integer.getInteger("wsc.probeTimeout", 1000), TimeUnit.SECONDS.toMillis(Integer.getInteger(
+					"wsc.probeNegativeTtl", 30)), TimeUnit.SECONDS.toMillis(Integer.getInteger("wsc.probeDnsTtl",
+					300)));
+
+	private final int port;
+	private final int connectTimeoutMillis;
+	private final long negativeTtlMillis;
+	private final long dnsTtlMillis;
+
+	private final ConcurrentHashMap<String, Entry<InetAddress>> addresses =
+			new ConcurrentHashMap<String, Entry<InetAddress>>();
+	private final ConcurrentHashMap<String, Entry<String>> unreachable = new ConcurrentHashMap<String, Entry<String>>();
+
+	/**
+	 * Create WSCHostProbe.
+	 * 
+	 * @param port
+	 *            Port to connect to, 0 to never probe.
+	 * @param connectTimeoutMillis
+	 *            Maximum time a connect can take.
+	 * @param negativeTtlMillis
+	 *            Time a host that cannot be reached is not probed again.
+	 * @param dnsTtlMillis
+	 *            Time a resolved address is re-used.
+	 */
+	public WSCHostProbe(int port, int connectTimeoutMillis, long negativeTtlMillis, long dnsTtlMillis) {
+		this.port = port;
+		this.connectTimeoutMillis = connectTimeoutMillis;
+		this.negativeTtlMillis = negativeTtlMillis;
+		this.dnsTtlMillis = dnsTtlMillis;
+	}
+
+	/**
+	 * Get the probe of the plugin. Settings can be changed with the system properties wsc.probePort (0 to disable),
+	 * wsc.probeTimeout (in milliseconds), wsc.probeNegativeTtl and wsc.probeDnsTtl (in seconds).
+	 * 
+	 * @return WSCHostProbe.
+	 */
+	public static WSCHostProbe getInstance() {
+		return instance;
+	}
+
+	/**
+	 * Replace the probe of the plugin, for tests and load tests.
+	 * 
+	 * @param probe
+	 *            Probe, DISABLED to never probe.
+	 */
+	public static void setInstance(WSCHostProbe probe) {
+		instance = probe;
+	}
+
+	/**
+	 * Check if the given host can be reached.
+	 * 
+	 * @param hostName
+	 *            Host name or address.
+	 * @return Null if the host is reachable or probing is disabled, otherwise the error message.
+	 */
+	public String check(String hostName) {
+		if (port <= 0) {
+			return null;
+		}
+		String key = hostName.toLowerCase(Locale.ENGLISH);
+		long nowNanos = System.nanoTime();
+		Entry<String> failure = unreachable.get(key);
+		if (failure != null && failure.isFresh(nowNanos)) {
+			return failure.value;
+		}
+
+		String errorMessage;
+		try {
+			errorMessage = connect(resolve(key, nowNanos));
+		} catch (UnknownHostException e) {
+			errorMessage = "Host name " + hostName + " cannot be resolved.";
+		}
+		if (errorMessage == null) {
+			unreachable.remove(key);
+			return null;
+		}
+		LOGGER.debug("Probe of {} failed : {}", hostName, errorMessage);
+		unreachable.put(key,
+				new Entry<String>(errorMessage, nowNanos + TimeUnit.MILLISECONDS.toNanos(negativeTtlMillis)));
+		// Resolve again on the next probe, the address may be the reason.
+		addresses.remove(key);
+		return errorMessage;
+	}
+
+	/**
+	 * Forget the cached addresses and unreachable hosts. Mainly for tests.
+	 */
+	public void clear() {
+		addresses.clear();
+		unreachable.clear();
+	}
+
+	private InetAddress resolve(String key, long nowNanos) throws UnknownHostException {
+		Entry<InetAddress> address = addresses.get(key);
+		if (address != null && address.isFresh(nowNanos)) {
+			return address.value;
+		}
+		InetAddress resolved = InetAddress.getByName(key);
+		addresses.put(key, new Entry<InetAddress>(resolved, nowNanos + TimeUnit.MILLISECONDS.toNanos(dnsTtlMillis)));
+		return resolved;
+	}
+
+	/**
+	 * Connect to the port of the given address without blocking longer than connectTimeoutMillis.
+	 * 
+	 * @return Null if the connect was successful, otherwise the error message.
+	 */
+	private String connect(InetAddress address) {
+		SocketChannel channel = null;
+		Selector selector = null;
+		try {
+			channel = SocketChannel.open();
+			channel.configureBlocking(false);
+			if (!channel.connect(new InetSocketAddress(address, port))) {
+				selector = Selector.open();
+				channel.register(selector, SelectionKey.OP_CONNECT);
+				if (selector.select(connectTimeoutMillis) == 0) {
+					return "Host " + address.getHostAddress() + " did not answer on port " + port + " within "
+							+ connectTimeoutMillis + " ms.";
+				}
+				channel.finishConnect();
+			}
+			return null;
+		} catch (IOException e) {
+			return "Host " + address.getHostAddress() + " is not reachable on port " + port + " : " + e.getMessage();
+		} finally {
+			close(selector);
+			close(channel);
+		}
+	}
+
+	private static void close(Closeable closeable) {
+		if (closeable == null) {
+			return;
+		}
+		try {
+			closeable.close();
+		} catch (IOException e) {
+			LOGGER.debug("Closing the probe failed.", e);
+		}
+	}
+
+	/**
+	 * A cached value and when it expires.
+	 */
+	private static class Entry<T> {
+
+		private final T value;
+		private final long expiryNanos;
+
+		Entry(T value, long expiryNanos) {
+			this.value = value;
+			this.expiryNanos = expiryNanos;
+		}
+
+		boolean isFresh(long nowNanos) {
+			return nowNanos - expiryNanos < 0;
+		}
+	}
+}
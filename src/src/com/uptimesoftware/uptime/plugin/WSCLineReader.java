@@ -0,0 +1,256 @@
+package com.uptimesoftware.uptime.plugin;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * WSCLineReader class that reads WMIC output line by line straight from the bytes of the process. The encoding is
+ * detected from the first bytes : "wmic /format:csv" on Windows writes UTF-16LE (with or without a byte order mark),
+ * the WMIC client on Linux writes UTF-8. Lines are decoded into a char buffer that is re-used for every line, lines of
+ * ASCII characters are copied without a decoder, and "\r\n" as well as the "\r\r\n" of Windows WMIC end a line. A line
+ * that is not valid UTF-8 is decoded with the platform charset, as InputStreamReader did.
+ * 
+ * A WSCLineReader is not thread-safe, use one per stream.
+ * 
+ * @author uptime software
+ */
+public class WSCLineReader {
+
+	/**
+	 * Encodings of WMIC output.
+	 */
+	public enum Encoding {
+		UTF_8, UTF_16LE
+	}
+
+	private static final int BUFFER_SIZE = 8192;
+	private static final int INITIAL_LINE_LENGTH = 256;
+
+	private final InputStream in;
+	private final byte[] buffer = new byte[BUFFER_SIZE];
+	private int position;
+	private int limit;
+	private boolean endOfStream;
+	private Encoding encoding;
+
+	// Bytes of the current line, UTF-8 only.
+	private byte[] lineBytes = new byte[INITIAL_LINE_LENGTH];
+	private final Line line = new Line();
+	private CharsetDecoder utf8Decoder;
+
+	/**
+	 * Create WSCLineReader.
+	 * 
+	 * @param in
+	 *            Standard output of the WMIC process.
+	 */
+	public WSCLineReader(InputStream in) {
+		this.in = in;
+	}
+
+	/**
+	 * Read the next line.
+	 * 
+	 * @return The line without its terminator, only valid until the next call. Null at the end of the stream.
+	 * @throws IOException
+	 *             If reading fails.
+	 */
+	public CharSequence readLine() throws IOException {
+		if (encoding == null) {
+			encoding = detectEncoding();
+		}
+		boolean read = encoding == Encoding.UTF_16LE ? readUtf16Line() : readUtf8Line();
+		if (!read) {
+			return null;
+		}
+		// Windows WMIC ends its lines with "\r\r\n".
+		while (line.length > 0 && line.chars[line.length - 1] == '\r') {
+			line.length--;
+		}
+		return line;
+	}
+
+	/**
+	 * Get encoding.
+	 * 
+	 * @return Encoding of the stream, null before the first line is read.
+	 */
+	public Encoding getEncoding() {
+		return this.encoding;
+	}
+
+	private Encoding detectEncoding() throws IOException {
+		while (limit < 4 && fill(limit)) {
+			// Read at least 4 bytes, unless the stream is shorter.
+		}
+		if (limit >= 2 && buffer[0] == (byte) 0xff && buffer[1] == (byte) 0xfe) {
+			position = 2;
+			return Encoding.UTF_16LE;
+		} else if (limit >= 3 && buffer[0] == (byte) 0xef && buffer[1] == (byte) 0xbb && buffer[2] == (byte) 0xbf) {
+			position = 3;
+			return Encoding.UTF_8;
+		} else if (limit >= 2 && buffer[0] != 0 && buffer[1] == 0) {
+			// ASCII text in UTF-16LE without a byte order mark.
+			return Encoding.UTF_16LE;
+		}
+		return Encoding.UTF_8;
+	}
+
+	private boolean readUtf16Line() throws IOException {
+		line.length = 0;
+		int low;
+		while ((low = nextByte()) >= 0) {
+			int high = nextByte();
+			if (high < 0) {
+				// A truncated stream ends with half a character.
+				break;
+			}
+			char c = (char) (low | high << 8);
+			if (c == '\n') {
+				return true;
+			}
+			line.append(c);
+		}
+		return line.length > 0;
+	}
+
+	private boolean readUtf8Line() throws IOException {
+		int length = 0;
+		int nonAscii = 0;
+		boolean terminated = false;
+		while (!terminated && (position < limit || fill(0))) {
+			int end = position;
+			while (end < limit && buffer[end] != '\n') {
+				nonAscii |= buffer[end];
+				end++;
+			}
+			terminated = end < limit;
+			int count = end - position;
+			if (length + count > lineBytes.length) {
+				lineBytes = Arrays.copyOf(lineBytes, Math.max(lineBytes.length * 2, length + count));
+			}
+			System.arraycopy(buffer, position, lineBytes, length, count);
+			length += count;
+			position = terminated ? end + 1 : end;
+		}
+		if (!terminated && length == 0) {
+			return false;
+		}
+
+		line.length = 0;
+		if (nonAscii >= 0) {
+			// ASCII fast path, every byte is a char.
+			line.ensureCapacity(length);
+			for (int i = 0; i < length; i++) {
+				line.chars[i] = (char) lineBytes[i];
+			}
+			line.length = length;
+		} else {
+			decodeUtf8(length);
+		}
+		return true;
+	}
+
+	private void decodeUtf8(int length) {
+		if (utf8Decoder == null) {
+			utf8Decoder = StandardCharsets.UTF_8.newDecoder().onMalformedInput(CodingErrorAction.REPORT)
+					.onUnmappableCharacter(CodingErrorAction.REPORT);
+		}
+		line.ensureCapacity(length);
+		CharBuffer chars = CharBuffer.wrap(line.chars);
+		utf8Decoder.reset();
+		if (!utf8Decoder.decode(ByteBuffer.wrap(lineBytes, 0, length), chars, true).isError()
+				&& !utf8Decoder.flush(chars).isError()) {
+			line.length = chars.position();
+			return;
+		}
+		try {
+			// Not UTF-8, fall back to the platform charset.
+			CharBuffer decoded = Charset.defaultCharset().newDecoder().onMalformedInput(CodingErrorAction.REPLACE)
+					.onUnmappableCharacter(CodingErrorAction.REPLACE).decode(ByteBuffer.wrap(lineBytes, 0, length));
+			int decodedLength = decoded.remaining();
+			line.ensureCapacity(decodedLength);
+			decoded.get(line.chars, 0, decodedLength);
+			line.length = decodedLength;
+		} catch (CharacterCodingException e) {
+			// Cannot happen with REPLACE.
+			line.length = 0;
+		}
+	}
+
+	private int nextByte() throws IOException {
+		if (position == limit && !fill(0)) {
+			return -1;
+		}
+		return buffer[position++] & 0xff;
+	}
+
+	/**
+	 * Read more bytes into the buffer from the given offset.
+	 * 
+	 * @return True if bytes were read, false at the end of the stream.
+	 */
+	private boolean fill(int offset) throws IOException {
+		if (endOfStream) {
+			return false;
+		}
+		int read = in.read(buffer, offset, buffer.length - offset);
+		if (read < 0) {
+			endOfStream = true;
+			return false;
+		}
+		if (offset == 0) {
+			position = 0;
+		}
+		limit = offset + read;
+		return true;
+	}
+
+	/**
+	 * The current line, a view on the re-used char buffer.
+	 */
+	private static class Line implements CharSequence {
+
+		private char[] chars = new char[INITIAL_LINE_LENGTH];
+		private int length;
+
+		private void append(char c) {
+			ensureCapacity(length + 1);
+			chars[length++] = c;
+		}
+
+		private void ensureCapacity(int capacity) {
+			if (capacity > chars.length) {
+				chars = Arrays.copyOf(chars, Math.max(chars.length * 2, capacity));
+			}
+		}
+
+		@Override
+		public int length() {
+			return length;
+		}
+
+		@Override
+		public char charAt(int index) {
+			return chars[index];
+		}
+
+		@Override
+		public CharSequence subSequence(int start, int end) {
+			return new String(chars, start, end - start);
+		}
+
+		@Override
+		public String toString() {
+			return new String(chars, 0, length);
+		}
+	}
+}
@@ -0,0 +1,249 @@
+package com.uptimesoftware.uptime.plugin;
+
+/**
+ * WSCLineTokenizer class that splits a line of WMIC output into Caption, Name, StartMode and State without allocating.
+ * The line is scanned right-to-left because only the last three columns are reliable, the Caption (aka Service Display
+ * Name) may contain the delimiter itself. Each column is handed out as a Field, a CharSequence view on the line that is
+ * re-used for the next line, so only services that pass the filters need to be turned into Strings. With process
+ * metrics, the ProcessId column is between Name and StartMode.
+ * 
+ * A WSCLineTokenizer is not thread-safe, use one per monitor.
+ * 
+ * @author uptime software
+ */
+public class WSCLineTokenizer {
+
+	private final char delimiter;
+	// On Windows, "/format:csv" adds the Node column in front of Caption.
+	private final boolean nodeColumn;
+	private final boolean processIdColumn;
+
+	private final Field displayName = new Field();
+	private final Field serviceName = new Field();
+	private final Field processId = new Field();
+	private final Field startupType = new Field();
+	private final Field status = new Field();
+
+	/**
+	 * Create WSCLineTokenizer.
+	 * 
+	 * @param delimiter
+	 *            Column delimiter of WMIC output.
+	 * @param nodeColumn
+	 *            True if each line starts with the Node column (Windows WMIC), false otherwise (Linux WMIC client).
+	 */
+	public WSCLineTokenizer(char delimiter, boolean nodeColumn) {
+		this(delimiter, nodeColumn, false);
+	}
+
+	/**
+	 * Create WSCLineTokenizer.
+	 * 
+	 * @param delimiter
+	 *            Column delimiter of WMIC output.
+	 * @param nodeColumn
+	 *            True if each line starts with the Node column (Windows WMIC), false otherwise (Linux WMIC client).
+	 * @param processIdColumn
+	 *            True if the ProcessId column is selected, false otherwise.
+	 */
+	public WSCLineTokenizer(char delimiter, boolean nodeColumn, boolean processIdColumn) {
+		this.delimiter = delimiter;
+		this.nodeColumn = nodeColumn;
+		this.processIdColumn = processIdColumn;
+	}
+
+	/**
+	 * Split the given line. The Fields of the previous line are overwritten.
+	 * 
+	 * @param line
+	 *            A line of WMIC output, without line terminator.
+	 * @return True if the line has all columns and none of them is empty, false otherwise.
+	 */
+	public boolean tokenize(CharSequence line) {
+		int end = line.length();
+		// State, StartMode, [ProcessId,] and Name are right-anchored.
+		int stateDelimiter = lastIndexOf(line, end - 1);
+		int startupTypeDelimiter = lastIndexOf(line, stateDelimiter - 1);
+		int processIdDelimiter = processIdColumn ? lastIndexOf(line, startupTypeDelimiter - 1) : startupTypeDelimiter;
+		int serviceNameDelimiter = lastIndexOf(line, processIdDelimiter - 1);
+		if (serviceNameDelimiter < 0) {
+			return false;
+		}
+		// Whatever is left is [Node,]Caption, and only Caption may contain the delimiter.
+		int displayNameStart = 0;
+		if (nodeColumn) {
+			displayNameStart = indexOf(line, 0, serviceNameDelimiter) + 1;
+			if (displayNameStart == 0) {
+				return false;
+			}
+		}
+
+		displayName.set(line, displayNameStart, serviceNameDelimiter);
+		serviceName.set(line, serviceNameDelimiter + 1, processIdDelimiter);
+		processId.set(line, processIdDelimiter + 1, startupTypeDelimiter);
+		startupType.set(line, startupTypeDelimiter + 1, stateDelimiter);
+		status.set(line, stateDelimiter + 1, end);
+		return displayName.length() > 0 && serviceName.length() > 0 && (!processIdColumn || processId.length() > 0)
+				&& startupType.length() > 0 && status.length() > 0;
+	}
+
+	/**
+	 * Get displayName of the last line.
+	 * 
+	 * @return Caption (aka Service Display Name) view.
+	 */
+	public Field getDisplayName() {
+		return this.displayName;
+	}
+
+	/**
+	 * Get serviceName of the last line.
+	 * 
+	 * @return Name (aka Service Name) view.
+	 */
+	public Field getServiceName() {
+		return this.serviceName;
+	}
+
+	/**
+	 * Get processId of the last line.
+	 * 
+	 * @return ProcessId view, empty if the ProcessId column is not selected. 0 for a service that is not running.
+	 */
+	public Field getProcessId() {
+		return this.processId;
+	}
+
+	/**
+	 * Get startupType of the last line.
+	 * 
+	 * @return StartMode (aka Startup Type) view.
+	 */
+	public Field getStartupType() {
+		return this.startupType;
+	}
+
+	/**
+	 * Get status of the last line.
+	 * 
+	 * @return State (aka Service Status) view.
+	 */
+	public Field getStatus() {
+		return this.status;
+	}
+
+	/**
+	 * Same as String.contains() without making a String of the given CharSequence.
+	 * 
+	 * @param text
+	 *            Text to look in, usually a Field.
+	 * @param s
+	 *            String to look for.
+	 * @return True if text contains s, false otherwise.
+	 */
+	public static boolean contains(CharSequence text, String s) {
+		int last = text.length() - s.length();
+		for (int i = 0; i <= last; i++) {
+			int j = 0;
+			while (j < s.length() && text.charAt(i + j) == s.charAt(j)) {
+				j++;
+			}
+			if (j == s.length()) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Same as Long.parseLong() for a column of digits, without making a String of the given CharSequence.
+	 * 
+	 * @param text
+	 *            Text to parse, usually a Field.
+	 * @return Value of the digits, -1 if text is empty, has another character or more than 18 digits.
+	 */
+	public static long parseLong(CharSequence text) {
+		if (text.length() == 0 || text.length() > 18) {
+			return -1;
+		}
+		long value = 0;
+		for (int i = 0; i < text.length(); i++) {
+			char c = text.charAt(i);
+			if (c < '0' || c > '9') {
+				return -1;
+			}
+			value = value * 10 + (c - '0');
+		}
+		return value;
+	}
+
+	/**
+	 * Same as String.trim().isEmpty() without making a String of the given CharSequence.
+	 * 
+	 * @param text
+	 *            Text to check, usually a line.
+	 * @return True if text has no character other than whitespace and control characters, false otherwise.
+	 */
+	public static boolean isBlank(CharSequence text) {
+		for (int i = 0; i < text.length(); i++) {
+			if (text.charAt(i) > ' ') {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private int lastIndexOf(CharSequence line, int from) {
+		for (int i = from; i >= 0; i--) {
+			if (line.charAt(i) == delimiter) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	private int indexOf(CharSequence line, int from, int to) {
+		for (int i = from; i < to; i++) {
+			if (line.charAt(i) == delimiter) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * A column of the last tokenized line. Only valid until the next call of tokenize().
+	 */
+	public static class Field implements CharSequence {
+
+		private CharSequence line;
+		private int start;
+		private int end;
+
+		private void set(CharSequence line, int start, int end) {
+			this.line = line;
+			this.start = start;
+			this.end = end;
+		}
+
+		@Override
+		public int length() {
+			return end - start;
+		}
+
+		@Override
+		public char charAt(int index) {
+			return line.charAt(start + index);
+		}
+
+		@Override
+		public CharSequence subSequence(int start, int end) {
+			return line.subSequence(this.start + start, this.start + end);
+		}
+
+		@Override
+		public String toString() {
+			return line.subSequence(start, end).toString();
+		}
+	}
+}
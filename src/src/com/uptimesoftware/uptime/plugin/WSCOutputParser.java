@@ -0,0 +1,161 @@
+package com.uptimesoftware.uptime.plugin;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * WSCOutputParser class that is a state machine over the lines of WMIC output. It tells the service rows apart from
+ * the rest of the output :
+ * 
+ * - the preamble before the column names, where the WMIC client on Linux prints its errors (kept as diagnostics),
+ * 
+ * - the column names, once at the start on Windows and again every few services on Linux,
+ * 
+ * - the class markers of the WMIC client on Linux, "CLASS: Win32_Service" and "CLASS: Win32_TerminalService",
+ * 
+ * - blank lines.
+ * 
+ * After the column names, a line is classified by its first characters and its length, so a service row is not
+ * scanned before it is split. A WSCOutputParser is used for one wmic command, it is not thread-safe.
+ * 
+ * @author uptime software
+ */
+public class WSCOutputParser {
+
+	/**
+	 * Types of the lines of WMIC output.
+	 */
+	public enum LineType {
+		PREAMBLE, COLUMN_NAMES, CLASS_MARKER, BLANK, SERVICE
+	}
+
+	private enum State {
+		// Before the first column names.
+		PREAMBLE,
+		// After the column names, service rows with column names and class markers in between.
+		SERVICES
+	}
+
+	private static final String CLASS_MARKER = "CLASS: ";
+	// On Windows, "/format:csv" adds the Node column in front of the column names.
+	private static final String NODE_COLUMN = "Node,";
+
+	// Enough to tell why the WMIC client failed, without keeping a whole error dump.
+	private static final int MAX_DIAGNOSTICS = 20;
+	private static final int MAX_DIAGNOSTIC_LENGTH = 256;
+
+	private final String columnNames;
+	private final String nodeColumnNames;
+
+	private State state = State.PREAMBLE;
+	private String className;
+	private final List<String> diagnostics = new ArrayList<String>();
+	private int preambleLines;
+
+	/**
+	 * Create WSCOutputParser.
+	 * 
+	 * @param columnNames
+	 *            Column names of the query, without the Node column.
+	 */
+	public WSCOutputParser(String columnNames) {
+		this.columnNames = columnNames;
+		this.nodeColumnNames = NODE_COLUMN + columnNames;
+	}
+
+	/**
+	 * Classify the next line of the output.
+	 * 
+	 * @param line
+	 *            A line of WMIC output, without line terminator.
+	 * @return Type of the line. Only SERVICE lines hold a service.
+	 */
+	public LineType classify(CharSequence line) {
+		if (line.length() == 0 || line.charAt(0) <= ' ' && WSCLineTokenizer.isBlank(line)) {
+			return LineType.BLANK;
+		}
+		if (state == State.PREAMBLE) {
+			return classifyPreamble(line);
+		}
+		char first = line.charAt(0);
+		if (first == 'C' && startsWith(line, CLASS_MARKER)) {
+			className = line.subSequence(CLASS_MARKER.length(), line.length()).toString();
+			return LineType.CLASS_MARKER;
+		} else if ((first == columnNames.charAt(0) || first == 'N') && isColumnNames(line)) {
+			return LineType.COLUMN_NAMES;
+		}
+		return LineType.SERVICE;
+	}
+
+	/**
+	 * Check if the column names were found.
+	 * 
+	 * @return True if the output has services, false if the output is only a preamble (authentication failed, or no
+	 *         instance for a WHERE clause).
+	 */
+	public boolean isColumnNamesFound() {
+		return this.state == State.SERVICES;
+	}
+
+	/**
+	 * Get className.
+	 * 
+	 * @return WMI class of the last class marker, for example Win32_TerminalService. Null if there was none.
+	 */
+	public String getClassName() {
+		return this.className;
+	}
+
+	/**
+	 * Get the first lines of the preamble, the errors of the WMIC client on Linux.
+	 * 
+	 * @return Unmodifiable list of at most MAX_DIAGNOSTICS lines, cut at MAX_DIAGNOSTIC_LENGTH characters.
+	 */
+	public List<String> getDiagnostics() {
+		return Collections.unmodifiableList(this.diagnostics);
+	}
+
+	/**
+	 * Get preambleLines.
+	 * 
+	 * @return Number of non-blank lines before the column names, also the ones not kept as diagnostics.
+	 */
+	public int getPreambleLines() {
+		return this.preambleLines;
+	}
+
+	private LineType classifyPreamble(CharSequence line) {
+		// The preamble is a few lines, they are scanned as a whole : the column names may follow a prefix.
+		if (WSCLineTokenizer.contains(line, columnNames)) {
+			state = State.SERVICES;
+			return LineType.COLUMN_NAMES;
+		} else if (startsWith(line, CLASS_MARKER)) {
+			className = line.subSequence(CLASS_MARKER.length(), line.length()).toString();
+			return LineType.CLASS_MARKER;
+		}
+		preambleLines++;
+		if (diagnostics.size() < MAX_DIAGNOSTICS) {
+			diagnostics.add(line.subSequence(0, Math.min(line.length(), MAX_DIAGNOSTIC_LENGTH)).toString());
+		}
+		return LineType.PREAMBLE;
+	}
+
+	private boolean isColumnNames(CharSequence line) {
+		int length = line.length();
+		return length == columnNames.length() && startsWith(line, columnNames) || length == nodeColumnNames.length()
+				&& startsWith(line, nodeColumnNames);
+	}
+
+	private static boolean startsWith(CharSequence line, String prefix) {
+		if (line.length() < prefix.length()) {
+			return false;
+		}
+		for (int i = 0; i < prefix.length(); i++) {
+			if (line.charAt(i) != prefix.charAt(i)) {
+				return false;
+			}
+		}
+		return true;
+	}
+}
@@ -0,0 +1,118 @@
+package com.uptimesoftware.uptime.plugin;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * WSCPhaseTimer class that adds up the time a check spends in each phase, so that a slow check shows whether WMI,
+ * authentication or the plugin itself is slow. Phases that run once per line (parse, filter) are added up over all
+ * lines.
+ * 
+ * @author uptime software
+ */
+public class WSCPhaseTimer {
+
+	/**
+	 * Phases of a check, with the name of their output variable.
+	 */
+	public enum Phase {
+		// Checking the inputs, compiling the regexes and building the wmic command.
+		VALIDATE("validateTime"),
+		// Waiting for a slot of WSCProcessGovernor.
+		QUEUE("queueWait"),
+		// Starting the wmic process.
+		SPAWN("spawnTime"),
+		// From the start of the process until its first byte of output: connecting, authenticating and querying WMI.
+		FIRST_BYTE("firstByteTime"),
+		// From the first line of output until the column names.
+		HEADER("headerTime"),
+		// Splitting the lines into columns.
+		PARSE("parseTime"),
+		// Matching the services with the filters.
+		FILTER("filterTime"),
+		// Comparing with the previous poll and building the outputs.
+		RENDER("renderTime");
+
+		private final String variableName;
+
+		Phase(String variableName) {
+			this.variableName = variableName;
+		}
+
+		/**
+		 * Get variableName.
+		 * 
+		 * @return Name of the output variable in the plugin definition.
+		 */
+		public String getVariableName() {
+			return this.variableName;
+		}
+	}
+
+	private final long[] nanos = new long[Phase.values().length];
+
+	/**
+	 * Add time to a phase.
+	 * 
+	 * @param phase
+	 *            Phase.
+	 * @param elapsedNanos
+	 *            Time spent in the phase, negative values are ignored.
+	 */
+	public void add(Phase phase, long elapsedNanos) {
+		if (elapsedNanos > 0) {
+			nanos[phase.ordinal()] += elapsedNanos;
+		}
+	}
+
+	/**
+	 * Add the time from the given start until now to a phase.
+	 * 
+	 * @param phase
+	 *            Phase.
+	 * @param startNanos
+	 *            System.nanoTime() when the phase started.
+	 * @return System.nanoTime() now, the start of the next phase.
+	 */
+	public long addSince(Phase phase, long startNanos) {
+		long now = System.nanoTime();
+		add(phase, now - startNanos);
+		return now;
+	}
+
+	/**
+	 * Get the time spent in a phase.
+	 * 
+	 * @param phase
+	 *            Phase.
+	 * @return Time in ms.
+	 */
+	public long getMillis(Phase phase) {
+		return TimeUnit.NANOSECONDS.toMillis(nanos[phase.ordinal()]);
+	}
+
+	/**
+	 * Set the time of every phase to 0, for the next check.
+	 */
+	public void reset() {
+		for (int i = 0; i < nanos.length; i++) {
+			nanos[i] = 0;
+		}
+	}
+
+	/**
+	 * Get the time of every phase in one line, for example "validateTime=1 queueWait=0 spawnTime=3 ...".
+	 * 
+	 * @return Time of every phase in ms.
+	 */
+	@Override
+	public String toString() {
+		StringBuilder line = new StringBuilder();
+		for (Phase phase : Phase.values()) {
+			if (line.length() > 0) {
+				line.append(' ');
+			}
+			line.append(phase.getVariableName()).append('=').append(getMillis(phase));
+		}
+		return line.toString();
+	}
+}
@@ -20,6 +20,13 @@ public class WSCPluginParams {
 	private String startupTypeExclude;
 	private String serviceStatusInclude;
 	private String serviceStatusExclude;
+	// [Advanced Input]
+	private int snapshotMaxAge; // In seconds, 0 if snapshots are not shared.
+	private int timeout; // In seconds, 0 for the default timeout.
+	private WSCProcessGovernor.Priority priority = WSCProcessGovernor.Priority.NORMAL;
+	private int matchesCap; // 0 to read every service.
+	private int maxRefreshInterval; // In seconds, 0 to refresh on every poll.
+	private boolean processMetrics; // True to query the processes of the matched services too.
 
 	/**
 	 * Create WSCPluginParams with all the input paramters from Up.time.
@@ -138,6 +145,79 @@ public class WSCPluginParams {
 		return this.serviceStatusExclude;
 	}
 
+	/**
+	 * Get snapshotMaxAge.
+	 * 
+	 * @return snapshotMaxAge in seconds.
+	 */
+	public int getSnapshotMaxAge() {
+		return this.snapshotMaxAge;
+	}
+
+	/**
+	 * Get timeout.
+	 * 
+	 * @return timeout in seconds.
+	 */
+	public int getTimeout() {
+		return this.timeout;
+	}
+
+	/**
+	 * Get priority.
+	 * 
+	 * @return priority class of the check.
+	 */
+	public WSCProcessGovernor.Priority getPriority() {
+		return this.priority;
+	}
+
+	/**
+	 * Get matchesCap.
+	 * 
+	 * @return Number of matched services to stop reading at, 0 for no cap.
+	 */
+	public int getMatchesCap() {
+		return this.matchesCap;
+	}
+
+	/**
+	 * Get maxRefreshInterval.
+	 * 
+	 * @return maxRefreshInterval in seconds.
+	 */
+	public int getMaxRefreshInterval() {
+		return this.maxRefreshInterval;
+	}
+
+	/**
+	 * Get processMetrics.
+	 * 
+	 * @return True if the working set and CPU of the processes of the matched services are queried, false otherwise.
+	 */
+	public boolean isProcessMetrics() {
+		return this.processMetrics;
+	}
+
+	/**
+	 * Check if the result is refreshed by WSCRefreshScheduler or on every poll.
+	 * 
+	 * @return True if maxRefreshInterval is set, false otherwise.
+	 */
+	public boolean isRefreshAdaptive() {
+		return getMaxRefreshInterval() > 0;
+	}
+
+	/**
+	 * Check if snapshots of this host are shared with other monitors or not. Snapshots do not hold process IDs, so
+	 * they are not shared by monitors with processMetrics.
+	 * 
+	 * @return True if snapshotMaxAge is set and processMetrics is not, false otherwise.
+	 */
+	public boolean isSnapshotShared() {
+		return getSnapshotMaxAge() > 0 && !isProcessMetrics();
+	}
+
 	/**
 	 * Check if host is localhost or not.
 	 * 
@@ -233,6 +313,67 @@ public class WSCPluginParams {
 		this.serviceStatusExclude = serviceStatusExclude;
 	}
 
+	/**
+	 * Set snapshotMaxAge.
+	 * 
+	 * @param snapshotMaxAge
+	 *            Maximum age in seconds of a shared snapshot, 0 to disable sharing.
+	 */
+	public void setSnapshotMaxAge(int snapshotMaxAge) {
+		this.snapshotMaxAge = snapshotMaxAge;
+	}
+
+	/**
+	 * Set timeout.
+	 * 
+	 * @param timeout
+	 *            Seconds a WMIC command can run before it is killed, 0 for the default timeout.
+	 */
+	public void setTimeout(int timeout) {
+		this.timeout = timeout;
+	}
+
+	/**
+	 * Set priority.
+	 * 
+	 * @param priority
+	 *            Priority class of the check when WMIC commands wait for a slot.
+	 */
+	public void setPriority(WSCProcessGovernor.Priority priority) {
+		this.priority = priority;
+	}
+
+	/**
+	 * Set matchesCap.
+	 * 
+	 * @param matchesCap
+	 *            Number of matched services to stop reading WMIC output at, 0 to read every service.
+	 */
+	public void setMatchesCap(int matchesCap) {
+		this.matchesCap = matchesCap;
+	}
+
+	/**
+	 * Set maxRefreshInterval.
+	 * 
+	 * @param maxRefreshInterval
+	 *            Maximum seconds between two WMIC commands of a host without changes, 0 to refresh on every poll.
+	 */
+	public void setMaxRefreshInterval(int maxRefreshInterval) {
+		this.maxRefreshInterval = maxRefreshInterval;
+	}
+
+	/**
+	 * Set processMetrics.
+	 * 
+	 * @param processMetrics
+	 *            True to query the working set and CPU of the processes of the matched services, see
+	 *            WSCProcessMetrics.
+	 */
+	public void setProcessMetrics(boolean processMetrics) {
+		this.processMetrics = processMetrics;
+	}
+
 	/**
 	 * Set hostName
 	 * 
@@ -0,0 +1,34 @@
+package com.uptimesoftware.uptime.plugin;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * WSCProcessFactory interface that starts the WMIC processes of WSCProcessRunner. The plugin uses DEFAULT, tests and
+ * load tests put a factory of fake WMIC processes in its place (see WSCProcessRunner.setProcessFactory()).
+ * 
+ * @author uptime software
+ */
+public interface WSCProcessFactory {
+
+	/**
+	 * Starts real processes with ProcessBuilder.
+	 */
+	WSCProcessFactory DEFAULT = new WSCProcessFactory() {
+		@Override
+		public Process start(List<String> command) throws IOException {
+			return new ProcessBuilder(command).start();
+		}
+	};
+
+	/**
+	 * Start a process.
+	 * 
+	 * @param command
+	 *            Command to execute.
+	 * @return The started process.
+	 * @throws IOException
+	 *             If the process cannot be started.
+	 */
+	Process start(List<String> command) throws IOException;
+}
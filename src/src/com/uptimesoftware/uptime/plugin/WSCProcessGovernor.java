@@ -0,0 +1,240 @@
+package com.uptimesoftware.uptime.plugin;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * WSCProcessGovernor class that limits how many WMIC processes run at the same time, in total and per host. When all
+ * monitors fire at the top of the minute, the rest wait in a queue instead of starting hundreds of processes at once.
+ * 
+ * A free slot goes to the waiting check with the highest priority, then to the one that waited longest. Checks of a
+ * host that is at its own limit are skipped, so a slow host only holds its own slots and never blocks the queue. A
+ * check is promoted one priority class for every AGING_MILLIS it waits, so low priority checks still get through.
+ * 
+ * @author uptime software
+ */
+public class WSCProcessGovernor {
+
+	/**
+	 * Priority class of a check.
+	 */
+	public enum Priority {
+		CRITICAL, NORMAL, LOW;
+
+		/**
+		 * Get the Priority of the priority input.
+		 * 
+		 * @param priority
+		 *            Priority input, for example "Critical".
+		 * @return Priority, NORMAL if the input is empty or unknown.
+		 */
+		public static Priority of(String priority) {
+			for (Priority value : values()) {
+				if (value.name().equalsIgnoreCase(priority)) {
+					return value;
+				}
+			}
+			return NORMAL;
+		}
+	}
+
+	// A waiting check is promoted one priority class per this much waiting.
+	private static final long AGING_MILLIS = 10000;
+
+	private static final WSCProcessGovernor INSTANCE = new WSCProcessGovernor(Integer.getInteger(
+			"wsc.maxProcesses", Math.max(4, 4 * Runtime.getRuntime().availableProcessors())), Integer.getInteger(
+			"wsc.maxProcessesPerHost", 2));
+
+	private final int maxProcesses;
+	private final int maxProcessesPerHost;
+
+	private final ReentrantLock lock = new ReentrantLock();
+	private final List<Waiter> queue = new ArrayList<Waiter>();
+	private final HashMap<String, Integer> runningPerHost = new HashMap<String, Integer>();
+	private int running;
+	private long sequence;
+
+	/**
+	 * Create WSCProcessGovernor.
+	 * 
+	 * @param maxProcesses
+	 *            Maximum number of processes running at the same time.
+	 * @param maxProcessesPerHost
+	 *            Maximum number of processes running against one host at the same time.
+	 */
+	public WSCProcessGovernor(int maxProcesses, int maxProcessesPerHost) {
+		this.maxProcesses = maxProcesses;
+		this.maxProcessesPerHost = maxProcessesPerHost;
+	}
+
+	/**
+	 * Get the governor shared by all monitors of the plugin. Limits can be changed with the system properties
+	 * wsc.maxProcesses and wsc.maxProcessesPerHost.
+	 * 
+	 * @return WSCProcessGovernor.
+	 */
+	public static WSCProcessGovernor getInstance() {
+		return INSTANCE;
+	}
+
+	/**
+	 * Wait for a slot to start a process against the given host.
+	 * 
+	 * @param host
+	 *            Host name the process runs against.
+	 * @param priority
+	 *            Priority class of the check.
+	 * @param timeoutMillis
+	 *            Maximum time to wait.
+	 * @return Permit to release once the process ended, null if no slot was free in time.
+	 * @throws InterruptedException
+	 *             If interrupted while waiting.
+	 */
+	public Permit acquire(String host, Priority priority, long timeoutMillis) throws InterruptedException {
+		String key = host.toLowerCase(Locale.ENGLISH);
+		lock.lock();
+		try {
+			Waiter waiter = new Waiter(key, priority, sequence++, lock.newCondition());
+			queue.add(waiter);
+			admit();
+			long remainingNanos = TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+			try {
+				while (!waiter.admitted && remainingNanos > 0) {
+					remainingNanos = waiter.condition.awaitNanos(remainingNanos);
+				}
+			} catch (InterruptedException e) {
+				if (waiter.admitted) {
+					// Admitted just before the interrupt, give the slot to the next check.
+					release(key);
+				} else {
+					queue.remove(waiter);
+				}
+				throw e;
+			}
+			if (!waiter.admitted) {
+				queue.remove(waiter);
+				return null;
+			}
+			return new Permit(key);
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Get the number of checks waiting for a slot.
+	 * 
+	 * @return Queue length.
+	 */
+	public int getQueueLength() {
+		lock.lock();
+		try {
+			return queue.size();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Give free slots to waiting checks. Must hold the lock.
+	 */
+	private void admit() {
+		long now = System.nanoTime();
+		while (running < maxProcesses) {
+			Waiter next = null;
+			for (Waiter waiter : queue) {
+				if (runningOn(waiter.host) < maxProcessesPerHost && (next == null || waiter.before(next, now))) {
+					next = waiter;
+				}
+			}
+			if (next == null) {
+				// Every waiting check is against a host at its limit.
+				return;
+			}
+			queue.remove(next);
+			running++;
+			runningPerHost.put(next.host, runningOn(next.host) + 1);
+			next.admitted = true;
+			next.condition.signal();
+		}
+	}
+
+	private int runningOn(String host) {
+		Integer count = runningPerHost.get(host);
+		return count == null ? 0 : count;
+	}
+
+	private void release(String host) {
+		lock.lock();
+		try {
+			running--;
+			int count = runningOn(host) - 1;
+			if (count > 0) {
+				runningPerHost.put(host, count);
+			} else {
+				runningPerHost.remove(host);
+			}
+			admit();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * A slot of a running process.
+	 */
+	public class Permit {
+
+		private final String host;
+		private boolean released;
+
+		private Permit(String host) {
+			this.host = host;
+		}
+
+		/**
+		 * Give the slot back. Calling it again does nothing.
+		 */
+		public void release() {
+			if (!released) {
+				released = true;
+				WSCProcessGovernor.this.release(host);
+			}
+		}
+	}
+
+	/**
+	 * A check waiting for a slot.
+	 */
+	private static class Waiter {
+
+		private final String host;
+		private final Priority priority;
+		private final long sequence;
+		private final long queuedNanos = System.nanoTime();
+		private final Condition condition;
+		private boolean admitted;
+
+		Waiter(String host, Priority priority, long sequence, Condition condition) {
+			this.host = host;
+			this.priority = priority;
+			this.sequence = sequence;
+			this.condition = condition;
+		}
+
+		boolean before(Waiter other, long now) {
+			long rank = rank(now);
+			long otherRank = other.rank(now);
+			return rank != otherRank ? rank < otherRank : sequence < other.sequence;
+		}
+
+		private long rank(long now) {
+			return priority.ordinal() - TimeUnit.NANOSECONDS.toMillis(now - queuedNanos) / AGING_MILLIS;
+		}
+	}
+}
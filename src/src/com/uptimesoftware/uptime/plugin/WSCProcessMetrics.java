@@ -0,0 +1,170 @@
+package com.uptimesoftware.uptime.plugin;
+
+import java.util.Collection;
+import java.util.HashMap;
+
+/**
+ * WSCProcessMetrics class that keeps the working set and CPU time of the processes behind the matched services. The
+ * services are queried with their ProcessId, then one Win32_Process query limited to those process IDs gets the
+ * processes in the same check, and the monitor joins both by process ID.
+ * 
+ * Win32_Process only has the CPU time since the process started (KernelModeTime + UserModeTime, in 100 ns units), so
+ * the CPU usage is the CPU time between two samples over the time between them, in percent of one processor. The
+ * first sample of a process has no CPU usage.
+ * 
+ * A WSCProcessMetrics belongs to one monitor, it is not thread-safe.
+ * 
+ * @author uptime software
+ */
+public class WSCProcessMetrics {
+
+	/**
+	 * Column names of the Win32_Process query, in the order WMIC outputs them.
+	 */
+	public static final String COLUMN_NAMES = "KernelModeTime,ProcessId,UserModeTime,WorkingSetSize";
+
+	// Above this, every process of the host is queried, a WHERE clause that long costs more than the extra rows.
+	public static final int MAX_PROCESS_IDS = 200;
+
+	private static final String PROCESS_ID = "ProcessId";
+	// KernelModeTime and UserModeTime are in 100 ns units.
+	private static final long NANOS_PER_CPU_TIME_UNIT = 100;
+
+	private final char delimiter;
+
+	private HashMap<Long, Sample> previous = new HashMap<Long, Sample>();
+	private HashMap<Long, Sample> current = new HashMap<Long, Sample>();
+	private HashMap<Long, Sample> next;
+	private long previousNanos;
+	private long currentNanos;
+	private long nextNanos;
+
+	/**
+	 * Create WSCProcessMetrics.
+	 * 
+	 * @param delimiter
+	 *            Column delimiter of WMIC output.
+	 */
+	public WSCProcessMetrics(char delimiter) {
+		this.delimiter = delimiter;
+	}
+
+	/**
+	 * Build the WQL condition that selects the given processes.
+	 * 
+	 * @param processIds
+	 *            Process IDs of the running services.
+	 * @return "ProcessId=x or ProcessId=y ...", null to query every process if there are more than MAX_PROCESS_IDS.
+	 */
+	public static String whereClause(Collection<Long> processIds) {
+		if (processIds.isEmpty() || processIds.size() > MAX_PROCESS_IDS) {
+			return null;
+		}
+		StringBuilder whereClause = new StringBuilder();
+		for (Long processId : processIds) {
+			if (whereClause.length() > 0) {
+				whereClause.append(" or ");
+			}
+			whereClause.append(PROCESS_ID + "=" + processId);
+		}
+		return whereClause.toString();
+	}
+
+	/**
+	 * Start a sample. The processes of the sample are added with add(), and replace the current ones on commit().
+	 * 
+	 * @param nowNanos
+	 *            System.nanoTime() of the query.
+	 */
+	public void start(long nowNanos) {
+		next = new HashMap<Long, Sample>();
+		nextNanos = nowNanos;
+	}
+
+	/**
+	 * Add a process row of the Win32_Process query to the started sample.
+	 * 
+	 * @param line
+	 *            A line of WMIC output, [Node,]KernelModeTime,ProcessId,UserModeTime,WorkingSetSize.
+	 * @return True if the line has all columns and they are numbers, false otherwise.
+	 */
+	public boolean add(CharSequence line) {
+		long[] values = new long[4];
+		int end = line.length();
+		// The columns are right-anchored, on Windows the Node column is in front of them.
+		for (int column = values.length - 1; column >= 0; column--) {
+			int start = end - 1;
+			while (start >= 0 && line.charAt(start) != delimiter) {
+				start--;
+			}
+			if (start < 0 && column > 0) {
+				return false;
+			}
+			values[column] = WSCLineTokenizer.parseLong(line.subSequence(start + 1, end));
+			if (values[column] < 0) {
+				return false;
+			}
+			end = start;
+		}
+		next.put(values[1], new Sample(values[0] + values[2], values[3]));
+		return true;
+	}
+
+	/**
+	 * End the started sample successfully, its processes become the current ones. A sample that is not committed
+	 * (because the query failed) is dropped, and the CPU usage of the next sample is computed from the last committed
+	 * one.
+	 */
+	public void commit() {
+		previous = current;
+		previousNanos = currentNanos;
+		current = next;
+		currentNanos = nextNanos;
+		next = null;
+	}
+
+	/**
+	 * Get the working set of a process of the current sample.
+	 * 
+	 * @param processId
+	 *            Process ID.
+	 * @return Working set in bytes, -1 if the process is not in the current sample.
+	 */
+	public long getWorkingSet(long processId) {
+		Sample sample = current.get(processId);
+		return sample != null ? sample.workingSet : -1;
+	}
+
+	/**
+	 * Get the CPU usage of a process between the previous and the current sample.
+	 * 
+	 * @param processId
+	 *            Process ID.
+	 * @return Percent of one processor, -1 if the process is not in both samples.
+	 */
+	public double getCpuUsage(long processId) {
+		Sample sample = current.get(processId);
+		Sample previousSample = previous.get(processId);
+		long elapsedNanos = currentNanos - previousNanos;
+		// A CPU time that went down is another process with the same ID.
+		if (sample == null || previousSample == null || sample.cpuTime < previousSample.cpuTime
+				|| elapsedNanos <= 0) {
+			return -1;
+		}
+		return 100.0 * (sample.cpuTime - previousSample.cpuTime) * NANOS_PER_CPU_TIME_UNIT / elapsedNanos;
+	}
+
+	/**
+	 * A process in one sample.
+	 */
+	private static class Sample {
+
+		private final long cpuTime;
+		private final long workingSet;
+
+		Sample(long cpuTime, long workingSet) {
+			this.cpuTime = cpuTime;
+			this.workingSet = workingSet;
+		}
+	}
+}
@@ -0,0 +1,138 @@
+package com.uptimesoftware.uptime.plugin;
+
+/**
+ * WSCProcessResult class that stores how a WMIC process executed by WSCProcessRunner ended.
+ * 
+ * @author uptime software
+ */
+public class WSCProcessResult {
+
+	/**
+	 * How the process ended.
+	 */
+	public enum Status {
+		// The process wrote all its output and exited.
+		COMPLETED,
+		// The output handler did not need the rest of the output, the process was killed.
+		STOPPED,
+		// The deadline passed, the process was killed.
+		TIMED_OUT,
+		// The process wrote more than the output limit, the process was killed.
+		OUTPUT_LIMIT_REACHED,
+		// No slot was free within the deadline, the process was not started.
+		QUEUE_TIMED_OUT
+	}
+
+	private final Status status;
+	private final int exitValue;
+	private final String stderr;
+	private final long stdoutBytes;
+	private final long elapsedMillis;
+	private final long queueWaitMillis;
+	private final long spawnMillis;
+	private final long firstByteMillis;
+
+	/**
+	 * Create WSCProcessResult.
+	 * 
+	 * @param status
+	 *            How the process ended.
+	 * @param exitValue
+	 *            Exit value of the process.
+	 * @param stderr
+	 *            Standard error of the process, truncated to the output limit.
+	 * @param stdoutBytes
+	 *            Number of bytes read from standard output.
+	 * @param elapsedMillis
+	 *            Time from starting the process until it ended.
+	 * @param queueWaitMillis
+	 *            Time waited for a slot of WSCProcessGovernor before starting the process.
+	 * @param spawnMillis
+	 *            Time to start the process.
+	 * @param firstByteMillis
+	 *            Time from the start of the process until its first byte of standard output, -1 if it wrote nothing.
+	 */
+	public WSCProcessResult(Status status, int exitValue, String stderr, long stdoutBytes, long elapsedMillis,
+			long queueWaitMillis, long spawnMillis, long firstByteMillis) {
+		this.status = status;
+		this.exitValue = exitValue;
+		this.stderr = stderr;
+		this.stdoutBytes = stdoutBytes;
+		this.elapsedMillis = elapsedMillis;
+		this.queueWaitMillis = queueWaitMillis;
+		this.spawnMillis = spawnMillis;
+		this.firstByteMillis = firstByteMillis;
+	}
+
+	/**
+	 * Get status.
+	 * 
+	 * @return status.
+	 */
+	public Status getStatus() {
+		return this.status;
+	}
+
+	/**
+	 * Get exitValue.
+	 * 
+	 * @return exitValue, only meaningful if status is COMPLETED.
+	 */
+	public int getExitValue() {
+		return this.exitValue;
+	}
+
+	/**
+	 * Get stderr.
+	 * 
+	 * @return stderr, empty String if the process wrote nothing.
+	 */
+	public String getStderr() {
+		return this.stderr;
+	}
+
+	/**
+	 * Get stdoutBytes.
+	 * 
+	 * @return stdoutBytes.
+	 */
+	public long getStdoutBytes() {
+		return this.stdoutBytes;
+	}
+
+	/**
+	 * Get elapsedMillis.
+	 * 
+	 * @return elapsedMillis.
+	 */
+	public long getElapsedMillis() {
+		return this.elapsedMillis;
+	}
+
+	/**
+	 * Get queueWaitMillis.
+	 * 
+	 * @return queueWaitMillis.
+	 */
+	public long getQueueWaitMillis() {
+		return this.queueWaitMillis;
+	}
+
+	/**
+	 * Get spawnMillis.
+	 * 
+	 * @return spawnMillis.
+	 */
+	public long getSpawnMillis() {
+		return this.spawnMillis;
+	}
+
+	/**
+	 * Get firstByteMillis.
+	 * 
+	 * @return firstByteMillis, -1 if the process wrote nothing to standard output.
+	 */
+	public long getFirstByteMillis() {
+		return this.firstByteMillis;
+	}
+}
@@ -0,0 +1,374 @@
+package com.uptimesoftware.uptime.plugin;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * WSCProcessRunner class that executes a WMIC command with a deadline. Standard output is handed to an OutputHandler on
+ * the calling thread while standard error is drained on another thread, so a chatty standard error cannot block the
+ * process. When the deadline passes or the output limit is reached, the process and its child processes are killed.
+ * With a WSCProcessGovernor, the process only starts once the governor gives it a slot, and the time spent waiting for
+ * the slot counts against the deadline.
+ * 
+ * @author uptime software
+ */
+public class WSCProcessRunner {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(WSCProcessRunner.class);
+
+	// Threads are shared by all monitors of the plugin.
+	private static final ExecutorService STDERR_DRAINERS = Executors.newCachedThreadPool(daemonThreads("wsc-stderr"));
+	private static final ScheduledThreadPoolExecutor WATCHDOG = new ScheduledThreadPoolExecutor(1,
+			daemonThreads("wsc-watchdog"));
+	static {
+		WATCHDOG.setRemoveOnCancelPolicy(true);
+	}
+
+	// How long to wait for the rest of standard error once the process ended.
+	private static final long STDERR_GRACE_MILLIS = 1000;
+
+	private static volatile WSCProcessFactory processFactory = WSCProcessFactory.DEFAULT;
+
+	private final long timeoutMillis;
+	private final long maxOutputBytes;
+	private final WSCProcessGovernor governor;
+	private final String host;
+	private final WSCProcessGovernor.Priority priority;
+
+	/**
+	 * Handles standard output of the process.
+	 */
+	public interface OutputHandler {
+
+		/**
+		 * Read standard output of the process. Returning before the end of the stream stops the process.
+		 * 
+		 * @param stdout
+		 *            Standard output of the process. Reaches its end early when the deadline passes or the output limit
+		 *            is reached.
+		 * @throws IOException
+		 *             If reading fails.
+		 */
+		void handle(InputStream stdout) throws IOException;
+	}
+
+	/**
+	 * Create WSCProcessRunner.
+	 * 
+	 * @param timeoutMillis
+	 *            Deadline of a process from its start.
+	 * @param maxOutputBytes
+	 *            Maximum number of bytes read from standard output, and kept from standard error.
+	 */
+	public WSCProcessRunner(long timeoutMillis, long maxOutputBytes) {
+		this(timeoutMillis, maxOutputBytes, null, null, null);
+	}
+
+	/**
+	 * Create WSCProcessRunner that waits for a slot of the given governor before starting a process.
+	 * 
+	 * @param timeoutMillis
+	 *            Deadline of a process from the call of run(), the wait for a slot included.
+	 * @param maxOutputBytes
+	 *            Maximum number of bytes read from standard output, and kept from standard error.
+	 * @param governor
+	 *            Governor of WMIC processes, null to start processes right away.
+	 * @param host
+	 *            Host name the processes run against.
+	 * @param priority
+	 *            Priority class of the check.
+	 */
+	public WSCProcessRunner(long timeoutMillis, long maxOutputBytes, WSCProcessGovernor governor, String host,
+			WSCProcessGovernor.Priority priority) {
+		this.timeoutMillis = timeoutMillis;
+		this.maxOutputBytes = maxOutputBytes;
+		this.governor = governor;
+		this.host = host;
+		this.priority = priority;
+	}
+
+	/**
+	 * Execute the given command.
+	 * 
+	 * @param command
+	 *            Command to execute.
+	 * @param stdoutHandler
+	 *            Reads standard output of the process.
+	 * @return How the process ended.
+	 * @throws IOException
+	 *             If the process cannot be started, or the handler failed before the deadline.
+	 * @throws InterruptedException
+	 *             If interrupted while waiting for a slot or for the process. The process is killed.
+	 */
+	public WSCProcessResult run(List<String> command, OutputHandler stdoutHandler) throws IOException,
+			InterruptedException {
+		if (governor == null) {
+			return start(command, stdoutHandler, 0, timeoutMillis);
+		}
+		long queuedNanos = System.nanoTime();
+		WSCProcessGovernor.Permit permit = governor.acquire(host, priority, timeoutMillis);
+		long queueWaitMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - queuedNanos);
+		// The process only gets what is left of the deadline.
+		long remainingMillis = timeoutMillis - queueWaitMillis;
+		if (permit == null || remainingMillis <= 0) {
+			if (permit != null) {
+				permit.release();
+			}
+			LOGGER.warn("No slot to start a WMIC command against {} within {} ms.", host, timeoutMillis);
+			return new WSCProcessResult(WSCProcessResult.Status.QUEUE_TIMED_OUT, -1, "", 0, 0, queueWaitMillis, 0, -1);
+		}
+		try {
+			return start(command, stdoutHandler, queueWaitMillis, remainingMillis);
+		} finally {
+			permit.release();
+		}
+	}
+
+	private WSCProcessResult start(List<String> command, OutputHandler stdoutHandler, long queueWaitMillis,
+			final long deadlineMillis) throws IOException, InterruptedException {
+		long startNanos = System.nanoTime();
+		final Process process = processFactory.start(command);
+		long startedNanos = System.nanoTime();
+		final AtomicBoolean timedOut = new AtomicBoolean(false);
+
+		ScheduledFuture<?> watchdog = WATCHDOG.schedule(new Runnable() {
+			@Override
+			public void run() {
+				LOGGER.warn("WMIC command did not end within {} ms, killing it.", deadlineMillis);
+				timedOut.set(true);
+				destroyProcessTree(process);
+				try {
+					// Also wakes up the handler if a process we could not kill still holds standard output open.
+					process.getInputStream().close();
+				} catch (IOException e) {
+					LOGGER.debug("Error occurred while closing standard output.", e);
+				}
+			}
+		}, deadlineMillis, TimeUnit.MILLISECONDS);
+
+		Future<String> stderr = STDERR_DRAINERS.submit(new StderrDrainer(process.getErrorStream(), maxOutputBytes));
+		LimitedInputStream stdout = new LimitedInputStream(process.getInputStream(), maxOutputBytes);
+		WSCProcessResult.Status status = WSCProcessResult.Status.COMPLETED;
+		try {
+			try {
+				stdoutHandler.handle(stdout);
+			} catch (IOException e) {
+				// Killing the process on timeout closes the stream under the handler.
+				if (!timedOut.get()) {
+					throw e;
+				}
+			}
+			if (stdout.isLimitReached()) {
+				LOGGER.warn("WMIC command wrote more than {} bytes, killing it.", maxOutputBytes);
+				status = WSCProcessResult.Status.OUTPUT_LIMIT_REACHED;
+				destroyProcessTree(process);
+			} else if (!stdout.isEndOfStream() && !timedOut.get()) {
+				LOGGER.debug("Rest of the WMIC output is not needed, killing it.");
+				status = WSCProcessResult.Status.STOPPED;
+				destroyProcessTree(process);
+			}
+			// Bounded by the watchdog.
+			process.waitFor();
+		} catch (InterruptedException | IOException | RuntimeException e) {
+			destroyProcessTree(process);
+			throw e;
+		} finally {
+			watchdog.cancel(false);
+		}
+
+		if (timedOut.get()) {
+			status = WSCProcessResult.Status.TIMED_OUT;
+		}
+		return new WSCProcessResult(status, process.exitValue(), awaitStderr(stderr), stdout.getBytes(),
+				TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos), queueWaitMillis,
+				TimeUnit.NANOSECONDS.toMillis(startedNanos - startNanos),
+				stdout.getBytes() > 0 ? TimeUnit.NANOSECONDS.toMillis(stdout.getFirstByteNanos() - startedNanos) : -1);
+	}
+
+	private String awaitStderr(Future<String> stderr) throws InterruptedException {
+		try {
+			return stderr.get(STDERR_GRACE_MILLIS, TimeUnit.MILLISECONDS);
+		} catch (ExecutionException | TimeoutException e) {
+			// A grandchild may still hold standard error open, do not wait for it.
+			stderr.cancel(true);
+			return "";
+		}
+	}
+
+	/**
+	 * Set the factory that starts the processes of all WSCProcessRunners.
+	 * 
+	 * @param factory
+	 *            Process factory, WSCProcessFactory.DEFAULT for real processes.
+	 */
+	public static void setProcessFactory(WSCProcessFactory factory) {
+		processFactory = factory;
+	}
+
+	/**
+	 * Kill the process and its descendants. On Java 9 and later, ProcessHandle finds the descendants, for example the
+	 * processes a wrapper script of wmic started. Older Java can only kill the process itself.
+	 * 
+	 * @param process
+	 *            Process to kill.
+	 */
+	static void destroyProcessTree(Process process) {
+		try {
+			Class<?> processHandle = Class.forName("java.lang.ProcessHandle");
+			Object handle = Process.class.getMethod("toHandle").invoke(process);
+			Object descendants = processHandle.getMethod("descendants").invoke(handle);
+			Iterator<?> iterator = (Iterator<?>) Class.forName("java.util.stream.BaseStream").getMethod("iterator")
+					.invoke(descendants);
+			Method destroyForcibly = processHandle.getMethod("destroyForcibly");
+			List<Object> children = new ArrayList<Object>();
+			while (iterator.hasNext()) {
+				children.add(iterator.next());
+			}
+			for (Object child : children) {
+				destroyForcibly.invoke(child);
+			}
+			destroyForcibly.invoke(handle);
+		} catch (ReflectiveOperationException | RuntimeException e) {
+			LOGGER.trace("ProcessHandle is not available, only the process itself is killed.");
+		}
+		process.destroy();
+	}
+
+	private static ThreadFactory daemonThreads(final String name) {
+		final AtomicInteger count = new AtomicInteger();
+		return new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, name + "-" + count.incrementAndGet());
+				thread.setDaemon(true);
+				return thread;
+			}
+		};
+	}
+
+	/**
+	 * Reads standard error until its end and keeps the first maxBytes.
+	 */
+	private static class StderrDrainer implements Callable<String> {
+
+		private final InputStream stderr;
+		private final long maxBytes;
+
+		StderrDrainer(InputStream stderr, long maxBytes) {
+			this.stderr = stderr;
+			this.maxBytes = maxBytes;
+		}
+
+		@Override
+		public String call() throws IOException {
+			ByteArrayOutputStream kept = new ByteArrayOutputStream();
+			byte[] buffer = new byte[4096];
+			int read;
+			try {
+				while ((read = stderr.read(buffer)) != -1) {
+					int keep = (int) Math.min(read, maxBytes - kept.size());
+					if (keep > 0) {
+						kept.write(buffer, 0, keep);
+					}
+				}
+			} finally {
+				stderr.close();
+			}
+			return kept.toString().trim();
+		}
+	}
+
+	/**
+	 * Standard output that counts bytes and ends once maxBytes are read.
+	 */
+	private static class LimitedInputStream extends FilterInputStream {
+
+		private final long maxBytes;
+		private long bytes;
+		private long firstByteNanos;
+		private boolean endOfStream;
+		private boolean limitReached;
+
+		LimitedInputStream(InputStream in, long maxBytes) {
+			super(in);
+			this.maxBytes = maxBytes;
+		}
+
+		@Override
+		public int read() throws IOException {
+			if (checkLimit()) {
+				return -1;
+			}
+			int b = super.read();
+			if (b == -1) {
+				endOfStream = true;
+			} else {
+				count(1);
+			}
+			return b;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			if (checkLimit()) {
+				return -1;
+			}
+			int read = super.read(b, off, (int) Math.min(len, maxBytes - bytes));
+			if (read == -1) {
+				endOfStream = true;
+			} else {
+				count(read);
+			}
+			return read;
+		}
+
+		private void count(int read) {
+			if (bytes == 0 && read > 0) {
+				firstByteNanos = System.nanoTime();
+			}
+			bytes += read;
+		}
+
+		private boolean checkLimit() {
+			limitReached |= bytes >= maxBytes;
+			return limitReached;
+		}
+
+		long getBytes() {
+			return bytes;
+		}
+
+		long getFirstByteNanos() {
+			return firstByteNanos;
+		}
+
+		boolean isEndOfStream() {
+			return endOfStream;
+		}
+
+		boolean isLimitReached() {
+			return limitReached;
+		}
+	}
+}
@@ -0,0 +1,160 @@
+package com.uptimesoftware.uptime.plugin;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+
+/**
+ * WSCQueryPlanner class that turns the filters of WSCPluginParams into a WQL WHERE clause, so that WMI on the remote
+ * host only returns services that can match. A filter is pushed down only if the WHERE clause selects every service
+ * the filter in Java would keep, the filters in Java still run afterwards on what WMI returns. WQL compares strings
+ * case-insensitively while the regexes do not, so the regexes always stay as the residual filter.
+ * 
+ * @author uptime software
+ */
+public class WSCQueryPlanner {
+
+	private static final String COMMA_DELIMITER = ",";
+
+	private static final String DISPLAY_NAME = "Caption";
+	private static final String SERVICE_NAME = "Name";
+	private static final String STARTUP_MODE = "StartMode";
+	private static final String STATE = "State";
+
+	// Values WMI outputs for StartMode and State. Only these are pushed down, other values fall back to Java.
+	private static final HashSet<String> STARTUP_MODES = new HashSet<String>(Arrays.asList("Auto", "Manual",
+			"Disabled", "Boot", "System"));
+	private static final HashSet<String> STATES = new HashSet<String>(Arrays.asList("Stopped", "Start Pending",
+			"Stop Pending", "Running", "Continue Pending", "Pause Pending", "Paused", "Unknown"));
+
+	private static final String REGEX_METACHARACTERS = "\\.[]{}()*+?^$|";
+	private static final String ANY_SUFFIX = ".*";
+
+	// Keep the command line far below the Windows limit of 32767 characters.
+	private static final int MAX_WHERE_CLAUSE_LENGTH = 4096;
+
+	private WSCQueryPlanner() {
+	}
+
+	/**
+	 * Build the WQL WHERE clause of the given input params.
+	 * 
+	 * @param wscParams
+	 *            An object that holds all input params from Up.time. "Automatic" must already be converted to "Auto".
+	 * @return WHERE clause without the WHERE keyword, null if none of the filters can be pushed down.
+	 */
+	public static String whereClause(WSCPluginParams wscParams) {
+		List<String> predicates = new ArrayList<String>();
+
+		String displayNamePredicate = displayNamePredicate(wscParams.getServiceDisplayName());
+		if (displayNamePredicate != null) {
+			predicates.add(displayNamePredicate);
+		}
+
+		if (wscParams.isStartupTypeIncluded() && STARTUP_MODES.contains(wscParams.getStartupTypeInclude())) {
+			predicates.add(STARTUP_MODE + " = " + quote(wscParams.getStartupTypeInclude()));
+		} else if (wscParams.isStartupTypeExcluded() && STARTUP_MODES.contains(wscParams.getStartupTypeExclude())) {
+			predicates.add(STARTUP_MODE + " <> " + quote(wscParams.getStartupTypeExclude()));
+		}
+
+		if (wscParams.isServiceStatusIncluded() && STATES.contains(wscParams.getServiceStatusInclude())) {
+			predicates.add(STATE + " = " + quote(wscParams.getServiceStatusInclude()));
+		} else if (wscParams.isServiceStatusExcluded() && STATES.contains(wscParams.getServiceStatusExclude())) {
+			predicates.add(STATE + " <> " + quote(wscParams.getServiceStatusExclude()));
+		}
+
+		if (predicates.isEmpty()) {
+			return null;
+		}
+		StringBuilder where = new StringBuilder();
+		for (String predicate : predicates) {
+			if (where.length() > 0) {
+				where.append(" AND ");
+			}
+			where.append(predicate);
+		}
+		return where.toString();
+	}
+
+	/**
+	 * Build the Caption predicate of the comma separated service display names / regexes. Plain names become "=" on
+	 * Caption or Name, as they match both (see WSCServiceMatcher), names followed by ".*" become "LIKE 'name%'". If one
+	 * of them is any other regex, every service may match.
+	 * 
+	 * @param serviceDisplayName
+	 *            Comma separated service display names / regexes.
+	 * @return Caption predicate, null if it cannot be pushed down.
+	 */
+	private static String displayNamePredicate(String serviceDisplayName) {
+		if (serviceDisplayName == null) {
+			return null;
+		}
+		StringBuilder predicate = new StringBuilder("(");
+		for (String regex : serviceDisplayName.split(COMMA_DELIMITER)) {
+			String prefix = regex.endsWith(ANY_SUFFIX) ? unescape(regex.substring(0, regex.length() - 2)) : null;
+			String literal = prefix == null ? unescape(regex) : null;
+			if (predicate.length() > 1) {
+				predicate.append(" OR ");
+			}
+			if (literal != null) {
+				predicate.append(DISPLAY_NAME).append(" = ").append(quote(literal)).append(" OR ")
+						.append(SERVICE_NAME).append(" = ").append(quote(literal));
+			} else if (prefix != null && prefix.length() > 0) {
+				predicate.append(DISPLAY_NAME).append(" LIKE ").append(quote(escapeLike(prefix) + "%"));
+			} else {
+				// ".*" or a real regex.
+				return null;
+			}
+			if (predicate.length() > MAX_WHERE_CLAUSE_LENGTH) {
+				return null;
+			}
+		}
+		return predicate.append(")").toString();
+	}
+
+	/**
+	 * Turn a regex without metacharacters into the String it matches. Metacharacters escaped with a backslash are
+	 * allowed, for example "SQL Server \(MSSQLSERVER\)".
+	 * 
+	 * @param regex
+	 *            Regex string.
+	 * @return The only String the regex matches, null if the regex matches more than one String.
+	 */
+	static String unescape(String regex) {
+		StringBuilder literal = new StringBuilder(regex.length());
+		for (int i = 0; i < regex.length(); i++) {
+			char c = regex.charAt(i);
+			if (c == '\\') {
+				if (i + 1 == regex.length() || Character.isLetterOrDigit(regex.charAt(i + 1))) {
+					// Trailing backslash, or a class like \d or \s.
+					return null;
+				}
+				literal.append(regex.charAt(++i));
+			} else if (REGEX_METACHARACTERS.indexOf(c) >= 0) {
+				return null;
+			} else {
+				literal.append(c);
+			}
+		}
+		return literal.toString();
+	}
+
+	private static String escapeLike(String value) {
+		StringBuilder escaped = new StringBuilder(value.length());
+		for (int i = 0; i < value.length(); i++) {
+			char c = value.charAt(i);
+			if (c == '%' || c == '_' || c == '[') {
+				// WQL LIKE has no escape character, a single character set matches the character itself.
+				escaped.append('[').append(c).append(']');
+			} else {
+				escaped.append(c);
+			}
+		}
+		return escaped.toString();
+	}
+
+	private static String quote(String value) {
+		return "'" + value.replace("\\", "\\\\").replace("'", "\\'") + "'";
+	}
+}
@@ -0,0 +1,229 @@
+package com.uptimesoftware.uptime.plugin;
+
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Plugin-wide WSCRefreshScheduler class that decides how long a monitor can output its previous result instead of
+ * running WMIC again. Up.time calls the monitor at its fixed interval, the scheduler only decides when a call refreshes
+ * the result :
+ * 
+ * - while a host has no changes, the refresh interval of a monitor (see Schedule) starts at MIN_INTERVAL_MILLIS and
+ * doubles after every refresh of that monitor, up to its maximum interval. Other monitors of the host do not make it
+ * grow faster,
+ * 
+ * - a change (a service added, removed, or with a changed startup type or status) is counted per host, the next call
+ * of every monitor of the host refreshes and restarts its interval,
+ * 
+ * - the refresh deadlines are jittered by JITTER, and the first deadline of a monitor is pushed back by a random time,
+ * so the monitors of many hosts started together do not keep running WMIC at the same time.
+ * 
+ * Only the changes of the most recently used MAX_HOSTS hosts are kept, a host that is forgotten is like a host with a
+ * change : its monitors refresh once.
+ * 
+ * @author uptime software
+ */
+public class WSCRefreshScheduler {
+
+	// Refresh interval after the first refresh without changes.
+	public static final long MIN_INTERVAL_MILLIS = 60 * 1000;
+	// Refresh deadlines are spread by +/- 20 % of the interval.
+	private static final double JITTER = 0.2;
+	// The first deadline is pushed back by up to a tenth of the maximum interval, never more than this.
+	private static final long MAX_INITIAL_DELAY_MILLIS = 5000;
+
+	// Far more than the hosts of a large installation.
+	private static final int MAX_HOSTS = 10000;
+
+	private static final WSCRefreshScheduler INSTANCE = new WSCRefreshScheduler(new Random());
+
+	private final LinkedHashMap<String, Host> hosts = new LinkedHashMap<String, Host>(16, 0.75f, true) {
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, Host> eldest) {
+			return size() > MAX_HOSTS;
+		}
+	};
+	private final Random random;
+
+	/**
+	 * Create WSCRefreshScheduler.
+	 * 
+	 * @param random
+	 *            Source of the jitter.
+	 */
+	public WSCRefreshScheduler(Random random) {
+		this.random = random;
+	}
+
+	/**
+	 * Get the scheduler shared by all monitors of the plugin.
+	 * 
+	 * @return Plugin-wide WSCRefreshScheduler.
+	 */
+	public static WSCRefreshScheduler getInstance() {
+		return INSTANCE;
+	}
+
+	/**
+	 * Get a random delay added to the first refresh deadline of a monitor.
+	 * 
+	 * @param maxIntervalMillis
+	 *            Maximum refresh interval of the monitor.
+	 * @return Milliseconds added to the first deadline.
+	 */
+	public long getInitialDelayMillis(long maxIntervalMillis) {
+		long maxDelay = Math.min(maxIntervalMillis / 10, MAX_INITIAL_DELAY_MILLIS);
+		return maxDelay > 0 ? (long) (nextDouble() * maxDelay) : 0;
+	}
+
+	/**
+	 * Record a refresh of the given host by a monitor and schedule its next one.
+	 * 
+	 * @param hostName
+	 *            Host that was refreshed.
+	 * @param schedule
+	 *            Schedule of the monitor, updated with its new interval.
+	 * @param changed
+	 *            True if the refresh found changes since the previous one.
+	 * @param maxIntervalMillis
+	 *            Maximum refresh interval of the monitor.
+	 * @param nowNanos
+	 *            System.nanoTime() of the refresh.
+	 * @return System.nanoTime() from which the monitor must refresh again. nowNanos after a change.
+	 */
+	public long refreshed(String hostName, Schedule schedule, boolean changed, long maxIntervalMillis, long nowNanos) {
+		long changeCount = hostOf(hostName).refreshed(changed);
+		// A change found by this monitor, or by another monitor of the host since this one refreshed, restarts the
+		// interval.
+		boolean restart = changed || changeCount != schedule.changeCount;
+		long intervalMillis;
+		if (changed) {
+			intervalMillis = 0;
+		} else {
+			intervalMillis = Math.min(restart || schedule.intervalMillis == 0 ? MIN_INTERVAL_MILLIS
+					: schedule.intervalMillis * 2, maxIntervalMillis);
+		}
+		boolean first = !schedule.refreshed;
+		schedule.intervalMillis = intervalMillis;
+		schedule.changeCount = changeCount;
+		schedule.refreshed = true;
+		if (intervalMillis == 0) {
+			return nowNanos;
+		}
+		long jitteredMillis = (long) (intervalMillis * (1 + JITTER * (2 * nextDouble() - 1)));
+		if (first) {
+			jitteredMillis += getInitialDelayMillis(maxIntervalMillis);
+		}
+		return nowNanos + TimeUnit.MILLISECONDS.toNanos(jitteredMillis);
+	}
+
+	/**
+	 * Get the number of refreshes of the given host that found changes. A monitor whose previous result is older than
+	 * the last change must refresh.
+	 * 
+	 * @param hostName
+	 *            Host name.
+	 * @return Number of changes of the host, 0 if it was never refreshed.
+	 */
+	public long getChangeCount(String hostName) {
+		Host host;
+		synchronized (hosts) {
+			host = hosts.get(keyOf(hostName));
+		}
+		return host != null ? host.getChangeCount() : 0;
+	}
+
+	/**
+	 * Forget every host. Mainly for tests.
+	 */
+	public void clear() {
+		synchronized (hosts) {
+			hosts.clear();
+		}
+	}
+
+	/**
+	 * Get the number of hosts. Mainly for tests.
+	 * 
+	 * @return Number of hosts that were refreshed.
+	 */
+	public int size() {
+		synchronized (hosts) {
+			return hosts.size();
+		}
+	}
+
+	private Host hostOf(String hostName) {
+		String key = keyOf(hostName);
+		synchronized (hosts) {
+			Host host = hosts.get(key);
+			if (host == null) {
+				host = new Host();
+				hosts.put(key, host);
+			}
+			return host;
+		}
+	}
+
+	private double nextDouble() {
+		synchronized (random) {
+			return random.nextDouble();
+		}
+	}
+
+	private static String keyOf(String hostName) {
+		return hostName.toLowerCase(Locale.ENGLISH);
+	}
+
+	/**
+	 * Refresh interval of one monitor. Only the monitor that owns it updates it.
+	 */
+	public static class Schedule {
+
+		private long intervalMillis;
+		private long changeCount;
+		private boolean refreshed;
+
+		/**
+		 * Get the current refresh interval of the monitor.
+		 * 
+		 * @return Interval in milliseconds before jitter, 0 if the monitor refreshes every call.
+		 */
+		public long getIntervalMillis() {
+			return intervalMillis;
+		}
+
+		/**
+		 * Get the number of changes of the host at the last refresh of the monitor.
+		 * 
+		 * @return Number of changes, see WSCRefreshScheduler.getChangeCount().
+		 */
+		public long getChangeCount() {
+			return changeCount;
+		}
+	}
+
+	/**
+	 * Changes of one host, shared by its monitors.
+	 */
+	private static class Host {
+
+		private long changeCount;
+
+		synchronized long refreshed(boolean changed) {
+			if (changed) {
+				changeCount++;
+			}
+			return changeCount;
+		}
+
+		synchronized long getChangeCount() {
+			return changeCount;
+		}
+	}
+}
@@ -0,0 +1,148 @@
+package com.uptimesoftware.uptime.plugin;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * WSCServiceDiff class that compares the matched services of the previous poll with the current poll: services that
+ * were added or removed, services whose startup type changed, and services whose status changed (for example Running
+ * to Stopped). Services are compared by the key of the monitor result, changes are listed and sorted by the display
+ * name of the service, like the matchedServices output (see WSCServiceRenderer).
+ * 
+ * @author uptime software
+ */
+public class WSCServiceDiff {
+
+	private static final String ARROW = " -> ";
+
+	private final List<String> added = new ArrayList<String>();
+	private final List<String> removed = new ArrayList<String>();
+	private final List<String> startupTypeChanges = new ArrayList<String>();
+	private final List<String> stateTransitions = new ArrayList<String>();
+
+	/**
+	 * Create WSCServiceDiff.
+	 * 
+	 * @param previous
+	 *            Matched services of the previous poll, key to {startup type, status[, display name]}.
+	 * @param current
+	 *            Matched services of the current poll, key to {startup type, status[, display name]}.
+	 */
+	public WSCServiceDiff(final Map<String, String[]> previous, final Map<String, String[]> current) {
+		HashSet<String> keySet = new HashSet<String>(previous.keySet());
+		keySet.addAll(current.keySet());
+		List<String> keys = new ArrayList<String>(keySet);
+		Collections.sort(keys, new Comparator<String>() {
+			@Override
+			public int compare(String key, String other) {
+				int result = labelOf(key, previous, current).compareTo(labelOf(other, previous, current));
+				return result != 0 ? result : key.compareTo(other);
+			}
+		});
+		for (String key : keys) {
+			String[] before = previous.get(key);
+			String[] after = current.get(key);
+			String label = labelOf(key, previous, current);
+			if (before == null) {
+				added.add(label + stateOf(after));
+			} else if (after == null) {
+				removed.add(label + stateOf(before));
+			} else {
+				if (!before[WSCStringPool.STARTUP_TYPE_INDEX].equals(after[WSCStringPool.STARTUP_TYPE_INDEX])) {
+					startupTypeChanges.add(label + " : " + before[WSCStringPool.STARTUP_TYPE_INDEX] + ARROW
+							+ after[WSCStringPool.STARTUP_TYPE_INDEX]);
+				}
+				if (!before[WSCStringPool.STATUS_INDEX].equals(after[WSCStringPool.STATUS_INDEX])) {
+					stateTransitions.add(label + " : " + before[WSCStringPool.STATUS_INDEX] + ARROW
+							+ after[WSCStringPool.STATUS_INDEX]);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Get added services.
+	 * 
+	 * @return Services that match now but did not before, "display name (startup type / status)".
+	 */
+	public List<String> getAdded() {
+		return this.added;
+	}
+
+	/**
+	 * Get removed services.
+	 * 
+	 * @return Services that matched before but do not now, "display name (startup type / status)".
+	 */
+	public List<String> getRemoved() {
+		return this.removed;
+	}
+
+	/**
+	 * Get startup type changes.
+	 * 
+	 * @return "display name : previous startup type -> current startup type".
+	 */
+	public List<String> getStartupTypeChanges() {
+		return this.startupTypeChanges;
+	}
+
+	/**
+	 * Get state transitions.
+	 * 
+	 * @return "display name : previous status -> current status".
+	 */
+	public List<String> getStateTransitions() {
+		return this.stateTransitions;
+	}
+
+	/**
+	 * Check if anything changed or not.
+	 * 
+	 * @return True if both polls matched the same services with the same startup type and status, false otherwise.
+	 */
+	public boolean isEmpty() {
+		return added.isEmpty() && removed.isEmpty() && startupTypeChanges.isEmpty() && stateTransitions.isEmpty();
+	}
+
+	/**
+	 * Get all changes, one per line.
+	 * 
+	 * @return Added services prefixed with "+", removed services prefixed with "-", then startup type changes and state
+	 *         transitions. Empty String if nothing changed.
+	 */
+	public String getChanges() {
+		StringBuilder changes = new StringBuilder();
+		append(changes, "+ ", added);
+		append(changes, "- ", removed);
+		append(changes, "Startup Type : ", startupTypeChanges);
+		append(changes, "Status : ", stateTransitions);
+		return changes.toString().trim();
+	}
+
+	/**
+	 * Get the name a service is listed with, from the current poll if it is still matched.
+	 */
+	private static String labelOf(String key, Map<String, String[]> previous, Map<String, String[]> current) {
+		String[] values = current.get(key);
+		return WSCServiceRenderer.labelOf(key, values != null ? values : previous.get(key));
+	}
+
+	/**
+	 * Get the " (startup type / status)" of a service that was added or removed.
+	 */
+	private static String stateOf(String[] values) {
+		return " (" + values[WSCStringPool.STARTUP_TYPE_INDEX] + " / " + values[WSCStringPool.STATUS_INDEX] + ")";
+	}
+
+	private void append(StringBuilder changes, String prefix, List<String> lines) {
+		for (String line : lines) {
+			changes.append(System.lineSeparator());
+			changes.append(prefix + line);
+		}
+	}
+}
@@ -0,0 +1,118 @@
+package com.uptimesoftware.uptime.plugin;
+
+import java.util.Collections;
+import java.util.Set;
+
+/**
+ * WSCServiceFilter class that decides which services a monitor matches : the compiled service display names / regexes,
+ * and the startup types and statuses that pass Include / Exclude. Startup type and status are looked up in tables made
+ * once from the inputs, so filtering a line reads no input params. Immutable, it can be shared by monitors.
+ * 
+ * When every service display name is a plain name, not a regex, they are also kept as exactNames : once all of them
+ * are found as service names, the rest of WMIC output cannot match anything (see WSCEarlyStop).
+ * 
+ * @author uptime software
+ */
+public class WSCServiceFilter {
+
+	private final WSCServiceMatcher serviceMatcher;
+	private final boolean[] startupTypes = new boolean[WSCStartupType.values().length];
+	private final boolean[] statuses = new boolean[WSCServiceStatus.values().length];
+	private final Set<String> exactNames;
+
+	/**
+	 * Create WSCServiceFilter.
+	 * 
+	 * @param serviceMatcher
+	 *            Compiled service display names / regexes.
+	 * @param wscParams
+	 *            An object that holds all input params from Up.time, with Startup Type "Automatic" already converted
+	 *            to "Auto".
+	 */
+	public WSCServiceFilter(WSCServiceMatcher serviceMatcher, WSCPluginParams wscParams) {
+		this.serviceMatcher = serviceMatcher;
+		this.exactNames = exactNamesOf(serviceMatcher);
+		for (WSCStartupType startupType : WSCStartupType.values()) {
+			startupTypes[startupType.ordinal()] = passes(startupType.getText(), wscParams.isStartupTypeIncluded(),
+					wscParams.getStartupTypeInclude(), wscParams.isStartupTypeExcluded(),
+					wscParams.getStartupTypeExclude());
+		}
+		for (WSCServiceStatus status : WSCServiceStatus.values()) {
+			statuses[status.ordinal()] = passes(status.getText(), wscParams.isServiceStatusIncluded(),
+					wscParams.getServiceStatusInclude(), wscParams.isServiceStatusExcluded(),
+					wscParams.getServiceStatusExclude());
+		}
+	}
+
+	/**
+	 * Check if a service display name matches one of the service display names / regexes.
+	 * 
+	 * @param serviceDisplayName
+	 *            Caption (aka Service Display Name) of the service.
+	 * @return True if it matches, false otherwise.
+	 */
+	public boolean matches(CharSequence serviceDisplayName) {
+		return serviceMatcher.matches(serviceDisplayName);
+	}
+
+	/**
+	 * Check if a service matches the service display names / regexes, see WSCServiceMatcher.
+	 * 
+	 * @param serviceDisplayName
+	 *            Caption (aka Service Display Name) of the service.
+	 * @param serviceName
+	 *            Name (aka Service Name) of the service.
+	 * @return True if it matches, false otherwise.
+	 */
+	public boolean matches(CharSequence serviceDisplayName, CharSequence serviceName) {
+		return serviceMatcher.matches(serviceDisplayName, serviceName);
+	}
+
+	/**
+	 * Check if a startup type passes Startup Type (Include) / (Exclude).
+	 * 
+	 * @param startupType
+	 *            StartMode (aka Startup Type) of the service.
+	 * @return True if it passes, false otherwise.
+	 */
+	public boolean passes(WSCStartupType startupType) {
+		return startupTypes[startupType.ordinal()];
+	}
+
+	/**
+	 * Check if a status passes Service Status (Include) / (Exclude).
+	 * 
+	 * @param status
+	 *            State (aka Service Status) of the service.
+	 * @return True if it passes, false otherwise.
+	 */
+	public boolean passes(WSCServiceStatus status) {
+		return statuses[status.ordinal()];
+	}
+
+	/**
+	 * Get exactNames.
+	 * 
+	 * @return Unmodifiable set of the service display names / service names if none of them is a regex, empty
+	 *         otherwise.
+	 */
+	public Set<String> getExactNames() {
+		return this.exactNames;
+	}
+
+	private static Set<String> exactNamesOf(WSCServiceMatcher serviceMatcher) {
+		// A regex can match any number of services.
+		return serviceMatcher.getRegexes().isEmpty() ? serviceMatcher.getLiterals() : Collections.<String> emptySet();
+	}
+
+	private static boolean passes(String value, boolean included, String include, boolean excluded, String exclude) {
+		if (included && !value.contains(include)) {
+			// (Include) is selected, and the value does not contain the selected one.
+			return false;
+		} else if (excluded && value.contains(exclude)) {
+			// (Exclude) is selected, and the value contains the selected one.
+			return false;
+		}
+		return true;
+	}
+}
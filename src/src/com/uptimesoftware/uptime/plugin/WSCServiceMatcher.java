@@ -0,0 +1,245 @@
+package com.uptimesoftware.uptime.plugin;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * WSCServiceMatcher class that compiles the comma separated service display names / regexes once, so that every line
+ * of WMIC output is matched without compiling the regexes again.
+ * 
+ * Entries without regex metacharacters (see WSCQueryPlanner.unescape()) are literals. They are kept in a hash table
+ * and looked up in O(1) against both the display name (aka Caption) and the service name (aka Name), without making a
+ * String of the line. Only the other entries, the patterns, are regexes matched against the display name.
+ * 
+ * @author uptime software
+ */
+public class WSCServiceMatcher {
+
+	// Regexes that cannot be wrapped into (?:...) without changing their meaning. \Q without \E and (?x) comments would
+	// swallow the closing parenthesis, backreferences would point to a group of another regex, and two regexes with the
+	// same group name cannot be joined.
+	private static final Pattern NOT_COMBINABLE = Pattern
+			.compile("\\\\Q|\\\\[0-9]|\\\\k<|\\(\\?[a-zA-Z-]*x|\\(\\?<[a-zA-Z]");
+
+	private final Set<String> literals;
+	// Open addressing table of the literals, a power of two at least twice their number. Empty if there is none.
+	private final String[] literalTable;
+	// Lines whose names are shorter or longer than every literal are not looked up.
+	private final int minLiteralLength;
+	private final int maxLiteralLength;
+
+	private final List<String> regexes;
+	// One Pattern of all the regexes joined by |, null if one of the regexes cannot be combined.
+	private final Pattern combined;
+	// One Pattern per regex, used only when the regexes cannot be combined.
+	private final List<Pattern> patterns;
+
+	/**
+	 * Create WSCServiceMatcher with the given regexes. Regexes without metacharacters are matched as literals.
+	 * 
+	 * @param regexes
+	 *            A list of service display names / regexes.
+	 * @throws PatternSyntaxException
+	 *             If one of the regexes has invalid syntax.
+	 */
+	public WSCServiceMatcher(Collection<String> regexes) {
+		this(literalsOf(regexes), patternsOf(regexes));
+	}
+
+	/**
+	 * Create WSCServiceMatcher with the given literals and patterns.
+	 * 
+	 * @param literals
+	 *            Service display names / service names, matched as they are.
+	 * @param regexes
+	 *            Service display name regexes.
+	 * @throws PatternSyntaxException
+	 *             If one of the regexes has invalid syntax.
+	 */
+	public WSCServiceMatcher(Collection<String> literals, Collection<String> regexes) {
+		this.literals = Collections.unmodifiableSet(new LinkedHashSet<String>(literals));
+		int tableSize = literals.isEmpty() ? 0 : Integer.highestOneBit(this.literals.size() * 4 - 1);
+		this.literalTable = new String[tableSize];
+		int minLength = Integer.MAX_VALUE;
+		int maxLength = 0;
+		for (String literal : this.literals) {
+			int i = hashOf(literal) & (tableSize - 1);
+			while (literalTable[i] != null) {
+				i = (i + 1) & (tableSize - 1);
+			}
+			literalTable[i] = literal;
+			minLength = Math.min(minLength, literal.length());
+			maxLength = Math.max(maxLength, literal.length());
+		}
+		this.minLiteralLength = minLength;
+		this.maxLiteralLength = maxLength;
+
+		this.regexes = Collections.unmodifiableList(new ArrayList<String>(regexes));
+
+		boolean combinable = true;
+		for (String regex : this.regexes) {
+			combinable &= !NOT_COMBINABLE.matcher(regex).find();
+		}
+
+		Pattern combinedPattern = combinable && !this.regexes.isEmpty() ? combine(this.regexes) : null;
+		if (combinedPattern != null) {
+			this.combined = combinedPattern;
+			this.patterns = Collections.emptyList();
+		} else {
+			ArrayList<Pattern> compiled = new ArrayList<Pattern>(this.regexes.size());
+			for (String regex : this.regexes) {
+				compiled.add(Pattern.compile(regex));
+			}
+			this.combined = null;
+			this.patterns = compiled;
+		}
+	}
+
+	/**
+	 * Join the given regexes into one Pattern.
+	 * 
+	 * @return The combined Pattern, null if the joined regexes do not compile (the regexes are then compiled one by
+	 *         one, which throws PatternSyntaxException if one of them is invalid).
+	 */
+	private static Pattern combine(List<String> regexes) {
+		StringBuilder alternatives = new StringBuilder();
+		for (String regex : regexes) {
+			if (alternatives.length() > 0) {
+				alternatives.append('|');
+			}
+			alternatives.append("(?:").append(regex).append(')');
+		}
+		try {
+			return Pattern.compile(alternatives.toString());
+		} catch (PatternSyntaxException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * Get literals.
+	 * 
+	 * @return Unmodifiable set of the literals, unescaped.
+	 */
+	public Set<String> getLiterals() {
+		return this.literals;
+	}
+
+	/**
+	 * Get regexes.
+	 * 
+	 * @return Unmodifiable list of the patterns, without the literals.
+	 */
+	public List<String> getRegexes() {
+		return this.regexes;
+	}
+
+	/**
+	 * Check if the given service display name matches one of the literals or regexes. Same as String.matches() of
+	 * each regex, but stops at the first match.
+	 * 
+	 * @param serviceDisplayName
+	 *            Service display name (aka Caption).
+	 * @return True if it is one of the literals or one of the regexes matches it whole, false otherwise.
+	 */
+	public boolean matches(CharSequence serviceDisplayName) {
+		return containsLiteral(serviceDisplayName) || matchesRegex(serviceDisplayName);
+	}
+
+	/**
+	 * Check if the given service matches : its display name or service name is one of the literals, or its display
+	 * name matches one of the regexes.
+	 * 
+	 * @param serviceDisplayName
+	 *            Service display name (aka Caption).
+	 * @param serviceName
+	 *            Service name (aka Name).
+	 * @return True if the service matches, false otherwise.
+	 */
+	public boolean matches(CharSequence serviceDisplayName, CharSequence serviceName) {
+		return containsLiteral(serviceDisplayName) || containsLiteral(serviceName) || matchesRegex(serviceDisplayName);
+	}
+
+	/**
+	 * Check if the given name is one of the literals.
+	 * 
+	 * @param name
+	 *            Service display name or service name.
+	 * @return True if it is, false otherwise.
+	 */
+	public boolean containsLiteral(CharSequence name) {
+		int length = name.length();
+		if (length < minLiteralLength || length > maxLiteralLength) {
+			return false;
+		}
+		int mask = literalTable.length - 1;
+		for (int i = hashOf(name) & mask; literalTable[i] != null; i = (i + 1) & mask) {
+			if (contentEquals(literalTable[i], name)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private boolean matchesRegex(CharSequence serviceDisplayName) {
+		if (combined != null) {
+			return combined.matcher(serviceDisplayName).matches();
+		}
+		for (Pattern pattern : patterns) {
+			if (pattern.matcher(serviceDisplayName).matches()) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private static List<String> literalsOf(Collection<String> regexes) {
+		List<String> literals = new ArrayList<String>();
+		for (String regex : regexes) {
+			String literal = WSCQueryPlanner.unescape(regex);
+			if (literal != null) {
+				literals.add(literal);
+			}
+		}
+		return literals;
+	}
+
+	private static List<String> patternsOf(Collection<String> regexes) {
+		List<String> patterns = new ArrayList<String>();
+		for (String regex : regexes) {
+			if (WSCQueryPlanner.unescape(regex) == null) {
+				patterns.add(regex);
+			}
+		}
+		return patterns;
+	}
+
+	/**
+	 * Same as String.hashCode(), spread to the low bits of the table index.
+	 */
+	private static int hashOf(CharSequence name) {
+		int hash = 0;
+		for (int i = 0; i < name.length(); i++) {
+			hash = 31 * hash + name.charAt(i);
+		}
+		return hash ^ (hash >>> 16);
+	}
+
+	private static boolean contentEquals(String literal, CharSequence name) {
+		if (literal.length() != name.length()) {
+			return false;
+		}
+		for (int i = 0; i < literal.length(); i++) {
+			if (literal.charAt(i) != name.charAt(i)) {
+				return false;
+			}
+		}
+		return true;
+	}
+}
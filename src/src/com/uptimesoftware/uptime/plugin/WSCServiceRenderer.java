@@ -0,0 +1,167 @@
+package com.uptimesoftware.uptime.plugin;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * WSCServiceRenderer class that builds the matchedServices output, one service per line sorted by display name, then by
+ * the key of the monitor result, so that the same services always give the same String. The output is limited to
+ * maxLines lines and maxCharacters characters, services that do not fit are counted in a last "+N more" line. The
+ * String of the previous call is re-used while the matched services do not change.
+ * 
+ * @author uptime software
+ */
+public class WSCServiceRenderer {
+
+	public static final int DEFAULT_MAX_LINES = 1000;
+	public static final int DEFAULT_MAX_CHARACTERS = 65535;
+
+	private static final String STARTUP_TYPE = " / Startup Type : ";
+	private static final String STATUS = " / Status : ";
+	private static final String NEW_LINE = System.lineSeparator();
+	// Room for the "+N more" line, see build().
+	private static final int MORE_LENGTH = NEW_LINE.length() + "+2147483647 more".length();
+	// A typical line, "Windows Update / Startup Type : Manual / Status : Stopped", to size the buffer.
+	private static final int TYPICAL_LINE_LENGTH = 64;
+
+	private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+	private static final long FNV_PRIME = 0x100000001b3L;
+
+	private int maxLines = DEFAULT_MAX_LINES;
+	private int maxCharacters = DEFAULT_MAX_CHARACTERS;
+
+	// Services and output of the previous call.
+	private long previousHash;
+	private Map<String, String[]> previousServices;
+	private String previousOutput;
+
+	/**
+	 * Set the limits of the output. The output is built again on the next call if they change.
+	 * 
+	 * @param maxLines
+	 *            Maximum number of lines, 0 for DEFAULT_MAX_LINES.
+	 * @param maxCharacters
+	 *            Maximum number of characters, 0 for DEFAULT_MAX_CHARACTERS.
+	 */
+	public void setLimits(int maxLines, int maxCharacters) {
+		int lines = maxLines > 0 ? maxLines : DEFAULT_MAX_LINES;
+		int characters = maxCharacters > 0 ? maxCharacters : DEFAULT_MAX_CHARACTERS;
+		if (lines != this.maxLines || characters != this.maxCharacters) {
+			this.maxLines = lines;
+			this.maxCharacters = characters;
+			this.previousServices = null;
+		}
+	}
+
+	/**
+	 * Build the matchedServices output.
+	 * 
+	 * @param services
+	 *            Matched services, key to {startup type, status[, display name]}. Must not be modified after the
+	 *            call, the next call compares with it.
+	 * @return "display name / Startup Type : x / Status : y" lines, with the key if there is no display name. The
+	 *         same String as the previous call if the services did not change.
+	 */
+	public String render(Map<String, String[]> services) {
+		long hash = hashOf(services);
+		if (previousServices != null && hash == previousHash && sameServices(services, previousServices)) {
+			return previousOutput;
+		}
+		previousHash = hash;
+		previousServices = services;
+		previousOutput = build(services);
+		return previousOutput;
+	}
+
+	private String build(final Map<String, String[]> services) {
+		List<String> keys = new ArrayList<String>(services.keySet());
+		Collections.sort(keys, new Comparator<String>() {
+			@Override
+			public int compare(String key, String other) {
+				int result = labelOf(key, services.get(key)).compareTo(labelOf(other, services.get(other)));
+				return result != 0 ? result : key.compareTo(other);
+			}
+		});
+		int size = keys.size();
+		StringBuilder output = new StringBuilder((int) Math.min(maxCharacters,
+				(long) Math.min(size, maxLines) * TYPICAL_LINE_LENGTH + MORE_LENGTH));
+		int lines = 0;
+		for (String key : keys) {
+			if (lines == maxLines) {
+				break;
+			}
+			int lineStart = output.length();
+			if (lines > 0) {
+				output.append(NEW_LINE);
+			}
+			String[] values = services.get(key);
+			output.append(labelOf(key, values)).append(STARTUP_TYPE).append(values[WSCStringPool.STARTUP_TYPE_INDEX])
+					.append(STATUS).append(values[WSCStringPool.STATUS_INDEX]);
+			// Unless it is the last service, a line must leave room for the "+N more" line.
+			boolean last = lines == size - 1;
+			if (output.length() > maxCharacters - (last ? 0 : MORE_LENGTH)) {
+				output.setLength(lineStart);
+				break;
+			}
+			lines++;
+		}
+		if (lines < size) {
+			if (lines > 0) {
+				output.append(NEW_LINE);
+			}
+			output.append('+').append(size - lines).append(" more");
+		}
+		return output.toString();
+	}
+
+	/**
+	 * Get the name a service is listed with.
+	 * 
+	 * @param key
+	 *            Key of the service in the monitor result.
+	 * @param values
+	 *            Values of the service.
+	 * @return Display name, the key if the values have none.
+	 */
+	public static String labelOf(String key, String[] values) {
+		return values.length > WSCStringPool.DISPLAY_NAME_INDEX ? values[WSCStringPool.DISPLAY_NAME_INDEX] : key;
+	}
+
+	private static boolean sameServices(Map<String, String[]> services, Map<String, String[]> other) {
+		if (services.size() != other.size()) {
+			return false;
+		}
+		for (Map.Entry<String, String[]> entry : services.entrySet()) {
+			if (!Arrays.equals(entry.getValue(), other.get(entry.getKey()))) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * 64-bit hash of the services that does not depend on the order of the map, so it needs no sorting.
+	 */
+	private static long hashOf(Map<String, String[]> services) {
+		long hash = services.size();
+		for (Map.Entry<String, String[]> entry : services.entrySet()) {
+			long entryHash = fnv(FNV_OFFSET_BASIS, entry.getKey());
+			for (String value : entry.getValue()) {
+				entryHash = fnv(entryHash ^ '|', value);
+			}
+			hash += entryHash;
+		}
+		return hash;
+	}
+
+	private static long fnv(long hash, String value) {
+		for (int i = 0; i < value.length(); i++) {
+			hash = (hash ^ value.charAt(i)) * FNV_PRIME;
+		}
+		return hash;
+	}
+}
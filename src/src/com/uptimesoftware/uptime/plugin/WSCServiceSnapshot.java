@@ -0,0 +1,180 @@
+package com.uptimesoftware.uptime.plugin;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * WSCServiceSnapshot class that stores the unfiltered list of Windows services returned by one WMIC query against a
+ * host. A snapshot is immutable once created so it can be shared by every monitor that polls the same host.
+ * 
+ * Services are stored column by column : display names and service names come from WSCStringPool, so hosts share them,
+ * and startup types and statuses are one byte each. A service costs about 10 bytes on top of the pooled names.
+ * 
+ * @author uptime software
+ */
+public class WSCServiceSnapshot {
+
+	private static final WSCStartupType[] STARTUP_TYPES = WSCStartupType.values();
+	private static final WSCServiceStatus[] STATUSES = WSCServiceStatus.values();
+
+	private final String[] displayNames;
+	private final String[] serviceNames;
+	private final byte[] startupTypes;
+	private final byte[] statuses;
+	private final String errorMessage;
+	private final long createdNanos;
+
+	private WSCServiceSnapshot(Builder builder, String errorMessage) {
+		int size = builder.size;
+		this.displayNames = Arrays.copyOf(builder.displayNames, size);
+		this.serviceNames = Arrays.copyOf(builder.serviceNames, size);
+		this.startupTypes = Arrays.copyOf(builder.startupTypes, size);
+		this.statuses = Arrays.copyOf(builder.statuses, size);
+		this.errorMessage = errorMessage;
+		this.createdNanos = System.nanoTime();
+	}
+
+	/**
+	 * Create a WSCServiceSnapshot for a WMIC query that failed, so that every monitor waiting on the query gets the same
+	 * error.
+	 * 
+	 * @param errorMessage
+	 *            Message to show on the monitor.
+	 * @return Failed snapshot without services.
+	 */
+	public static WSCServiceSnapshot failed(String errorMessage) {
+		return new WSCServiceSnapshot(new Builder(), errorMessage);
+	}
+
+	/**
+	 * Get the number of services.
+	 * 
+	 * @return Number of services.
+	 */
+	public int size() {
+		return this.displayNames.length;
+	}
+
+	/**
+	 * Get the Caption (aka Service Display Name) of a service.
+	 * 
+	 * @param index
+	 *            Index of the service, from 0 to size() - 1.
+	 * @return Pooled display name.
+	 */
+	public String getDisplayName(int index) {
+		return this.displayNames[index];
+	}
+
+	/**
+	 * Get the Name (aka Service Name) of a service.
+	 * 
+	 * @param index
+	 *            Index of the service, from 0 to size() - 1.
+	 * @return Pooled service name.
+	 */
+	public String getServiceName(int index) {
+		return this.serviceNames[index];
+	}
+
+	/**
+	 * Get the StartMode (aka Startup Type) of a service.
+	 * 
+	 * @param index
+	 *            Index of the service, from 0 to size() - 1.
+	 * @return Startup type.
+	 */
+	public WSCStartupType getStartupType(int index) {
+		return STARTUP_TYPES[this.startupTypes[index]];
+	}
+
+	/**
+	 * Get the State (aka Service Status) of a service.
+	 * 
+	 * @param index
+	 *            Index of the service, from 0 to size() - 1.
+	 * @return Status.
+	 */
+	public WSCServiceStatus getStatus(int index) {
+		return STATUSES[this.statuses[index]];
+	}
+
+	/**
+	 * Get errorMessage.
+	 * 
+	 * @return errorMessage, null if the WMIC query was successful.
+	 */
+	public String getErrorMessage() {
+		return this.errorMessage;
+	}
+
+	/**
+	 * Check if the WMIC query was successful or not.
+	 * 
+	 * @return True if successful, false otherwise.
+	 */
+	public boolean isSuccessful() {
+		return this.errorMessage == null;
+	}
+
+	/**
+	 * Get age of the snapshot.
+	 * 
+	 * @return Milliseconds since the snapshot was created.
+	 */
+	public long getAgeMillis() {
+		return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - this.createdNanos);
+	}
+
+	/**
+	 * Collects the services of a WMIC query, line by line, into a successful WSCServiceSnapshot.
+	 */
+	public static class Builder {
+
+		private static final int INITIAL_CAPACITY = 256;
+
+		private String[] displayNames = new String[INITIAL_CAPACITY];
+		private String[] serviceNames = new String[INITIAL_CAPACITY];
+		private byte[] startupTypes = new byte[INITIAL_CAPACITY];
+		private byte[] statuses = new byte[INITIAL_CAPACITY];
+		private int size;
+
+		/**
+		 * Add a service. The columns are copied, they can be re-used Fields of WSCLineTokenizer.
+		 * 
+		 * @param displayName
+		 *            Caption (aka Service Display Name) of the service.
+		 * @param serviceName
+		 *            Name (aka Service Name) of the service.
+		 * @param startupType
+		 *            StartMode (aka Startup Type) of the service.
+		 * @param status
+		 *            State (aka Service Status) of the service.
+		 */
+		public void add(CharSequence displayName, CharSequence serviceName, CharSequence startupType,
+				CharSequence status) {
+			if (size == displayNames.length) {
+				int capacity = size * 2;
+				displayNames = Arrays.copyOf(displayNames, capacity);
+				serviceNames = Arrays.copyOf(serviceNames, capacity);
+				startupTypes = Arrays.copyOf(startupTypes, capacity);
+				statuses = Arrays.copyOf(statuses, capacity);
+			}
+			WSCStringPool pool = WSCStringPool.getInstance();
+			displayNames[size] = pool.intern(displayName);
+			serviceNames[size] = pool.intern(serviceName);
+			startupTypes[size] = (byte) WSCStartupType.of(startupType).ordinal();
+			statuses[size] = (byte) WSCServiceStatus.of(status).ordinal();
+			size++;
+		}
+
+		/**
+		 * Create the snapshot of the services added so far.
+		 * 
+		 * @return Successful snapshot.
+		 */
+		public WSCServiceSnapshot build() {
+			return new WSCServiceSnapshot(this, null);
+		}
+	}
+}
@@ -0,0 +1,235 @@
+package com.uptimesoftware.uptime.plugin;
+
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Plugin-wide cache of WSCServiceSnapshot keyed by host and credential identity. Only one WMIC query per key is in
+ * flight at a time (single-flight), monitors that ask for the same key meanwhile wait for that query and share its
+ * result. Snapshots older than the largest max age asked for cannot be shared any more, they are removed at most once
+ * per SWEEP_INTERVAL_NANOS, so keys of removed hosts or of old credentials do not stay forever.
+ * 
+ * @author uptime software
+ */
+public class WSCServiceSnapshotCache {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(WSCServiceSnapshotCache.class);
+
+	private static final WSCServiceSnapshotCache INSTANCE = new WSCServiceSnapshotCache();
+
+	private static final String KEY_SEPARATOR = "|";
+
+	private static final String MAC_ALGORITHM = "HmacSHA256";
+	// Random for each run of the plugin, so a credential identity cannot be brute-forced from a log or a heap dump.
+	private static final SecretKeySpec MAC_KEY = newMacKey();
+
+	private static final long SWEEP_INTERVAL_NANOS = TimeUnit.MINUTES.toNanos(1);
+
+	private final ConcurrentHashMap<String, FutureTask<WSCServiceSnapshot>> snapshots =
+			new ConcurrentHashMap<String, FutureTask<WSCServiceSnapshot>>();
+	private final AtomicLong largestMaxAgeMillis = new AtomicLong();
+	private final AtomicLong nextSweepNanos = new AtomicLong(System.nanoTime() + SWEEP_INTERVAL_NANOS);
+
+	/**
+	 * Get the cache shared by all monitors of the plugin.
+	 * 
+	 * @return Plugin-wide WSCServiceSnapshotCache.
+	 */
+	public static WSCServiceSnapshotCache getInstance() {
+		return INSTANCE;
+	}
+
+	/**
+	 * Build the cache key of the given input params. The credentials are identified by an HMAC with a key that is
+	 * random for each run of the plugin, so the password is neither kept in the key nor can be brute-forced from it,
+	 * but monitors with different credentials for the same host still do not share a snapshot.
+	 * 
+	 * @param wscParams
+	 *            An object that holds all input params from Up.time.
+	 * @return Cache key made of host name, domain, user name and credential identity, the identity last.
+	 */
+	public static String keyOf(WSCPluginParams wscParams) {
+		StringBuilder key = new StringBuilder();
+		key.append(wscParams.getHostName().toLowerCase(Locale.ENGLISH));
+		key.append(KEY_SEPARATOR).append(wscParams.getDomainName());
+		key.append(KEY_SEPARATOR).append(wscParams.getUserName());
+		key.append(KEY_SEPARATOR).append(
+				identityOf(wscParams.getDomainName(), wscParams.getUserName(), wscParams.getPassword()));
+		return key.toString();
+	}
+
+	/**
+	 * Describe a cache key for logs.
+	 * 
+	 * @param key
+	 *            Cache key, see keyOf().
+	 * @return Host name, domain and user name of the key, without the credential identity.
+	 */
+	public static String describe(String key) {
+		int identity = key.lastIndexOf(KEY_SEPARATOR);
+		return identity >= 0 ? key.substring(0, identity) : key;
+	}
+
+	/**
+	 * Get a snapshot that is not older than maxAgeMillis. If there is none, the loader is run on the calling thread
+	 * while other callers with the same key wait for it.
+	 * 
+	 * @param key
+	 *            Cache key, see keyOf().
+	 * @param maxAgeMillis
+	 *            Maximum age of a cached snapshot the caller accepts.
+	 * @param loader
+	 *            Runs the WMIC query. Failed queries must be returned as WSCServiceSnapshot.failed().
+	 * @return Cached, shared or newly loaded snapshot.
+	 * @throws InterruptedException
+	 *             If interrupted while waiting for the in-flight query.
+	 */
+	public WSCServiceSnapshot get(String key, long maxAgeMillis, Callable<WSCServiceSnapshot> loader)
+			throws InterruptedException {
+		long largest = largestMaxAgeMillis.get();
+		while (maxAgeMillis > largest && !largestMaxAgeMillis.compareAndSet(largest, maxAgeMillis)) {
+			largest = largestMaxAgeMillis.get();
+		}
+		long nowNanos = System.nanoTime();
+		long sweepNanos = nextSweepNanos.get();
+		if (nowNanos - sweepNanos >= 0 && nextSweepNanos.compareAndSet(sweepNanos, nowNanos + SWEEP_INTERVAL_NANOS)) {
+			removeExpired();
+		}
+
+		while (true) {
+			FutureTask<WSCServiceSnapshot> current = snapshots.get(key);
+			if (current != null && (!current.isDone() || isFresh(current, maxAgeMillis))) {
+				LOGGER.debug("Sharing the snapshot of {}.", describe(key));
+				return await(current);
+			}
+
+			FutureTask<WSCServiceSnapshot> fetch = new FutureTask<WSCServiceSnapshot>(loader);
+			boolean won = current == null ? snapshots.putIfAbsent(key, fetch) == null : snapshots.replace(key, current,
+					fetch);
+			if (won) {
+				LOGGER.debug("Fetching a new snapshot of {}.", describe(key));
+				fetch.run();
+				WSCServiceSnapshot snapshot = await(fetch);
+				if (!snapshot.isSuccessful()) {
+					// Do not keep failures around, the next poll should try again.
+					snapshots.remove(key, fetch);
+				}
+				return snapshot;
+			}
+			// Another monitor started a query for the same key at the same time. Loop and wait for it.
+		}
+	}
+
+	/**
+	 * Remove the snapshots that are older than the largest max age asked for. get() calls it at most once per
+	 * SWEEP_INTERVAL_NANOS.
+	 */
+	public void removeExpired() {
+		long maxAgeMillis = largestMaxAgeMillis.get();
+		for (Map.Entry<String, FutureTask<WSCServiceSnapshot>> entry : snapshots.entrySet()) {
+			FutureTask<WSCServiceSnapshot> task = entry.getValue();
+			if (isExpired(task, maxAgeMillis)) {
+				LOGGER.debug("Removing the expired snapshot of {}.", describe(entry.getKey()));
+				snapshots.remove(entry.getKey(), task);
+			}
+		}
+	}
+
+	/**
+	 * Get the number of cached snapshots, including the queries in flight.
+	 * 
+	 * @return Number of keys.
+	 */
+	public int size() {
+		return snapshots.size();
+	}
+
+	/**
+	 * Remove all snapshots. Mainly for re-use in unit tests.
+	 */
+	public void clear() {
+		snapshots.clear();
+		largestMaxAgeMillis.set(0);
+	}
+
+	private boolean isFresh(FutureTask<WSCServiceSnapshot> task, long maxAgeMillis) throws InterruptedException {
+		WSCServiceSnapshot snapshot = await(task);
+		return snapshot.isSuccessful() && snapshot.getAgeMillis() <= maxAgeMillis;
+	}
+
+	/**
+	 * Check if a snapshot cannot be shared any more. A query in flight never is.
+	 */
+	private static boolean isExpired(FutureTask<WSCServiceSnapshot> task, long maxAgeMillis) {
+		if (!task.isDone()) {
+			return false;
+		}
+		try {
+			return task.get().getAgeMillis() > maxAgeMillis;
+		} catch (ExecutionException e) {
+			return true;
+		} catch (InterruptedException e) {
+			// A done task does not wait.
+			Thread.currentThread().interrupt();
+			return false;
+		}
+	}
+
+	private WSCServiceSnapshot await(FutureTask<WSCServiceSnapshot> task) throws InterruptedException {
+		try {
+			return task.get();
+		} catch (ExecutionException e) {
+			LOGGER.error("Error occurred while fetching a snapshot.", e.getCause());
+			return WSCServiceSnapshot.failed("Error occurred while executing wmic command.");
+		}
+	}
+
+	/**
+	 * HMAC of the given credentials. Each field is prefixed with its length, so that fields containing the separator
+	 * of another cannot give the same identity.
+	 */
+	private static String identityOf(String... credentials) {
+		StringBuilder fields = new StringBuilder();
+		for (String credential : credentials) {
+			if (credential == null) {
+				fields.append('-');
+			} else {
+				fields.append(credential.length()).append(':').append(credential);
+			}
+		}
+		try {
+			Mac mac = Mac.getInstance(MAC_ALGORITHM);
+			mac.init(MAC_KEY);
+			byte[] hash = mac.doFinal(fields.toString().getBytes(StandardCharsets.UTF_8));
+			StringBuilder hex = new StringBuilder(hash.length * 2);
+			for (byte b : hash) {
+				hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+			}
+			return hex.toString();
+		} catch (GeneralSecurityException e) {
+			// Every Java platform has to support HmacSHA256.
+			throw new IllegalStateException(e);
+		}
+	}
+
+	private static SecretKeySpec newMacKey() {
+		byte[] key = new byte[32];
+		new SecureRandom().nextBytes(key);
+		return new SecretKeySpec(key, MAC_ALGORITHM);
+	}
+}
@@ -0,0 +1,44 @@
+package com.uptimesoftware.uptime.plugin;
+
+/**
+ * State (aka Service Status) of a Windows service, as WMI outputs it in Win32_Service.
+ * 
+ * @author uptime software
+ */
+public enum WSCServiceStatus {
+	STOPPED("Stopped"), START_PENDING("Start Pending"), STOP_PENDING("Stop Pending"), RUNNING("Running"),
+	CONTINUE_PENDING("Continue Pending"), PAUSE_PENDING("Pause Pending"), PAUSED("Paused"), UNKNOWN("Unknown");
+
+	private static final WSCServiceStatus[] VALUES = values();
+
+	private final String text;
+
+	WSCServiceStatus(String text) {
+		this.text = text;
+	}
+
+	/**
+	 * Get text.
+	 * 
+	 * @return State as WMI outputs it.
+	 */
+	public String getText() {
+		return this.text;
+	}
+
+	/**
+	 * Get the WSCServiceStatus of a State without making a String of it.
+	 * 
+	 * @param text
+	 *            State as WMI outputs it, for example "Start Pending".
+	 * @return WSCServiceStatus, UNKNOWN if WMI outputs a value that is not documented.
+	 */
+	public static WSCServiceStatus of(CharSequence text) {
+		for (WSCServiceStatus value : VALUES) {
+			if (value.text.contentEquals(text)) {
+				return value;
+			}
+		}
+		return UNKNOWN;
+	}
+}
@@ -0,0 +1,43 @@
+package com.uptimesoftware.uptime.plugin;
+
+/**
+ * StartMode (aka Startup Type) of a Windows service, as WMI outputs it in Win32_Service.
+ * 
+ * @author uptime software
+ */
+public enum WSCStartupType {
+	BOOT("Boot"), SYSTEM("System"), AUTO("Auto"), MANUAL("Manual"), DISABLED("Disabled"), UNKNOWN("Unknown");
+
+	private static final WSCStartupType[] VALUES = values();
+
+	private final String text;
+
+	WSCStartupType(String text) {
+		this.text = text;
+	}
+
+	/**
+	 * Get text.
+	 * 
+	 * @return StartMode as WMI outputs it.
+	 */
+	public String getText() {
+		return this.text;
+	}
+
+	/**
+	 * Get the WSCStartupType of a StartMode without making a String of it.
+	 * 
+	 * @param text
+	 *            StartMode as WMI outputs it, for example "Auto".
+	 * @return WSCStartupType, UNKNOWN if WMI outputs a value that is not documented.
+	 */
+	public static WSCStartupType of(CharSequence text) {
+		for (WSCStartupType value : VALUES) {
+			if (value.text.contentEquals(text)) {
+				return value;
+			}
+		}
+		return UNKNOWN;
+	}
+}
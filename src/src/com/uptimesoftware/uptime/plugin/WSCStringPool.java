@@ -0,0 +1,108 @@
+package com.uptimesoftware.uptime.plugin;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.WeakHashMap;
+
+/**
+ * WSCStringPool class that shares the Strings of services between the monitors and snapshots of all hosts. Hosts
+ * mostly run the same few hundred services, so a display name or service name is kept once however many hosts have
+ * it. The pool only holds weak references, a String that no snapshot or monitor result uses any more is collected.
+ * 
+ * @author uptime software
+ */
+public class WSCStringPool {
+
+	// Indexes of the values of a monitor result, see resultValues().
+	public static final int STARTUP_TYPE_INDEX = 0;
+	public static final int STATUS_INDEX = 1;
+	public static final int DISPLAY_NAME_INDEX = 2;
+
+	private static final WSCStringPool INSTANCE = new WSCStringPool();
+
+	private static final int RESULT_VALUES_PER_NAME = WSCStartupType.values().length
+			* WSCServiceStatus.values().length;
+
+	private final WeakHashMap<String, WeakReference<String>> strings = new WeakHashMap<String, WeakReference<String>>();
+	// The values of monitor results by display name, one array per startup type and status.
+	private final WeakHashMap<String, List<WeakReference<String[]>>> resultValues =
+			new WeakHashMap<String, List<WeakReference<String[]>>>();
+
+	/**
+	 * Get the pool shared by all monitors of the plugin.
+	 * 
+	 * @return WSCStringPool.
+	 */
+	public static WSCStringPool getInstance() {
+		return INSTANCE;
+	}
+
+	/**
+	 * Get the pooled String with the same characters.
+	 * 
+	 * @param value
+	 *            Characters, for example a Field of WSCLineTokenizer.
+	 * @return String of the pool, added to the pool if it is not there yet.
+	 */
+	public String intern(CharSequence value) {
+		String string = value.toString();
+		synchronized (strings) {
+			WeakReference<String> reference = strings.get(string);
+			String pooled = reference != null ? reference.get() : null;
+			if (pooled != null) {
+				return pooled;
+			}
+			strings.put(string, new WeakReference<String>(string));
+			return string;
+		}
+	}
+
+	/**
+	 * Get the number of Strings in the pool.
+	 * 
+	 * @return Number of Strings, including the ones that are not used any more but not collected yet.
+	 */
+	public int size() {
+		synchronized (strings) {
+			return strings.size();
+		}
+	}
+
+	/**
+	 * Get the values of a monitor result. The array is shared by every service with the same display name, startup
+	 * type and status, it must not be modified.
+	 * 
+	 * @param serviceDisplayName
+	 *            Display name of the service, for example a Field of WSCLineTokenizer.
+	 * @param startupType
+	 *            Startup type of the service.
+	 * @param status
+	 *            Status of the service.
+	 * @return {startup type, status, display name}, the display name from the pool.
+	 */
+	public String[] resultValues(CharSequence serviceDisplayName, WSCStartupType startupType,
+			WSCServiceStatus status) {
+		String displayName = intern(serviceDisplayName);
+		int index = startupType.ordinal() * WSCServiceStatus.values().length + status.ordinal();
+		synchronized (resultValues) {
+			List<WeakReference<String[]>> references = resultValues.get(displayName);
+			if (references == null) {
+				// The arrays refer to the display name, the map only keeps them weakly so it can be collected.
+				references = new ArrayList<WeakReference<String[]>>(Collections.<WeakReference<String[]>> nCopies(
+						RESULT_VALUES_PER_NAME, null));
+				resultValues.put(displayName, references);
+			}
+			String[] values = references.get(index) != null ? references.get(index).get() : null;
+			if (values == null) {
+				values = new String[DISPLAY_NAME_INDEX + 1];
+				values[STARTUP_TYPE_INDEX] = startupType.getText();
+				values[STATUS_INDEX] = status.getText();
+				values[DISPLAY_NAME_INDEX] = displayName;
+				references.set(index, new WeakReference<String[]>(values));
+			}
+			return values;
+		}
+	}
+}
@@ -0,0 +1,224 @@
+package com.uptimesoftware.uptime.plugin;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * WSCWmicClient class that stores the capabilities of the WMIC client installed on a Linux monitoring station. The
+ * binary is looked up on the PATH without starting a process, and probed only once. The probe is repeated only when
+ * the path or the modification time of the binary changes, for example after an upgrade of the WMIC client, or when
+ * it failed (see isProbed()). The system property wsc.wmic sets the path of a WMIC client that is not on the PATH.
+ * 
+ * @author uptime software
+ */
+public class WSCWmicClient {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(WSCWmicClient.class);
+
+	private static final String WMIC = "wmic";
+	private static final String WMIC_PROPERTY = "wsc.wmic";
+	private static final long PROBE_TIMEOUT_MILLIS = 10000;
+	private static final long PROBE_MAX_OUTPUT_BYTES = 64 * 1024;
+
+	private static volatile WSCWmicClient cached;
+
+	private final String path;
+	private final long lastModified;
+	private final String version;
+	private final boolean probed;
+	private final boolean delimiterSupported;
+	private final boolean authenticationFileSupported;
+	private final boolean kerberosSupported;
+
+	private WSCWmicClient(String path, long lastModified, String version, String help) {
+		this.path = path;
+		this.lastModified = lastModified;
+		this.probed = version != null && help != null;
+		this.version = version != null ? version : "";
+		help = help != null ? help : "";
+		this.delimiterSupported = help.contains("--delimiter");
+		this.authenticationFileSupported = help.contains("--authentication-file");
+		this.kerberosSupported = help.contains("--kerberos");
+	}
+
+	/**
+	 * Get the WMIC client on the PATH of the monitoring station.
+	 * 
+	 * @return WSCWmicClient, null if WMIC client is not installed. A client whose probe failed is not cached, the next
+	 *         call probes it again.
+	 */
+	public static WSCWmicClient getInstance() {
+		String configured = System.getProperty(WMIC_PROPERTY);
+		File binary = configured != null ? findFile(new File(configured)) : findOnPath(WMIC);
+		if (binary == null) {
+			return null;
+		}
+		WSCWmicClient client = cached;
+		if (client == null || !client.isBinary(binary)) {
+			synchronized (WSCWmicClient.class) {
+				client = cached;
+				if (client == null || !client.isBinary(binary)) {
+					client = probe(binary);
+					if (client.isProbed()) {
+						cached = client;
+					}
+				}
+			}
+		}
+		return client;
+	}
+
+	/**
+	 * Get path.
+	 * 
+	 * @return Absolute path of the WMIC client binary.
+	 */
+	public String getPath() {
+		return this.path;
+	}
+
+	/**
+	 * Get lastModified.
+	 * 
+	 * @return Last modification time of the WMIC client binary when it was probed.
+	 */
+	public long getLastModified() {
+		return this.lastModified;
+	}
+
+	/**
+	 * Get version.
+	 * 
+	 * @return Version reported by the WMIC client, empty String if it did not report any.
+	 */
+	public String getVersion() {
+		return this.version;
+	}
+
+	/**
+	 * Check if the WMIC client answered its probe. The options of a client that did not are not known, they are all
+	 * reported as not supported.
+	 * 
+	 * @return True if --help and --version ran, false otherwise.
+	 */
+	public boolean isProbed() {
+		return this.probed;
+	}
+
+	/**
+	 * Check if the WMIC client supports --delimiter or not.
+	 * 
+	 * @return True if --delimiter is supported, false otherwise.
+	 */
+	public boolean isDelimiterSupported() {
+		return this.delimiterSupported;
+	}
+
+	/**
+	 * Check if the WMIC client supports -A (--authentication-file) or not.
+	 * 
+	 * @return True if -A is supported, false otherwise.
+	 */
+	public boolean isAuthenticationFileSupported() {
+		return this.authenticationFileSupported;
+	}
+
+	/**
+	 * Check if the WMIC client supports -k (--kerberos) or not.
+	 * 
+	 * @return True if -k is supported, false otherwise.
+	 */
+	public boolean isKerberosSupported() {
+		return this.kerberosSupported;
+	}
+
+	private boolean isBinary(File binary) {
+		return path.equals(binary.getAbsolutePath()) && lastModified == binary.lastModified();
+	}
+
+	/**
+	 * Look the given executable up on the PATH, the same way "which" does.
+	 * 
+	 * @param executable
+	 *            Name of the executable.
+	 * @return First executable file of that name on the PATH, null if there is none.
+	 */
+	private static File findOnPath(String executable) {
+		String pathVariable = System.getenv("PATH");
+		if (pathVariable == null) {
+			return null;
+		}
+		for (String directory : pathVariable.split(File.pathSeparator)) {
+			File candidate = findFile(new File(directory.isEmpty() ? "." : directory, executable));
+			if (candidate != null) {
+				return candidate;
+			}
+		}
+		return null;
+	}
+
+	private static File findFile(File candidate) {
+		return candidate.isFile() && candidate.canExecute() ? candidate.getAbsoluteFile() : null;
+	}
+
+	private static WSCWmicClient probe(File binary) {
+		String path = binary.getAbsolutePath();
+		long lastModified = binary.lastModified();
+		String help = execute(path, "--help");
+		String version = help != null ? execute(path, "--version") : null;
+		// Only the first line, some builds print the build options after it.
+		version = version != null && version.contains("\n") ? version.substring(0, version.indexOf('\n')).trim()
+				: version;
+
+		WSCWmicClient client = new WSCWmicClient(path, lastModified, version, help);
+		if (!client.isProbed()) {
+			LOGGER.warn("WMIC client {} could not be probed, it is probed again on the next check.", path);
+			return client;
+		}
+		LOGGER.info("WMIC client {} version \"{}\" : --delimiter {}, -A {}, -k {}.", new Object[] { path, version,
+				client.isDelimiterSupported(), client.isAuthenticationFileSupported(), client.isKerberosSupported() });
+		return client;
+	}
+
+	/**
+	 * Run the WMIC client with the given option.
+	 * 
+	 * @return Standard output and error, null if the client could not be run or did not end in time.
+	 */
+	private static String execute(String path, String option) {
+		final ByteArrayOutputStream output = new ByteArrayOutputStream();
+		try {
+			WSCProcessResult processResult = new WSCProcessRunner(PROBE_TIMEOUT_MILLIS, PROBE_MAX_OUTPUT_BYTES).run(
+					Arrays.asList(path, option), new WSCProcessRunner.OutputHandler() {
+						@Override
+						public void handle(InputStream stdout) throws IOException {
+							byte[] buffer = new byte[4096];
+							int read;
+							while ((read = stdout.read(buffer)) != -1) {
+								output.write(buffer, 0, read);
+							}
+						}
+					});
+			if (processResult.getStatus() != WSCProcessResult.Status.COMPLETED) {
+				LOGGER.error("Probing WMIC client {} with {} ended with {}.", new Object[] { path, option,
+						processResult.getStatus() });
+				return null;
+			}
+			// Usage is printed to standard error by some builds.
+			return (output.toString() + "\n" + processResult.getStderr()).trim();
+		} catch (IOException e) {
+			LOGGER.error("Error occurred while probing WMIC client " + path + ".", e);
+			return null;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			LOGGER.error("Interrupted while probing WMIC client " + path + ".", e);
+			return null;
+		}
+	}
+}
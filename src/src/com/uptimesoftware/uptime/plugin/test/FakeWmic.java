@@ -0,0 +1,359 @@
+package com.uptimesoftware.uptime.plugin.test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.uptimesoftware.uptime.plugin.WSCProcessFactory;
+
+/**
+ * FakeWmic class that stands in for the wmic binary without a Windows host, see WSCProcessRunner.setProcessFactory().
+ * Every wmic command gets the Recording of its host (from "//host" on Linux or "/node:host" on Windows), with its
+ * output, exit value, latency, or a hang until the process is killed. Win32_Process queries get the process Recording
+ * of their host. The --help and --version probes of WSCWmicClient
+ * are answered like WMIC client 1.3.16. Counts the processes started and running, to check the limits of
+ * WSCProcessGovernor under load.
+ * 
+ * @author uptime software
+ */
+public class FakeWmic implements WSCProcessFactory {
+
+	private static final String HELP = "Usage: [-?|--help] [--usage] [-d|--debuglevel DEBUGLEVEL] [--debug-stderr]"
+			+ System.lineSeparator() + "        [-A|--authentication-file FILE] [-k|--kerberos STRING]"
+			+ System.lineSeparator() + "        [--namespace=STRING] [--delimiter=STRING] //host query";
+	private static final String VERSION = "Version 1.3.16";
+
+	private final ConcurrentHashMap<String, Recording> recordings = new ConcurrentHashMap<String, Recording>();
+	private final ConcurrentHashMap<String, Recording> processRecordings = new ConcurrentHashMap<String, Recording>();
+	private final Recording defaultRecording;
+	private volatile boolean probeFailure;
+
+	private final AtomicLong started = new AtomicLong();
+	private final AtomicInteger running = new AtomicInteger();
+	private final AtomicInteger maxRunning = new AtomicInteger();
+	private final AtomicLong killed = new AtomicLong();
+
+	/**
+	 * Create FakeWmic.
+	 * 
+	 * @param defaultRecording
+	 *            Recording of the hosts without their own.
+	 */
+	public FakeWmic(Recording defaultRecording) {
+		this.defaultRecording = defaultRecording;
+	}
+
+	/**
+	 * Set the Recording of a host.
+	 * 
+	 * @param host
+	 *            Host name, case-insensitive.
+	 * @param recording
+	 *            Recording that the wmic commands against the host get.
+	 */
+	public void record(String host, Recording recording) {
+		recordings.put(host.toLowerCase(), recording);
+	}
+
+	/**
+	 * Set the Recording of the Win32_Process queries of a host.
+	 * 
+	 * @param host
+	 *            Host name, case-insensitive.
+	 * @param recording
+	 *            Recording that the Win32_Process queries against the host get.
+	 */
+	public void recordProcesses(String host, Recording recording) {
+		processRecordings.put(host.toLowerCase(), recording);
+	}
+
+	/**
+	 * Make the --help and --version probes fail to start, or answer them again.
+	 * 
+	 * @param probeFailure
+	 *            True to fail the probes.
+	 */
+	public void setProbeFailure(boolean probeFailure) {
+		this.probeFailure = probeFailure;
+	}
+
+	@Override
+	public Process start(List<String> command) throws IOException {
+		Recording recording;
+		if (probeFailure && (command.contains("--help") || command.contains("--version"))) {
+			throw new IOException("Cannot run program \"" + command.get(0) + "\": error=26, Text file busy");
+		} else if (command.contains("--help")) {
+			recording = new Recording(HELP, "", 0);
+		} else if (command.contains("--version")) {
+			recording = new Recording(VERSION, "", 0);
+		} else {
+			String host = hostOf(command);
+			if (host != null && isProcessQuery(command) && processRecordings.containsKey(host)) {
+				recording = processRecordings.get(host);
+			} else {
+				recording = host != null && recordings.containsKey(host) ? recordings.get(host) : defaultRecording;
+			}
+		}
+		if (recording.isFailToStart()) {
+			throw new IOException("Cannot run program \"" + command.get(0) + "\": error=2, No such file or directory");
+		}
+		started.incrementAndGet();
+		int now = running.incrementAndGet();
+		for (int max = maxRunning.get(); now > max && !maxRunning.compareAndSet(max, now); max = maxRunning.get()) {
+			// Retry until the maximum is at least now.
+		}
+		return new FakeProcess(recording);
+	}
+
+	/**
+	 * Get the number of processes started, probes included.
+	 * 
+	 * @return Number of processes.
+	 */
+	public long getStarted() {
+		return this.started.get();
+	}
+
+	/**
+	 * Get the number of processes that did not end yet.
+	 * 
+	 * @return Number of processes.
+	 */
+	public int getRunning() {
+		return this.running.get();
+	}
+
+	/**
+	 * Get the largest number of processes that ran at the same time.
+	 * 
+	 * @return Number of processes.
+	 */
+	public int getMaxRunning() {
+		return this.maxRunning.get();
+	}
+
+	/**
+	 * Get the number of processes killed before the end of their output.
+	 * 
+	 * @return Number of processes.
+	 */
+	public long getKilled() {
+		return this.killed.get();
+	}
+
+	private static boolean isProcessQuery(List<String> command) {
+		for (String arg : command) {
+			if (arg.equals("Process") || arg.contains(" from Win32_Process")) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private static String hostOf(List<String> command) {
+		for (String arg : command) {
+			if (arg.startsWith("//")) {
+				return arg.substring(2).toLowerCase();
+			} else if (arg.startsWith("/node:")) {
+				return arg.substring("/node:".length()).replace("\"", "").toLowerCase();
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * What a wmic command outputs and how it behaves.
+	 */
+	public static class Recording {
+
+		private final byte[] stdout;
+		private final byte[] stderr;
+		private final int exitValue;
+		private long latencyMillis;
+		private boolean hang;
+		private boolean failToStart;
+
+		/**
+		 * Create Recording.
+		 * 
+		 * @param stdout
+		 *            Standard output.
+		 * @param stderr
+		 *            Standard error.
+		 * @param exitValue
+		 *            Exit value once the output is read.
+		 */
+		public Recording(String stdout, String stderr, int exitValue) {
+			this(stdout.getBytes(StandardCharsets.UTF_8), stderr.getBytes(StandardCharsets.UTF_8), exitValue);
+		}
+
+		/**
+		 * Create Recording of output in another encoding than UTF-8.
+		 * 
+		 * @param stdout
+		 *            Bytes of standard output.
+		 * @param stderr
+		 *            Bytes of standard error.
+		 * @param exitValue
+		 *            Exit value once the output is read.
+		 */
+		public Recording(byte[] stdout, byte[] stderr, int exitValue) {
+			this.stdout = stdout;
+			this.stderr = stderr;
+			this.exitValue = exitValue;
+		}
+
+		public long getLatencyMillis() {
+			return this.latencyMillis;
+		}
+
+		/**
+		 * Set latencyMillis.
+		 * 
+		 * @param latencyMillis
+		 *            Time before the first byte of output, like connecting and querying a real host.
+		 */
+		public void setLatencyMillis(long latencyMillis) {
+			this.latencyMillis = latencyMillis;
+		}
+
+		public boolean isHang() {
+			return this.hang;
+		}
+
+		/**
+		 * Set hang.
+		 * 
+		 * @param hang
+		 *            True if the process never outputs anything and only ends when killed.
+		 */
+		public void setHang(boolean hang) {
+			this.hang = hang;
+		}
+
+		public boolean isFailToStart() {
+			return this.failToStart;
+		}
+
+		/**
+		 * Set failToStart.
+		 * 
+		 * @param failToStart
+		 *            True if starting the process throws an IOException, like a missing binary.
+		 */
+		public void setFailToStart(boolean failToStart) {
+			this.failToStart = failToStart;
+		}
+	}
+
+	/**
+	 * A wmic process that plays a Recording.
+	 */
+	private class FakeProcess extends Process {
+
+		private final Recording recording;
+		private final ByteArrayInputStream output;
+		private final CountDownLatch killed = new CountDownLatch(1);
+		private final CountDownLatch ended = new CountDownLatch(1);
+		private final AtomicBoolean running = new AtomicBoolean(true);
+		private volatile boolean destroyed;
+		private boolean outputStarted;
+
+		FakeProcess(Recording recording) {
+			this.recording = recording;
+			this.output = new ByteArrayInputStream(recording.stdout);
+		}
+
+		@Override
+		public OutputStream getOutputStream() {
+			return new ByteArrayOutputStream();
+		}
+
+		@Override
+		public InputStream getInputStream() {
+			return new InputStream() {
+				@Override
+				public int read() throws IOException {
+					byte[] b = new byte[1];
+					return read(b, 0, 1) < 0 ? -1 : b[0] & 0xff;
+				}
+
+				@Override
+				public int read(byte[] b, int off, int len) throws IOException {
+					awaitOutput();
+					int count = output.read(b, off, len);
+					if (count < 0) {
+						end();
+					}
+					return count;
+				}
+			};
+		}
+
+		@Override
+		public InputStream getErrorStream() {
+			return new ByteArrayInputStream(recording.stderr);
+		}
+
+		@Override
+		public int waitFor() throws InterruptedException {
+			ended.await();
+			return exitValue();
+		}
+
+		@Override
+		public int exitValue() {
+			if (ended.getCount() > 0) {
+				throw new IllegalThreadStateException("process has not exited");
+			}
+			// Killed like SIGKILL.
+			return destroyed ? 137 : recording.exitValue;
+		}
+
+		@Override
+		public void destroy() {
+			destroyed = running.get();
+			if (destroyed) {
+				FakeWmic.this.killed.incrementAndGet();
+			}
+			killed.countDown();
+			end();
+		}
+
+		private void awaitOutput() throws IOException {
+			try {
+				if (!outputStarted) {
+					outputStarted = true;
+					if (recording.isHang()) {
+						killed.await();
+					} else if (recording.getLatencyMillis() > 0) {
+						killed.await(recording.getLatencyMillis(), TimeUnit.MILLISECONDS);
+					}
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new IOException("Interrupted while waiting for output.", e);
+			}
+			if (destroyed) {
+				throw new IOException("Stream closed");
+			}
+		}
+
+		private void end() {
+			if (running.compareAndSet(true, false)) {
+				FakeWmic.this.running.decrementAndGet();
+			}
+			ended.countDown();
+		}
+	}
+}
@@ -0,0 +1,394 @@
+package com.uptimesoftware.uptime.plugin.test;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.uptimesoftware.uptime.plugin.MonitorWindowsServiceCheckAdvanced.UptimeMonitorWindowsServiceCheckAdvanced;
+import com.uptimesoftware.uptime.plugin.MonitorWindowsServiceCheckAdvanced.UptimeMonitorWindowsServiceCheckAdvancedMultiHost;
+import com.uptimesoftware.uptime.plugin.WSCCircuitBreaker;
+import com.uptimesoftware.uptime.plugin.WSCHostProbe;
+import com.uptimesoftware.uptime.plugin.WSCProcessFactory;
+import com.uptimesoftware.uptime.plugin.WSCProcessRunner;
+import com.uptimesoftware.uptime.plugin.WSCRefreshScheduler;
+import com.uptimesoftware.uptime.plugin.WSCServiceSnapshotCache;
+import com.uptimesoftware.uptime.plugin.api.PluginMonitor;
+import com.uptimesoftware.uptime.plugin.monitor.MonitorState;
+import com.uptimesoftware.uptime.plugin.monitor.Parameters;
+import com.uptimesoftware.uptime.plugin.monitor.PluginMonitorVariable;
+import com.uptimesoftware.uptime.plugin.test.FakeWmic.Recording;
+
+/**
+ * Runs the monitor against FakeWmic, no Windows host or WMIC client is needed.
+ */
+public class MonitorWindowsServiceCheckAdvancedOfflineTest {
+
+	private FakeWmic fakeWmic;
+	private File wmicBinary;
+	private WSCHostProbe hostProbe;
+
+	@Before
+	public void setup() throws IOException {
+		fakeWmic = new FakeWmic(WmicRecordings.services("host1"));
+		WSCProcessRunner.setProcessFactory(fakeWmic);
+		// The host names of FakeWmic cannot be resolved.
+		hostProbe = WSCHostProbe.getInstance();
+		WSCHostProbe.setInstance(WSCHostProbe.DISABLED);
+		// WSCWmicClient only needs an executable file on Linux, FakeWmic answers its probes.
+		wmicBinary = File.createTempFile("wmic", "");
+		assertTrue(wmicBinary.setExecutable(true));
+		System.setProperty("wsc.wmic", wmicBinary.getAbsolutePath());
+		WSCCircuitBreaker.getInstance().clear();
+	}
+
+	@After
+	public void teardown() {
+		WSCProcessRunner.setProcessFactory(WSCProcessFactory.DEFAULT);
+		WSCHostProbe.setInstance(hostProbe);
+		System.clearProperty("wsc.wmic");
+		wmicBinary.delete();
+	}
+
+	@Test
+	public void servicesTest() {
+		UptimeMonitorWindowsServiceCheckAdvanced monitor = runMonitor("host1", "Windows.*,Remote Desktop Services", 0);
+		assertEquals(MonitorState.OK, monitor.getState());
+		// The error messages, the repeated column names and the Win32_TerminalService section are not services.
+		assertEquals("5", variable(monitor, "numberOfMatches"));
+		String matchedServices = variable(monitor, "matchedServices");
+		assertTrue(matchedServices.contains("Windows Update / Startup Type : Manual / Status : Stopped"));
+		assertTrue(matchedServices.contains("Remote Desktop Services / Startup Type : Manual / Status : Running"));
+		assertFalse(matchedServices.contains("CLASS"));
+		assertFalse(matchedServices.contains("Print Spooler"));
+		assertEquals("0", variable(monitor, "flappingServices"));
+		// Windows Update is stopped.
+		assertEquals("0", variable(monitor, "worstAvailability"));
+		assertEquals(0, fakeWmic.getRunning());
+	}
+
+	@Test
+	public void serviceNameTest() {
+		// Plain names also match the service name, the display name is still output.
+		UptimeMonitorWindowsServiceCheckAdvanced monitor = runMonitor("host1", "Spooler,Windows Time", 0);
+		assertEquals(MonitorState.OK, monitor.getState());
+		assertEquals("2", variable(monitor, "numberOfMatches"));
+		String matchedServices = variable(monitor, "matchedServices");
+		assertTrue(matchedServices.contains("Print Spooler / Startup Type : Auto / Status : Running"));
+		assertTrue(matchedServices.contains("Windows Time / Startup Type : Manual / Status : Running"));
+	}
+
+	@Test
+	public void wmicClientChangeTest() throws IOException {
+		UptimeMonitorWindowsServiceCheckAdvanced monitor = runMonitor("host1", "Windows Update", 0);
+		assertEquals(MonitorState.OK, monitor.getState());
+		File newBinary = File.createTempFile("wmic", "");
+		try {
+			assertTrue(newBinary.setExecutable(true));
+			System.setProperty("wsc.wmic", newBinary.getAbsolutePath());
+			long started = fakeWmic.getStarted();
+			monitor.monitor();
+			assertEquals(MonitorState.OK, monitor.getState());
+			// The new binary is probed (--help and --version) before the query of the services.
+			assertEquals(started + 3, fakeWmic.getStarted());
+		} finally {
+			newBinary.delete();
+		}
+	}
+
+	@Test
+	public void wmicClientProbeFailureTest() throws IOException {
+		File newBinary = File.createTempFile("wmic", "");
+		try {
+			assertTrue(newBinary.setExecutable(true));
+			System.setProperty("wsc.wmic", newBinary.getAbsolutePath());
+			fakeWmic.setProbeFailure(true);
+			UptimeMonitorWindowsServiceCheckAdvanced monitor = runMonitor("host1", "Windows Update", 0);
+			assertEquals(MonitorState.UNKNOWN, monitor.getState());
+			assertTrue(monitor.getMessage().contains("could not be probed"));
+
+			// The failed probe was not kept, the next check probes the same binary again.
+			fakeWmic.setProbeFailure(false);
+			monitor.monitor();
+			assertEquals(MonitorState.OK, monitor.getState());
+			assertEquals("1", variable(monitor, "numberOfMatches"));
+		} finally {
+			newBinary.delete();
+		}
+	}
+
+	@Test
+	public void latencyTest() {
+		Recording slow = WmicRecordings.services("slow");
+		slow.setLatencyMillis(300);
+		fakeWmic.record("slow", slow);
+		UptimeMonitorWindowsServiceCheckAdvanced monitor = runMonitor("slow", ".*", 0);
+		assertEquals(MonitorState.OK, monitor.getState());
+		assertEquals(String.valueOf(WmicRecordings.SERVICES.length), variable(monitor, "numberOfMatches"));
+		assertTrue(Long.parseLong(variable(monitor, "firstByteTime")) >= 250);
+	}
+
+	@Test
+	public void authenticationFailedTest() {
+		fakeWmic.record("denied", WmicRecordings.authenticationFailed());
+		UptimeMonitorWindowsServiceCheckAdvanced monitor = runMonitor("denied", ".*", 0);
+		assertEquals(MonitorState.UNKNOWN, monitor.getState());
+		assertEquals("Authentication failed", monitor.getMessage());
+	}
+
+	@Test
+	public void circuitBreakerTest() {
+		fakeWmic.record("denied", WmicRecordings.authenticationFailed());
+		UptimeMonitorWindowsServiceCheckAdvanced monitor = null;
+		for (int i = 0; i < 3; i++) {
+			monitor = runMonitor("denied", ".*", 0);
+		}
+		// The third consecutive failure opens the breaker.
+		assertTrue(monitor.getMessage().startsWith("Authentication failed. Circuit breaker is open after 3"));
+		long started = fakeWmic.getStarted();
+
+		// Checks of that host fail at once with the last error, without running WMIC.
+		monitor = runMonitor("denied", "Windows.*", 0);
+		assertEquals(MonitorState.UNKNOWN, monitor.getState());
+		assertTrue(monitor.getMessage().startsWith("Circuit breaker is open after 3 consecutive failures"));
+		assertTrue(monitor.getMessage().endsWith("Last error : Authentication failed"));
+		assertEquals(started, fakeWmic.getStarted());
+
+		// Other hosts are still checked.
+		monitor = runMonitor("host1", ".*", 0);
+		assertEquals(MonitorState.OK, monitor.getState());
+		WSCCircuitBreaker.getInstance().clear();
+	}
+
+	@Test
+	public void hangTest() {
+		Recording hung = WmicRecordings.services("hung");
+		hung.setHang(true);
+		fakeWmic.record("hung", hung);
+		UptimeMonitorWindowsServiceCheckAdvanced monitor = runMonitor("hung", ".*", 1);
+		assertEquals(MonitorState.UNKNOWN, monitor.getState());
+		assertTrue(monitor.getMessage().startsWith("WMIC command timed out after"));
+		// The hung process is killed.
+		assertEquals(0, fakeWmic.getRunning());
+	}
+
+	@Test
+	public void failToStartTest() {
+		Recording missing = WmicRecordings.services("missing");
+		missing.setFailToStart(true);
+		fakeWmic.record("missing", missing);
+		UptimeMonitorWindowsServiceCheckAdvanced monitor = runMonitor("missing", ".*", 0);
+		assertEquals(MonitorState.UNKNOWN, monitor.getState());
+		assertEquals("Error occurred while executing wmic command.", monitor.getMessage());
+	}
+
+	@Test
+	public void sharedSnapshotTest() {
+		WSCServiceSnapshotCache.getInstance().clear();
+		Parameters params = parameters("shared", "Windows.*");
+		params.put("snapshotMaxAge", "60");
+		UptimeMonitorWindowsServiceCheckAdvanced first = runMonitor(params);
+		long started = fakeWmic.getStarted();
+		params.put("serviceDisplayName", "Remote Desktop Services");
+		UptimeMonitorWindowsServiceCheckAdvanced second = runMonitor(params);
+		// The second monitor filters the snapshot of the first one.
+		assertEquals(started, fakeWmic.getStarted());
+		assertEquals("4", variable(first, "numberOfMatches"));
+		assertEquals("Remote Desktop Services / Startup Type : Manual / Status : Running",
+				variable(second, "matchedServices"));
+		WSCServiceSnapshotCache.getInstance().clear();
+	}
+
+	@Test
+	public void earlyStopTest() {
+		// Both service names are found in the first services, the rest of the output is not read.
+		UptimeMonitorWindowsServiceCheckAdvanced monitor = runMonitor("host1", "MpsSvc,wuauserv", 0);
+		assertEquals(MonitorState.OK, monitor.getState());
+		assertEquals("2", variable(monitor, "numberOfMatches"));
+		assertEquals(1, fakeWmic.getKilled());
+
+		// Display names are not unique, the output is read to the end.
+		monitor = runMonitor("host1", "Windows Firewall,Windows Update", 0);
+		assertEquals("2", variable(monitor, "numberOfMatches"));
+		assertEquals(1, fakeWmic.getKilled());
+
+		// A regex can match any service, the output is read to the end.
+		monitor = runMonitor("host1", "Windows Firewall,Windows Up.*", 0);
+		assertEquals("2", variable(monitor, "numberOfMatches"));
+		assertEquals(1, fakeWmic.getKilled());
+
+		Parameters params = parameters("host1", ".*");
+		params.put("numberOfMatchesCap", "3");
+		monitor = runMonitor(params);
+		assertEquals(MonitorState.OK, monitor.getState());
+		assertEquals("3", variable(monitor, "numberOfMatches"));
+		assertEquals(2, fakeWmic.getKilled());
+		assertEquals(0, fakeWmic.getRunning());
+	}
+
+	@Test
+	public void sameDisplayNameTest() {
+		// Two services with the same display name, found first, and others after them.
+		fakeWmic.record("duplicates", WmicRecordings.services("duplicates", "Agent,AgentA,Auto,Running",
+				"Windows Update,wuauserv,Manual,Stopped", "Agent,AgentB,Auto,Stopped",
+				"Windows Time,W32Time,Manual,Running"));
+		UptimeMonitorWindowsServiceCheckAdvanced monitor = runMonitor("duplicates", "Agent,Windows Update", 0);
+		assertEquals(MonitorState.OK, monitor.getState());
+		assertEquals("3", variable(monitor, "numberOfMatches"));
+		assertEquals(0, fakeWmic.getKilled());
+	}
+
+	@Test
+	public void adaptiveRefreshTest() {
+		WSCRefreshScheduler.getInstance().clear();
+		Parameters params = parameters("stable", "Windows.*");
+		params.put("maxRefreshInterval", "10");
+		UptimeMonitorWindowsServiceCheckAdvanced monitor = runMonitor(params);
+		long started = fakeWmic.getStarted();
+		assertEquals("0", variable(monitor, "resultAge"));
+
+		// The host did not change, the next poll outputs the previous result without running WMIC.
+		monitor.monitor();
+		assertEquals(started, fakeWmic.getStarted());
+		assertEquals(MonitorState.OK, monitor.getState());
+		assertEquals("4", variable(monitor, "numberOfMatches"));
+		assertEquals("1", variable(monitor, "resultAge"));
+		assertTrue(monitor.getMessage().contains("Services as of 1 seconds ago."));
+
+		// Other filters are not served from that result.
+		params.put("serviceDisplayName", "Remote Desktop Services");
+		monitor.setParameters(params);
+		monitor.monitor();
+		assertEquals(started + 1, fakeWmic.getStarted());
+		assertEquals("1", variable(monitor, "numberOfMatches"));
+		WSCRefreshScheduler.getInstance().clear();
+	}
+
+	@Test
+	public void multiHostTest() {
+		WSCRefreshScheduler.getInstance().clear();
+		fakeWmic.record("host2", WmicRecordings.services("host2"));
+		Parameters params = parameters("host1", "Windows.*");
+		params.put("hostList", "host1,host2");
+		params.put("maxRefreshInterval", "10");
+		UptimeMonitorWindowsServiceCheckAdvancedMultiHost monitor =
+				new UptimeMonitorWindowsServiceCheckAdvancedMultiHost();
+		monitor.setParameters(params);
+		monitor.monitor();
+		assertEquals(MonitorState.OK, monitor.getState());
+		assertEquals("8", variable(monitor, "totalNumberOfMatches"));
+		long started = fakeWmic.getStarted();
+
+		// Each host keeps its monitor between polls, the stable hosts output their previous result.
+		monitor.monitor();
+		assertEquals(MonitorState.OK, monitor.getState());
+		assertEquals("8", variable(monitor, "totalNumberOfMatches"));
+		assertEquals(started, fakeWmic.getStarted());
+
+		// A host removed from the list loses its monitor, it starts over when it is added again.
+		params.put("hostList", "host1");
+		monitor.setParameters(params);
+		monitor.monitor();
+		assertEquals("4", variable(monitor, "totalNumberOfMatches"));
+		params.put("hostList", "host1,host2");
+		monitor.setParameters(params);
+		monitor.monitor();
+		assertEquals("8", variable(monitor, "totalNumberOfMatches"));
+		assertEquals(started + 1, fakeWmic.getStarted());
+		WSCRefreshScheduler.getInstance().clear();
+	}
+
+	@Test
+	public void processMetricsTest() {
+		fakeWmic.record("processes", WmicRecordings.servicesWithProcessIds("processes"));
+		fakeWmic.recordProcesses("processes", WmicRecordings.processes("processes", 1000000));
+		Parameters params = parameters("processes", "Windows.*,Print Spooler");
+		params.put("processMetrics", "Yes");
+		UptimeMonitorWindowsServiceCheckAdvanced monitor = runMonitor(params);
+		assertEquals(MonitorState.OK, monitor.getState());
+		assertEquals("5", variable(monitor, "numberOfMatches"));
+		assertEquals("48.0", rangedVariable(monitor, "serviceWorkingSet", "Windows Time"));
+		assertEquals("12.0", rangedVariable(monitor, "serviceWorkingSet", "Windows Firewall"));
+		assertNull(rangedVariable(monitor, "serviceWorkingSet", "Windows Update"));
+		assertEquals("68.0", variable(monitor, "totalWorkingSet"));
+		// The first sample has no CPU usage.
+		assertNull(rangedVariable(monitor, "serviceCpuUsage", "Windows Time"));
+		assertEquals("0.0", variable(monitor, "totalCpuUsage"));
+
+		fakeWmic.recordProcesses("processes", WmicRecordings.processes("processes", 2000000));
+		long started = fakeWmic.getStarted();
+		monitor.monitor();
+		assertEquals(MonitorState.OK, monitor.getState());
+		// One query of the services and one of their processes.
+		assertEquals(started + 2, fakeWmic.getStarted());
+		assertTrue(Double.parseDouble(rangedVariable(monitor, "serviceCpuUsage", "Windows Time")) > 0);
+
+		// Without a process recording, the process query fails and only the process outputs are missing.
+		fakeWmic.recordProcesses("processes", WmicRecordings.authenticationFailed());
+		monitor.monitor();
+		assertEquals(MonitorState.OK, monitor.getState());
+		assertTrue(monitor.getMessage().contains("Process metrics are not available"));
+	}
+
+	/**
+	 * Run a monitor of the given host, as a remote host with credentials.
+	 */
+	private static UptimeMonitorWindowsServiceCheckAdvanced runMonitor(String host, String serviceDisplayName,
+			int timeout) {
+		Parameters params = parameters(host, serviceDisplayName);
+		if (timeout > 0) {
+			params.put("timeout", String.valueOf(timeout));
+		}
+		return runMonitor(params);
+	}
+
+	private static Parameters parameters(String host, String serviceDisplayName) {
+		Parameters params = new Parameters();
+		params.put("hostname", host);
+		params.put("domainName", "DOMAIN");
+		params.put("adminName", "admin");
+		params.put("password", "secret");
+		params.put("serviceDisplayName", serviceDisplayName);
+		return params;
+	}
+
+	private static UptimeMonitorWindowsServiceCheckAdvanced runMonitor(Parameters params) {
+		UptimeMonitorWindowsServiceCheckAdvanced monitor = new UptimeMonitorWindowsServiceCheckAdvanced();
+		monitor.setParameters(params);
+		monitor.monitor();
+		return monitor;
+	}
+
+	/**
+	 * Get the ranged output of the last poll of the monitor for the given object, null if there is none.
+	 */
+	private String rangedVariable(UptimeMonitorWindowsServiceCheckAdvanced monitor, String name, String objectName) {
+		String value = null;
+		for (PluginMonitorVariable variable : monitor.getVariables()) {
+			if (variable.getName().equals(name) && objectName.equals(variable.getObjectName())) {
+				value = variable.getValue();
+			}
+		}
+		return value;
+	}
+
+	/**
+	 * Get the output of the last poll of the monitor, the outputs of every poll are kept.
+	 */
+	private String variable(PluginMonitor monitor, String name) {
+		String value = null;
+		for (PluginMonitorVariable variable : monitor.getVariables()) {
+			if (variable.getName().equals(name)) {
+				value = variable.getValue();
+			}
+		}
+		if (value == null) {
+			fail("No output variable " + name);
+		}
+		return value;
+	}
+}
@@ -8,6 +8,7 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedList;
+import java.util.List;
 import java.util.Map.Entry;
 
 import org.apache.commons.lang.SystemUtils;
@@ -16,6 +17,9 @@ import org.junit.Test;
 
 import com.uptimesoftware.uptime.plugin.MonitorWindowsServiceCheckAdvanced.UptimeMonitorWindowsServiceCheckAdvanced;
 import com.uptimesoftware.uptime.plugin.WSCPluginParams;
+import com.uptimesoftware.uptime.plugin.WSCServiceFilter;
+import com.uptimesoftware.uptime.plugin.WSCServiceMatcher;
+import com.uptimesoftware.uptime.plugin.WSCWmicClient;
 
 public class MonitorWindowsServiceCheckAdvancedTest {
 
@@ -46,7 +50,9 @@ public class MonitorWindowsServiceCheckAdvancedTest {
 	private static final String SERVICE_STATUS_PAUSE_PENDING = "Pause Pending";
 	private static final String SERVICE_STATUS_PAUSED = "Paused";
 
+	private HashSet<String> literals = new HashSet<String>();
 	private HashSet<String> regexes = new HashSet<String>();
+	private WSCServiceMatcher serviceMatcher;
 	private ArrayList<String> args = new ArrayList<String>();
 	private HashMap<String, String[]> result = new HashMap<String, String[]>();
 
@@ -55,17 +61,20 @@ public class MonitorWindowsServiceCheckAdvancedTest {
 		// clear for re-use.
 		result.clear();
 		args.clear();
+		literals.clear();
 		regexes.clear();
 		wscParams.resetStartupTypeServiceStatusProperties();
 
 		assertTrue(invokeBuildArgsOfProcessBuilder(args, wscParams));
 		// Get a list of ALL Windows service.
-		assertTrue(invokeCheckRegexAndAdd(regexes, wscParams));
+		assertTrue(invokeCheckRegexAndAdd(literals, regexes, wscParams));
+		serviceMatcher = new WSCServiceMatcher(literals, regexes);
 	}
 
 	@Test
 	public void checkRegexAndAddTest() {
 		LinkedList<String> temp = new LinkedList<String>();
+		HashSet<String> literalTemp = new HashSet<String>();
 		HashSet<String> regexTemp = new HashSet<String>();
 
 		temp.add("Win.*");
@@ -73,17 +82,28 @@ public class MonitorWindowsServiceCheckAdvancedTest {
 		temp.add("   roflcopter*");
 		// Valid regexes. Comma is a separator.
 		wscParams.setServiceDisplayName("Win.*,gefe.*,   roflcopter*");
-		assertTrue(invokeCheckRegexAndAdd(regexTemp, wscParams));
+		assertTrue(invokeCheckRegexAndAdd(literalTemp, regexTemp, wscParams));
 		assertTrue(regexTemp.size() == temp.size());
 		for (String regex : regexTemp) {
 			assertTrue(temp.contains(regex));
 		}
+		assertTrue(literalTemp.isEmpty());
+
+		// Plain names are literals, escaped metacharacters are unescaped.
+		regexTemp.clear();
+		wscParams.setServiceDisplayName("Spooler,SQL Server \\(MSSQLSERVER\\),Win.*");
+		assertTrue(invokeCheckRegexAndAdd(literalTemp, regexTemp, wscParams));
+		assertTrue(literalTemp.size() == 2);
+		assertTrue(literalTemp.contains("Spooler"));
+		assertTrue(literalTemp.contains("SQL Server (MSSQLSERVER)"));
+		assertTrue(regexTemp.size() == 1);
+		assertTrue(regexTemp.contains("Win.*"));
 
 		// Invalid regexes. Comma is a separator.
 		wscParams.setServiceDisplayName("*,*");
-		assertFalse(invokeCheckRegexAndAdd(regexTemp, wscParams));
+		assertFalse(invokeCheckRegexAndAdd(literalTemp, regexTemp, wscParams));
 		wscParams.setServiceDisplayName("*");
-		assertFalse(invokeCheckRegexAndAdd(regexTemp, wscParams));
+		assertFalse(invokeCheckRegexAndAdd(literalTemp, regexTemp, wscParams));
 	}
 
 	@Test
@@ -91,7 +111,7 @@ public class MonitorWindowsServiceCheckAdvancedTest {
 		// STARTUP_TYPE_MANUAL (Include) is selected.
 		wscParams.resetStartupTypeServiceStatusProperties();
 		wscParams.setStartupTypeInclude(STARTUP_TYPE_MANUAL);
-		assertTrue(invokeExecWmicCommand(result, args, regexes, wscParams));
+		assertTrue(invokeExecWmicCommand(result, args, serviceMatcher, wscParams));
 		// every entry should contain STARTUP_TYPE_MANUAL (Include)
 		String startup = "";
 		for (Entry<String, String[]> entry : result.entrySet()) {
@@ -106,7 +126,7 @@ public class MonitorWindowsServiceCheckAdvancedTest {
 		// STARTUP_TYPE_MANUAL (Include) and SERVICE_STATUS_RUNNING (Exclude) are selected.
 		wscParams.setStartupTypeInclude(STARTUP_TYPE_MANUAL);
 		wscParams.setServiceStatusInclude(SERVICE_STATUS_RUNNING);
-		assertTrue(invokeExecWmicCommand(result, args, regexes, wscParams));
+		assertTrue(invokeExecWmicCommand(result, args, serviceMatcher, wscParams));
 		// every entry should contain STARTUP_TYPE_MANUAL (Include) and not contain SERVICE_STATUS_RUNNING (Exclude).
 		String startup = "", status = "";
 		for (Entry<String, String[]> entry : result.entrySet()) {
@@ -126,7 +146,7 @@ public class MonitorWindowsServiceCheckAdvancedTest {
 		// STARTUP_TYPE_MANUAL (Include) and SERVICE_STATUS_RUNNING (Exclude), rest are not selected
 		wscParams.setStartupTypeInclude(STARTUP_TYPE_MANUAL);
 		wscParams.setServiceStatusExclude(SERVICE_STATUS_RUNNING);
-		assertTrue(invokeExecWmicCommand(result, args, regexes, wscParams));
+		assertTrue(invokeExecWmicCommand(result, args, serviceMatcher, wscParams));
 		// every entry should contain STARTUP_TYPE_MANUAL (Include) and should NOT contain SERVICE_STATUS_RUNNING
 		// (Exclude)
 		String startup = "", status = "";
@@ -145,7 +165,7 @@ public class MonitorWindowsServiceCheckAdvancedTest {
 	public void execWmicCommandStartupTypeExcludeTest() {
 		// STARTUP_TYPE_DISABLED (Exclude) selected, rest are not selected
 		wscParams.setStartupTypeExclude(STARTUP_TYPE_DISABLED);
-		assertTrue(invokeExecWmicCommand(result, args, regexes, wscParams));
+		assertTrue(invokeExecWmicCommand(result, args, serviceMatcher, wscParams));
 		String startup = "";
 		for (Entry<String, String[]> entry : result.entrySet()) {
 			startup = entry.getValue()[0];
@@ -159,7 +179,7 @@ public class MonitorWindowsServiceCheckAdvancedTest {
 		// STARTUP_TYPE_MANUAL (Exclude) and SERVICE_STATUS_RUNNING (Include) are selected.
 		wscParams.setStartupTypeExclude(STARTUP_TYPE_MANUAL);
 		wscParams.setServiceStatusInclude(SERVICE_STATUS_RUNNING);
-		assertTrue(invokeExecWmicCommand(result, args, regexes, wscParams));
+		assertTrue(invokeExecWmicCommand(result, args, serviceMatcher, wscParams));
 		// every entry should NOT contain STARTUP_TYPE_MANUAL (Exclude) and contain SERVICE_STATUS_RUNNING (Include).
 		String startup = "", status = "";
 		for (Entry<String, String[]> entry : result.entrySet()) {
@@ -179,7 +199,7 @@ public class MonitorWindowsServiceCheckAdvancedTest {
 		// STARTUP_TYPE_MANUAL (Exclude) and SERVICE_STATUS_RUNNING (Exclude) are selected.
 		wscParams.setStartupTypeExclude(STARTUP_TYPE_MANUAL);
 		wscParams.setServiceStatusExclude(SERVICE_STATUS_RUNNING);
-		assertTrue(invokeExecWmicCommand(result, args, regexes, wscParams));
+		assertTrue(invokeExecWmicCommand(result, args, serviceMatcher, wscParams));
 		// every entry should NOT contain STARTUP_TYPE_MANUAL (Exclude) and SERVICE_STATUS_RUNNING (Exclude).
 		String startup = "", status = "";
 		for (Entry<String, String[]> entry : result.entrySet()) {
@@ -198,7 +218,7 @@ public class MonitorWindowsServiceCheckAdvancedTest {
 	public void exicWmicCommandServiceStatusIncludeTest() {
 		// service include is selected ("Stopped"), rest are not selected
 		wscParams.setServiceStatusInclude(SERVICE_STATUS_STOPPED);
-		assertTrue(invokeExecWmicCommand(result, args, regexes, wscParams));
+		assertTrue(invokeExecWmicCommand(result, args, serviceMatcher, wscParams));
 		// every entry should contain "Stopped"
 		String status = "";
 		for (Entry<String, String[]> entry : result.entrySet()) {
@@ -217,7 +237,7 @@ public class MonitorWindowsServiceCheckAdvancedTest {
 	public void exicWmicCommandServiceStatusExcludeTest() {
 		// service exclude is selected ("Stopped"), rest are not selected
 		wscParams.setServiceStatusExclude(SERVICE_STATUS_STOPPED);
-		assertTrue(invokeExecWmicCommand(result, args, regexes, wscParams));
+		assertTrue(invokeExecWmicCommand(result, args, serviceMatcher, wscParams));
 		// every entry should NOT contain "Stopped"
 		String status = "";
 		for (Entry<String, String[]> entry : result.entrySet()) {
@@ -242,12 +262,15 @@ public class MonitorWindowsServiceCheckAdvancedTest {
 		// Testing a special case which Service Display Name contains comma(s).
 		// Since Startup Type (Include) : Manual is selected, someVerySpecialLine won't be filtered.
 		wscParams.setStartupTypeInclude(STARTUP_TYPE_MANUAL);
-		assertTrue(invokeSplitLineAndPutInHashMap(result, someVerySpecialLine, regexes, wscParams));
+		assertTrue(invokeSplitLineAndPutInHashMap(result, someVerySpecialLine, serviceMatcher, wscParams));
+		assertTrue(result.size() == 1);
 		for (Entry<String, String[]> entry : result.entrySet()) {
-			// The key should be "Random, Display,  Awesome" (aka messed up Service Display Name).
-			assertTrue(entry.getKey().equals("Random, Display,  Awesome"));
+			// The key should be "RandomDisplayAwesome" (aka Service Name), and the display name should be
+			// "Random, Display,  Awesome" (aka messed up Service Display Name).
+			assertTrue(entry.getKey().equals("RandomDisplayAwesome"));
 			assertTrue(entry.getValue()[0].equals(STARTUP_TYPE_MANUAL));
 			assertTrue(entry.getValue()[1].equals(SERVICE_STATUS_STOPPED));
+			assertTrue(entry.getValue()[2].equals("Random, Display,  Awesome"));
 		}
 	}
 
@@ -413,10 +436,12 @@ public class MonitorWindowsServiceCheckAdvancedTest {
 				assertTrue(args.get(i).equals(winArgs[i]));
 			}
 		} else {
-			String[] linuxArgs = temp.getDomainName() != null ? new String[] { "wmic", "-U",
+			// The absolute path of the WMIC client is executed.
+			String wmic = WSCWmicClient.getInstance().getPath();
+			String[] linuxArgs = temp.getDomainName() != null ? new String[] { wmic, "-U",
 					temp.getDomainName() + "/" + temp.getUserName() + "%" + temp.getPassword(),
 					"//" + temp.getHostName(), "select Caption,Name,StartMode,State from Win32_Service",
-					"--delimiter=," } : new String[] { "wmic", "-U", temp.getUserName() + "%" + temp.getPassword(),
+					"--delimiter=," } : new String[] { wmic, "-U", temp.getUserName() + "%" + temp.getPassword(),
 					"//" + temp.getHostName(), "select Caption,Name,StartMode,State from Win32_Service",
 					"--delimiter=," };
 			// Linux monitoring station.
@@ -474,14 +499,14 @@ public class MonitorWindowsServiceCheckAdvancedTest {
 	 * @return True if executing the wmic command is successful, false otherwise.
 	 */
 	private boolean invokeExecWmicCommand(HashMap<String, String[]> result, ArrayList<String> wmicCommand,
-			HashSet<String> regexes, WSCPluginParams wscParams) {
+			WSCServiceMatcher serviceMatcher, WSCPluginParams wscParams) {
 		boolean gotResult = false;
 		try {
 			Method method = UptimeMonitorWindowsServiceCheckAdvanced.class.getDeclaredMethod("execWmicCommand",
-					new Class[] { HashMap.class, ArrayList.class, HashSet.class, WSCPluginParams.class });
+					new Class[] { HashMap.class, List.class, WSCServiceFilter.class, WSCPluginParams.class });
 			method.setAccessible(true);
 			gotResult = (boolean) method.invoke(UptimeMonitorWindowsServiceCheckAdvanced.class.newInstance(),
-					new Object[] { result, wmicCommand, regexes, wscParams });
+					new Object[] { result, wmicCommand, new WSCServiceFilter(serviceMatcher, wscParams), wscParams });
 		} catch (NoSuchMethodException | SecurityException | IllegalArgumentException | IllegalAccessException
 				| InvocationTargetException | InstantiationException e) {
 			System.err.println(e);
@@ -495,15 +520,15 @@ public class MonitorWindowsServiceCheckAdvancedTest {
 	 * @return True if successful, false otherwise.
 	 */
 	private boolean invokeSplitLineAndPutInHashMap(HashMap<String, String[]> result, String line,
-			HashSet<String> regexes, WSCPluginParams wscParams) {
+			WSCServiceMatcher serviceMatcher, WSCPluginParams wscParams) {
 		boolean gotResult = false;
 		try {
 			Method method = UptimeMonitorWindowsServiceCheckAdvanced.class.getDeclaredMethod(
-					"splitLineAndPutInHashMap", new Class[] { HashMap.class, String.class, HashSet.class,
-							WSCPluginParams.class });
+					"splitLineAndPutInHashMap", new Class[] { HashMap.class, CharSequence.class,
+							WSCServiceFilter.class, WSCPluginParams.class });
 			method.setAccessible(true);
 			gotResult = (boolean) method.invoke(UptimeMonitorWindowsServiceCheckAdvanced.class.newInstance(),
-					new Object[] { result, line, regexes, wscParams });
+					new Object[] { result, line, new WSCServiceFilter(serviceMatcher, wscParams), wscParams });
 		} catch (NoSuchMethodException | SecurityException | IllegalArgumentException | IllegalAccessException
 				| InvocationTargetException | InstantiationException e) {
 			System.err.println(e);
@@ -516,14 +541,15 @@ public class MonitorWindowsServiceCheckAdvancedTest {
 	 * 
 	 * @return True if the given regex is valid, false otherwise.
 	 */
-	private boolean invokeCheckRegexAndAdd(HashSet<String> regexes, WSCPluginParams wscParams) {
+	private boolean invokeCheckRegexAndAdd(HashSet<String> literals, HashSet<String> regexes,
+			WSCPluginParams wscParams) {
 		boolean regexValid = false;
 		try {
 			Method method = UptimeMonitorWindowsServiceCheckAdvanced.class.getDeclaredMethod("checkRegexAndAdd",
-					new Class[] { HashSet.class, WSCPluginParams.class });
+					new Class[] { HashSet.class, HashSet.class, WSCPluginParams.class });
 			method.setAccessible(true);
 			regexValid = (boolean) method.invoke(UptimeMonitorWindowsServiceCheckAdvanced.class.newInstance(),
-					new Object[] { regexes, wscParams });
+					new Object[] { literals, regexes, wscParams });
 		} catch (NoSuchMethodException | SecurityException | IllegalArgumentException | IllegalAccessException
 				| InvocationTargetException | InstantiationException e) {
 			System.err.println(e);
@@ -0,0 +1,108 @@
+package com.uptimesoftware.uptime.plugin.test;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.HashSet;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.uptimesoftware.uptime.plugin.WSCCheckPlan;
+import com.uptimesoftware.uptime.plugin.WSCCheckPlanCache;
+import com.uptimesoftware.uptime.plugin.WSCPluginParams;
+import com.uptimesoftware.uptime.plugin.WSCServiceFilter;
+import com.uptimesoftware.uptime.plugin.WSCServiceMatcher;
+import com.uptimesoftware.uptime.plugin.WSCServiceStatus;
+import com.uptimesoftware.uptime.plugin.WSCStartupType;
+
+public class WSCCheckPlanTest {
+
+	private WSCCheckPlanCache cache = WSCCheckPlanCache.getInstance();
+
+	@Before
+	public void setup() {
+		// clear for re-use.
+		cache.clear();
+	}
+
+	@Test
+	public void serviceFilterTest() {
+		WSCPluginParams wscParams = new WSCPluginParams("host", "domain", "user", "password", "Windows.*", null,
+				"Disabled", "Pending", null);
+		WSCServiceFilter serviceFilter = new WSCServiceFilter(new WSCServiceMatcher(Arrays.asList("Windows.*")),
+				wscParams);
+
+		assertTrue(serviceFilter.matches("Windows Update"));
+		assertFalse(serviceFilter.matches("DHCP Client"));
+		assertTrue(serviceFilter.passes(WSCStartupType.AUTO));
+		assertFalse(serviceFilter.passes(WSCStartupType.DISABLED));
+		// Include "Pending" keeps every pending status, as it did on the text of the State column.
+		assertTrue(serviceFilter.passes(WSCServiceStatus.START_PENDING));
+		assertTrue(serviceFilter.passes(WSCServiceStatus.PAUSE_PENDING));
+		assertFalse(serviceFilter.passes(WSCServiceStatus.RUNNING));
+		// A regex can match any number of services.
+		assertTrue(serviceFilter.getExactNames().isEmpty());
+		serviceFilter = new WSCServiceFilter(new WSCServiceMatcher(Arrays.asList("Windows Update",
+				"SQL Server \\(MSSQLSERVER\\)")), wscParams);
+		assertEquals(new HashSet<String>(Arrays.asList("Windows Update", "SQL Server (MSSQLSERVER)")),
+				serviceFilter.getExactNames());
+	}
+
+	@Test
+	public void fingerprintTest() {
+		WSCPluginParams wscParams = new WSCPluginParams("host", "domain", "user", "password", "Windows.*", "Auto",
+				null, null, null);
+		WSCPluginParams same = new WSCPluginParams("host", "domain", "user", "password", "Windows.*", "Auto", null,
+				null, null);
+		WSCPluginParams otherPassword = new WSCPluginParams("host", "domain", "user", "secret", "Windows.*", "Auto",
+				null, null, null);
+		WSCPluginParams otherFilter = new WSCPluginParams("host", "domain", "user", "password", "Windows.*", "Manual",
+				null, null, null);
+
+		assertEquals(WSCCheckPlan.fingerprintOf(wscParams), WSCCheckPlan.fingerprintOf(same));
+		assertFalse(WSCCheckPlan.fingerprintOf(wscParams).equals(WSCCheckPlan.fingerprintOf(otherPassword)));
+		assertFalse(WSCCheckPlan.fingerprintOf(wscParams).equals(WSCCheckPlan.fingerprintOf(otherFilter)));
+		// The password is not in the fingerprint, only its identity.
+		assertFalse(WSCCheckPlan.fingerprintOf(otherPassword).contains("secret"));
+	}
+
+	@Test
+	public void fingerprintSeparatorTest() {
+		WSCPluginParams wscParams = new WSCPluginParams("host", "domain", "user", "password", "Win|Auto", null, null,
+				null, null);
+		WSCPluginParams otherFilter = new WSCPluginParams("host", "domain", "user", "password", "Win", "Auto", null,
+				null, null);
+		// Inputs containing the separator are not the same as the inputs it separates.
+		assertFalse(WSCCheckPlan.filtersOf(wscParams).equals(WSCCheckPlan.filtersOf(otherFilter)));
+		assertFalse(WSCCheckPlan.fingerprintOf(wscParams).equals(WSCCheckPlan.fingerprintOf(otherFilter)));
+	}
+
+	@Test
+	public void cacheTest() {
+		WSCPluginParams wscParams = new WSCPluginParams("host", "domain", "user", "password", "Windows.*", null,
+				null, null, null);
+		String fingerprint = WSCCheckPlan.fingerprintOf(wscParams);
+		WSCCheckPlan plan = new WSCCheckPlan(fingerprint, wscParams, new WSCServiceFilter(new WSCServiceMatcher(
+				Arrays.asList("Windows.*")), wscParams), Arrays.asList("wmic", "service"));
+		assertNull(cache.get(fingerprint));
+		cache.put(plan);
+		assertSame(plan, cache.get(fingerprint));
+		assertEquals(Arrays.asList("wmic", "service"), plan.getWmicCommand());
+
+		// Plans that are not valid are never cached.
+		WSCCheckPlan failed = WSCCheckPlan.failed("Admin name is missing.");
+		assertFalse(failed.isValid());
+		cache.put(failed);
+		assertNull(cache.get(null));
+	}
+
+	@Test(expected = UnsupportedOperationException.class)
+	public void immutableTest() {
+		WSCPluginParams wscParams = new WSCPluginParams("host", "domain", "user", "password", "Windows.*", null,
+				null, null, null);
+		WSCCheckPlan plan = new WSCCheckPlan(WSCCheckPlan.fingerprintOf(wscParams), wscParams, new WSCServiceFilter(
+				new WSCServiceMatcher(Arrays.asList("Windows.*")), wscParams), Arrays.asList("wmic", "service"));
+		plan.getWmicCommand().add("/node:other");
+	}
+}
@@ -0,0 +1,78 @@
+package com.uptimesoftware.uptime.plugin.test;
+
+import static org.junit.Assert.*;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import com.uptimesoftware.uptime.plugin.WSCCircuitBreaker;
+import com.uptimesoftware.uptime.plugin.WSCCircuitBreaker.Outcome;
+import com.uptimesoftware.uptime.plugin.WSCCircuitBreaker.State;
+
+public class WSCCircuitBreakerTest {
+
+	private static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+
+	@Test
+	public void openTest() {
+		WSCCircuitBreaker breaker = new WSCCircuitBreaker(3, 30000, 120000);
+		assertNull(breaker.admit("host1", 0));
+		assertNull(breaker.record("host1", Outcome.HOST_FAILURE, "Authentication failed", 0));
+		// A success resets the consecutive failures.
+		assertNull(breaker.record("host1", Outcome.SUCCESS, null, 0));
+		assertNull(breaker.record("host1", Outcome.HOST_FAILURE, "Authentication failed", 0));
+		assertNull(breaker.record("host1", Outcome.HOST_FAILURE, "Authentication failed", 0));
+		// Failures that tell nothing of the host do not count.
+		assertNull(breaker.record("host1", Outcome.OTHER, "WMIC command waited 1000 ms for a slot.", 0));
+		assertEquals(State.CLOSED, breaker.getState("host1"));
+
+		assertEquals("Circuit breaker is open after 3 consecutive failures, next probe in 30 s.",
+				breaker.record("host1", Outcome.HOST_FAILURE, "WMIC command timed out after 60000 ms.", 0));
+		assertEquals(State.OPEN, breaker.getState("host1"));
+		assertEquals("Circuit breaker is open after 3 consecutive failures, next probe in 20 s. Last error : "
+				+ "WMIC command timed out after 60000 ms.", breaker.admit("host1", 10 * SECOND));
+		// Other keys are not affected.
+		assertNull(breaker.admit("host2", 10 * SECOND));
+	}
+
+	@Test
+	public void probeTest() {
+		WSCCircuitBreaker breaker = new WSCCircuitBreaker(1, 30000, 100000);
+		breaker.record("host1", Outcome.HOST_FAILURE, "Authentication failed", 0);
+
+		// Once the backoff passed, a single check probes the host.
+		assertNull(breaker.admit("host1", 30 * SECOND));
+		assertEquals(State.HALF_OPEN, breaker.getState("host1"));
+		assertNotNull(breaker.admit("host1", 30 * SECOND));
+		// A failed probe doubles the backoff.
+		assertEquals("Circuit breaker is open after 2 consecutive failures, next probe in 60 s.",
+				breaker.record("host1", Outcome.HOST_FAILURE, "Authentication failed", 30 * SECOND));
+		assertNotNull(breaker.admit("host1", 89 * SECOND));
+		assertNull(breaker.admit("host1", 90 * SECOND));
+		// Up to the maximum backoff.
+		assertEquals("Circuit breaker is open after 3 consecutive failures, next probe in 100 s.",
+				breaker.record("host1", Outcome.HOST_FAILURE, "Authentication failed", 90 * SECOND));
+
+		// A successful probe closes the breaker.
+		assertNull(breaker.admit("host1", 190 * SECOND));
+		assertNull(breaker.record("host1", Outcome.SUCCESS, null, 190 * SECOND));
+		assertEquals(State.CLOSED, breaker.getState("host1"));
+		assertNull(breaker.admit("host1", 190 * SECOND));
+	}
+
+	@Test
+	public void boundTest() {
+		WSCCircuitBreaker breaker = new WSCCircuitBreaker(1, 30000, 100000);
+		// Successes of keys that never failed keep no breaker.
+		assertNull(breaker.record("host0", Outcome.SUCCESS, null, 0));
+		assertEquals(0, breaker.size());
+		for (int i = 1; i <= 10001; i++) {
+			breaker.record("host" + i, Outcome.HOST_FAILURE, "Authentication failed", 0);
+		}
+		// Only the most recently used keys are kept.
+		assertEquals(10000, breaker.size());
+		assertEquals(State.CLOSED, breaker.getState("host1"));
+		assertEquals(State.OPEN, breaker.getState("host10001"));
+	}
+}
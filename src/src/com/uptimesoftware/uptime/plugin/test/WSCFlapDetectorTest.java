@@ -0,0 +1,71 @@
+package com.uptimesoftware.uptime.plugin.test;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.HashMap;
+
+import org.junit.Test;
+
+import com.uptimesoftware.uptime.plugin.WSCFlapDetector;
+
+public class WSCFlapDetectorTest {
+
+	@Test
+	public void availabilityTest() {
+		WSCFlapDetector flapDetector = new WSCFlapDetector();
+		flapDetector.setWindow(4);
+		assertEquals(100, flapDetector.getWorstAvailability());
+		flapDetector.update(services("Running", "Running"));
+		flapDetector.update(services("Running", "Stopped"));
+		assertEquals(100, flapDetector.getAvailability("Windows Update"));
+		assertEquals(50, flapDetector.getAvailability("Print Spooler"));
+		assertEquals(50, flapDetector.getWorstAvailability());
+		assertEquals(1, flapDetector.getTransitions());
+
+		// Polls older than the window are not counted.
+		for (int i = 0; i < 4; i++) {
+			flapDetector.update(services("Stopped", "Running"));
+		}
+		assertEquals(0, flapDetector.getAvailability("Windows Update"));
+		assertEquals(100, flapDetector.getAvailability("Print Spooler"));
+		assertEquals(0, flapDetector.getTransitions());
+
+		// A service that is not matched any more is forgotten.
+		HashMap<String, String[]> windowsUpdate = services("Running", "Running");
+		windowsUpdate.remove("Print Spooler");
+		flapDetector.update(windowsUpdate);
+		assertEquals(-1, flapDetector.getAvailability("Print Spooler"));
+	}
+
+	@Test
+	public void flappingTest() {
+		WSCFlapDetector flapDetector = new WSCFlapDetector();
+		flapDetector.setWindow(10);
+		// Flapping needs a few polls.
+		flapDetector.update(services("Running", "Running"));
+		flapDetector.update(services("Stopped", "Running"));
+		flapDetector.update(services("Running", "Running"));
+		assertTrue(flapDetector.getFlapping().isEmpty());
+		assertEquals(1.0, flapDetector.getFlapScore("Windows Update"), 0.001);
+		flapDetector.update(services("Stopped", "Running"));
+		flapDetector.update(services("Running", "Running"));
+		assertEquals(Arrays.asList("Windows Update"), flapDetector.getFlapping());
+
+		// It stops flapping once less than a fifth of the polls changed.
+		for (int i = 0; i < 7; i++) {
+			flapDetector.update(services("Running", "Running"));
+			assertEquals(Arrays.asList("Windows Update"), flapDetector.getFlapping());
+		}
+		flapDetector.update(services("Running", "Running"));
+		assertEquals(1.0 / 9, flapDetector.getFlapScore("Windows Update"), 0.001);
+		assertTrue(flapDetector.getFlapping().isEmpty());
+	}
+
+	private static HashMap<String, String[]> services(String windowsUpdate, String printSpooler) {
+		HashMap<String, String[]> services = new HashMap<String, String[]>();
+		services.put("Windows Update", new String[] { "Manual", windowsUpdate });
+		services.put("Print Spooler", new String[] { "Auto", printSpooler });
+		return services;
+	}
+}
@@ -0,0 +1,96 @@
+package com.uptimesoftware.uptime.plugin.test;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.uptimesoftware.uptime.plugin.WSCHistoryStore;
+import com.uptimesoftware.uptime.plugin.WSCServiceStatus;
+import com.uptimesoftware.uptime.plugin.WSCStartupType;
+
+public class WSCHistoryStoreTest {
+
+	private static final long DAY = TimeUnit.DAYS.toMillis(1);
+
+	private File directory;
+
+	@Before
+	public void setup() throws IOException {
+		directory = File.createTempFile("history", "");
+		assertTrue(directory.delete());
+	}
+
+	@After
+	public void teardown() {
+		for (File file : directory.listFiles()) {
+			file.delete();
+		}
+		directory.delete();
+	}
+
+	@Test
+	public void appendAndQueryTest() throws IOException {
+		WSCHistoryStore store = new WSCHistoryStore(directory, 4, Long.MAX_VALUE);
+		assertTrue(store.append("HOST1", "Windows Update", WSCStartupType.MANUAL, WSCServiceStatus.STOPPED, 1000));
+		// Only transitions are appended.
+		assertFalse(store.append("host1", "Windows Update", WSCStartupType.MANUAL, WSCServiceStatus.STOPPED, 2000));
+		assertTrue(store.append("host2", "Windows Update", WSCStartupType.MANUAL, WSCServiceStatus.STOPPED, 2000));
+		for (int i = 0; i < 10; i++) {
+			assertTrue(store.append("host1", "Windows Update", WSCStartupType.MANUAL,
+					i % 2 == 0 ? WSCServiceStatus.RUNNING : WSCServiceStatus.STOPPED, 3000 + i * 1000));
+		}
+		// 12 records, 4 per segment.
+		assertEquals(3, store.getSegmentCount());
+
+		List<WSCHistoryStore.Entry> entries = store.query("host1", 0, Long.MAX_VALUE);
+		assertEquals(11, entries.size());
+		assertEquals(1000, entries.get(0).getTimeMillis());
+		assertEquals("Windows Update", entries.get(0).getServiceDisplayName());
+		assertEquals(WSCStartupType.MANUAL, entries.get(0).getStartupType());
+		assertEquals(WSCServiceStatus.STOPPED, entries.get(0).getStatus());
+
+		// The range spans two segments.
+		entries = store.query("host1", 5000, 8000);
+		assertEquals(4, entries.size());
+		assertEquals(5000, entries.get(0).getTimeMillis());
+		assertEquals(WSCServiceStatus.RUNNING, entries.get(0).getStatus());
+		assertEquals(8000, entries.get(3).getTimeMillis());
+		assertTrue(store.query("host3", 0, Long.MAX_VALUE).isEmpty());
+		store.close();
+
+		// A new store goes on with the files of the previous one.
+		store = new WSCHistoryStore(directory, 4, Long.MAX_VALUE);
+		assertEquals(11, store.query("HOST1", 0, Long.MAX_VALUE).size());
+		assertTrue(store.append("host1", "Print Spooler", WSCStartupType.AUTO, WSCServiceStatus.RUNNING, 20000));
+		// The last segment was full, a new one is started.
+		assertEquals(4, store.getSegmentCount());
+		entries = store.query("host1", 20000, 20000);
+		assertEquals(1, entries.size());
+		assertEquals("Print Spooler", entries.get(0).getServiceDisplayName());
+		store.close();
+	}
+
+	@Test
+	public void retentionTest() throws IOException {
+		WSCHistoryStore store = new WSCHistoryStore(directory, 2, 10 * DAY);
+		store.append("host1", "Windows Update", WSCStartupType.MANUAL, WSCServiceStatus.STOPPED, DAY);
+		store.append("host1", "Windows Update", WSCStartupType.MANUAL, WSCServiceStatus.RUNNING, 2 * DAY);
+		store.append("host1", "Windows Update", WSCStartupType.MANUAL, WSCServiceStatus.STOPPED, 5 * DAY);
+		assertEquals(2, store.getSegmentCount());
+		// Starting the third segment deletes the first one, its last record is older than 10 days.
+		store.append("host1", "Windows Update", WSCStartupType.MANUAL, WSCServiceStatus.RUNNING, 6 * DAY);
+		store.append("host1", "Windows Update", WSCStartupType.MANUAL, WSCServiceStatus.STOPPED, 13 * DAY);
+		assertEquals(2, store.getSegmentCount());
+		List<WSCHistoryStore.Entry> entries = store.query("host1", 0, Long.MAX_VALUE);
+		assertEquals(3, entries.size());
+		assertEquals(5 * DAY, entries.get(0).getTimeMillis());
+		store.close();
+	}
+}
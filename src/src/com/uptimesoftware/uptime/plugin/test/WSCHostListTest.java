@@ -0,0 +1,41 @@
+package com.uptimesoftware.uptime.plugin.test;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+
+import com.uptimesoftware.uptime.plugin.WSCHostList;
+
+public class WSCHostListTest {
+
+	@Test
+	public void separatorTest() {
+		assertEquals(Arrays.asList("db1", "db2.example.com", "db3"),
+				WSCHostList.parse(" db1, db2.example.com\n db3 ,,db1 "));
+		assertTrue(WSCHostList.parse(null).isEmpty());
+		assertTrue(WSCHostList.parse(" , ").isEmpty());
+		// Host names are case-insensitive.
+		assertEquals(Arrays.asList("DB1", "db2"), WSCHostList.parse("DB1 db2 db1 DB[1-2]"));
+	}
+
+	@Test
+	public void rangeTest() {
+		assertEquals(Arrays.asList("web08.example.com", "web09.example.com", "web10.example.com"),
+				WSCHostList.parse("web[08-10].example.com"));
+		assertEquals(Arrays.asList("web9", "web10"), WSCHostList.parse("web[9-10]"));
+		assertEquals(Arrays.asList("rack1-node1", "rack1-node2", "rack2-node1", "rack2-node2"),
+				WSCHostList.parse("rack[1-2]-node[1-2]"));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void reversedRangeTest() {
+		WSCHostList.parse("web[10-1]");
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void tooManyHostsTest() {
+		WSCHostList.parse("rack[1-10]-node[1-101]");
+	}
+}
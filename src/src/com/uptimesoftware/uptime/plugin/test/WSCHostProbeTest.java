@@ -0,0 +1,47 @@
+package com.uptimesoftware.uptime.plugin.test;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+
+import org.junit.Test;
+
+import com.uptimesoftware.uptime.plugin.WSCHostProbe;
+
+public class WSCHostProbeTest {
+
+	@Test
+	public void reachableTest() throws IOException {
+		ServerSocket server = new ServerSocket(0, 1, InetAddress.getByName("127.0.0.1"));
+		try {
+			WSCHostProbe probe = new WSCHostProbe(server.getLocalPort(), 1000, 30000, 300000);
+			assertNull(probe.check("127.0.0.1"));
+			assertNull(probe.check("127.0.0.1"));
+		} finally {
+			server.close();
+		}
+	}
+
+	@Test
+	public void unreachableTest() throws IOException {
+		ServerSocket server = new ServerSocket(0, 1, InetAddress.getByName("127.0.0.1"));
+		int port = server.getLocalPort();
+		server.close();
+
+		WSCHostProbe probe = new WSCHostProbe(port, 1000, 30000, 300000);
+		String errorMessage = probe.check("127.0.0.1");
+		assertNotNull(errorMessage);
+		assertTrue(errorMessage.startsWith("Host 127.0.0.1 is not reachable on port " + port));
+		// The negative cache answers until it expires, without a connect.
+		assertSame(errorMessage, probe.check("127.0.0.1"));
+		probe.clear();
+		assertNotNull(probe.check("127.0.0.1"));
+	}
+
+	@Test
+	public void disabledTest() {
+		assertNull(WSCHostProbe.DISABLED.check("host.invalid"));
+	}
+}
@@ -0,0 +1,87 @@
+package com.uptimesoftware.uptime.plugin.test;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.uptimesoftware.uptime.plugin.WSCLineReader;
+
+public class WSCLineReaderTest {
+
+	// Display names of hosts in German, French and Russian.
+	private static final String GERMAN = "Windows-Update-Dienst f\u00fcr \u00c4rger";
+	private static final String FRENCH = "T\u00e9moin";
+	private static final String RUSSIAN = "\u0421\u043b\u0443\u0436\u0431\u0430 "
+			+ "\u0432\u0440\u0435\u043c\u0435\u043d\u0438 Windows";
+
+	@Test
+	public void utf16Test() throws IOException {
+		// Windows WMIC : byte order mark, an empty first line and "\r\r\n".
+		byte[] stdout = bytes(new byte[] { (byte) 0xff, (byte) 0xfe }, "\r\r\nNode,Caption,Name,StartMode,State\r\r\n"
+				+ "HOST," + GERMAN + ",wuauserv,Manual,Stopped\r\r\n", "UTF-16LE");
+		WSCLineReader lineReader = new WSCLineReader(new ByteArrayInputStream(stdout));
+		assertEquals(Arrays.asList("", "Node,Caption,Name,StartMode,State",
+				"HOST," + GERMAN + ",wuauserv,Manual,Stopped"), readLines(lineReader));
+		assertEquals(WSCLineReader.Encoding.UTF_16LE, lineReader.getEncoding());
+
+		// Without a byte order mark.
+		lineReader = new WSCLineReader(new ByteArrayInputStream(("Caption\r\n" + FRENCH)
+				.getBytes(StandardCharsets.UTF_16LE)));
+		assertEquals(Arrays.asList("Caption", FRENCH), readLines(lineReader));
+		assertEquals(WSCLineReader.Encoding.UTF_16LE, lineReader.getEncoding());
+	}
+
+	@Test
+	public void utf8Test() throws IOException {
+		byte[] stdout = bytes(new byte[0], "[librpc] failed NT status\nCaption,Name,StartMode,State\n"
+				+ RUSSIAN + ",W32Time,Manual,Running\n\nDHCP Client,Dhcp,Auto,Running", "UTF-8");
+		WSCLineReader lineReader = new WSCLineReader(new ByteArrayInputStream(stdout));
+		assertEquals(Arrays.asList("[librpc] failed NT status", "Caption,Name,StartMode,State",
+				RUSSIAN + ",W32Time,Manual,Running", "", "DHCP Client,Dhcp,Auto,Running"),
+				readLines(lineReader));
+		assertEquals(WSCLineReader.Encoding.UTF_8, lineReader.getEncoding());
+
+		// Byte order mark.
+		stdout = bytes(new byte[] { (byte) 0xef, (byte) 0xbb, (byte) 0xbf }, "Caption\r\n", "UTF-8");
+		assertEquals(Arrays.asList("Caption"), readLines(new WSCLineReader(new ByteArrayInputStream(stdout))));
+		assertNull(new WSCLineReader(new ByteArrayInputStream(new byte[0])).readLine());
+	}
+
+	@Test
+	public void longLinesTest() throws IOException {
+		// Lines longer than the buffers of the reader.
+		StringBuilder longLine = new StringBuilder();
+		for (int i = 0; i < 5000; i++) {
+			longLine.append(i % 10 == 0 ? "\u00e9" : "e");
+		}
+		String text = longLine + "\n" + longLine.toString().replace('\u00e9', 'a') + "\n";
+		assertEquals(Arrays.asList(longLine.toString(), longLine.toString().replace('\u00e9', 'a')),
+				readLines(new WSCLineReader(new ByteArrayInputStream(text.getBytes(StandardCharsets.UTF_8)))));
+		assertEquals(Arrays.asList(longLine.toString(), longLine.toString().replace('\u00e9', 'a')),
+				readLines(new WSCLineReader(new ByteArrayInputStream(text.getBytes(StandardCharsets.UTF_16LE)))));
+	}
+
+	private static byte[] bytes(byte[] byteOrderMark, String text, String charset) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		bytes.write(byteOrderMark);
+		bytes.write(text.getBytes(charset));
+		return bytes.toByteArray();
+	}
+
+	private static List<String> readLines(WSCLineReader lineReader) throws IOException {
+		List<String> lines = new ArrayList<String>();
+		CharSequence line;
+		while ((line = lineReader.readLine()) != null) {
+			lines.add(line.toString());
+		}
+		return lines;
+	}
+}
@@ -0,0 +1,89 @@
+package com.uptimesoftware.uptime.plugin.test;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import com.uptimesoftware.uptime.plugin.WSCLineTokenizer;
+
+public class WSCLineTokenizerTest {
+
+	private WSCLineTokenizer windowsTokenizer = new WSCLineTokenizer(',', true);
+	private WSCLineTokenizer linuxTokenizer = new WSCLineTokenizer(',', false);
+
+	@Test
+	public void windowsLineTest() {
+		assertTrue(windowsTokenizer.tokenize("DEV-SYOON,Windows Update,wuauserv,Manual,Stopped"));
+		assertEquals("Windows Update", windowsTokenizer.getDisplayName().toString());
+		assertEquals("wuauserv", windowsTokenizer.getServiceName().toString());
+		assertEquals("Manual", windowsTokenizer.getStartupType().toString());
+		assertEquals("Stopped", windowsTokenizer.getStatus().toString());
+	}
+
+	@Test
+	public void displayNameContainsDelimiterTest() {
+		// Node is dropped, commas of the display name are kept.
+		assertTrue(windowsTokenizer
+				.tokenize("DEV-SYOON,Random, Display,  Awesome,RandomDisplayAwesome,Manual,Stopped"));
+		assertEquals("Random, Display,  Awesome", windowsTokenizer.getDisplayName().toString());
+		assertEquals("RandomDisplayAwesome", windowsTokenizer.getServiceName().toString());
+
+		assertTrue(linuxTokenizer.tokenize("Random, Display,  Awesome,RandomDisplayAwesome,Auto,Running"));
+		assertEquals("Random, Display,  Awesome", linuxTokenizer.getDisplayName().toString());
+		assertEquals("Auto", linuxTokenizer.getStartupType().toString());
+		assertEquals("Running", linuxTokenizer.getStatus().toString());
+	}
+
+	@Test
+	public void incorrectFormatTest() {
+		// Missing columns.
+		assertFalse(linuxTokenizer.tokenize("Windows Update,wuauserv,Manual"));
+		assertFalse(windowsTokenizer.tokenize("Windows Update,wuauserv,Manual,Stopped"));
+		assertFalse(linuxTokenizer.tokenize(""));
+		// Empty columns.
+		assertFalse(linuxTokenizer.tokenize("Windows Update,wuauserv,,Stopped"));
+		assertFalse(linuxTokenizer.tokenize(",wuauserv,Manual,Stopped"));
+		assertFalse(linuxTokenizer.tokenize("Windows Update,wuauserv,Manual,"));
+	}
+
+	@Test
+	public void processIdTest() {
+		WSCLineTokenizer tokenizer = new WSCLineTokenizer(',', true, true);
+		assertTrue(tokenizer.tokenize("DEV-SYOON,Windows Time,W32Time,860,Manual,Running"));
+		assertEquals("Windows Time", tokenizer.getDisplayName().toString());
+		assertEquals("W32Time", tokenizer.getServiceName().toString());
+		assertEquals(860, WSCLineTokenizer.parseLong(tokenizer.getProcessId()));
+		assertEquals("Manual", tokenizer.getStartupType().toString());
+		assertEquals("Running", tokenizer.getStatus().toString());
+		// The ProcessId column is missing.
+		assertFalse(tokenizer.tokenize("DEV-SYOON,Windows Time,W32Time,Manual,Running"));
+
+		assertEquals(0, WSCLineTokenizer.parseLong("0"));
+		assertEquals(-1, WSCLineTokenizer.parseLong(""));
+		assertEquals(-1, WSCLineTokenizer.parseLong("86O"));
+		assertEquals(-1, WSCLineTokenizer.parseLong("1234567890123456789"));
+	}
+
+	@Test
+	public void fieldIsViewTest() {
+		assertTrue(linuxTokenizer.tokenize("Windows Update,wuauserv,Manual,Stopped"));
+		WSCLineTokenizer.Field status = linuxTokenizer.getStatus();
+		assertEquals(7, status.length());
+		assertEquals('S', status.charAt(0));
+		assertEquals("top", status.subSequence(1, 4).toString());
+		// The same Field is re-used for the next line.
+		assertTrue(linuxTokenizer.tokenize("Uptime Data Store,MySQL,Auto,Running"));
+		assertSame(status, linuxTokenizer.getStatus());
+		assertEquals("Running", status.toString());
+	}
+
+	@Test
+	public void containsTest() {
+		assertTrue(linuxTokenizer.tokenize("Windows Update,wuauserv,Manual,Start Pending"));
+		assertTrue(WSCLineTokenizer.contains(linuxTokenizer.getStatus(), "Pending"));
+		assertTrue(WSCLineTokenizer.contains(linuxTokenizer.getStatus(), "Start Pending"));
+		assertTrue(WSCLineTokenizer.contains(linuxTokenizer.getStatus(), ""));
+		assertFalse(WSCLineTokenizer.contains(linuxTokenizer.getStatus(), "Stopped"));
+		assertFalse(WSCLineTokenizer.contains(linuxTokenizer.getStartupType(), "Manual "));
+	}
+}
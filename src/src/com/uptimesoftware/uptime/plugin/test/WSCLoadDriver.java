@@ -0,0 +1,119 @@
+package com.uptimesoftware.uptime.plugin.test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.uptimesoftware.uptime.plugin.MonitorWindowsServiceCheckAdvanced.UptimeMonitorWindowsServiceCheckAdvanced;
+import com.uptimesoftware.uptime.plugin.WSCHostExecutor;
+import com.uptimesoftware.uptime.plugin.WSCHostProbe;
+import com.uptimesoftware.uptime.plugin.WSCProcessRunner;
+import com.uptimesoftware.uptime.plugin.monitor.MonitorState;
+import com.uptimesoftware.uptime.plugin.monitor.Parameters;
+import com.uptimesoftware.uptime.plugin.test.FakeWmic.Recording;
+
+/**
+ * WSCLoadDriver class that runs thousands of monitors at the same time against FakeWmic, like the monitors of a large
+ * up.time installation firing at the top of the minute. Prints the percentiles of the monitor latency, the monitor
+ * states, and how many wmic processes were started and ran at the same time (see WSCProcessGovernor).
+ * 
+ * Usage : WSCLoadDriver [monitors] [hosts] [latency ms] [every Nth host hangs, 0 for none]. See the loadtest target of
+ * build.xml.
+ * 
+ * @author uptime software
+ */
+public class WSCLoadDriver {
+
+	private WSCLoadDriver() {
+	}
+
+	public static void main(String[] args) throws IOException, InterruptedException {
+		int monitors = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+		int hosts = args.length > 1 ? Integer.parseInt(args[1]) : 200;
+		long latencyMillis = args.length > 2 ? Long.parseLong(args[2]) : 50;
+		int hangEvery = args.length > 3 ? Integer.parseInt(args[3]) : 0;
+
+		FakeWmic fakeWmic = new FakeWmic(WmicRecordings.services("host"));
+		for (int i = 0; i < hosts; i++) {
+			Recording recording = WmicRecordings.services(hostName(i));
+			recording.setLatencyMillis(latencyMillis);
+			recording.setHang(hangEvery > 0 && i % hangEvery == 0);
+			fakeWmic.record(hostName(i), recording);
+		}
+		WSCProcessRunner.setProcessFactory(fakeWmic);
+		WSCHostProbe.setInstance(WSCHostProbe.DISABLED);
+		File wmicBinary = File.createTempFile("wmic", "");
+		wmicBinary.setExecutable(true);
+		wmicBinary.deleteOnExit();
+		System.setProperty("wsc.wmic", wmicBinary.getAbsolutePath());
+
+		final long[] latencies = new long[monitors];
+		final ConcurrentHashMap<String, AtomicInteger> states = new ConcurrentHashMap<String, AtomicInteger>();
+		final ConcurrentHashMap<String, AtomicInteger> errors = new ConcurrentHashMap<String, AtomicInteger>();
+		List<Runnable> checks = new ArrayList<Runnable>(monitors);
+		for (int i = 0; i < monitors; i++) {
+			final int index = i;
+			final Parameters params = new Parameters();
+			params.put("hostname", hostName(i % hosts));
+			params.put("domainName", "DOMAIN");
+			params.put("adminName", "admin");
+			params.put("password", "secret");
+			params.put("serviceDisplayName", "Windows.*");
+			params.put("timeout", "10");
+			checks.add(new Runnable() {
+				@Override
+				public void run() {
+					long startNanos = System.nanoTime();
+					UptimeMonitorWindowsServiceCheckAdvanced monitor = new UptimeMonitorWindowsServiceCheckAdvanced();
+					monitor.setParameters(params);
+					monitor.monitor();
+					latencies[index] = System.nanoTime() - startNanos;
+					count(states, String.valueOf(monitor.getState()));
+					if (monitor.getState() != MonitorState.OK) {
+						// Timed out commands and commands that waited too long for a slot.
+						count(errors, monitor.getMessage().replaceAll("[0-9]+", "N"));
+					}
+				}
+			});
+		}
+
+		long startNanos = System.nanoTime();
+		// Every monitor at the same time.
+		WSCHostExecutor.runAll(checks, monitors);
+		long wallMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+
+		Arrays.sort(latencies);
+		System.out.println("Monitors : " + monitors + " on " + hosts + " hosts, WMIC latency " + latencyMillis + " ms"
+				+ (hangEvery > 0 ? ", every " + hangEvery + "th host hangs" : ""));
+		System.out.println("Wall time : " + wallMillis + " ms");
+		System.out.println("Monitor latency (ms) : p50=" + percentile(latencies, 50) + " p90="
+				+ percentile(latencies, 90) + " p99=" + percentile(latencies, 99) + " max="
+				+ percentile(latencies, 100));
+		System.out.println("Monitor states : " + states);
+		System.out.println("Monitor errors : " + errors);
+		System.out.println("WMIC processes : started=" + fakeWmic.getStarted() + " maxRunning="
+				+ fakeWmic.getMaxRunning() + " stillRunning=" + fakeWmic.getRunning());
+	}
+
+	private static void count(ConcurrentHashMap<String, AtomicInteger> counts, String key) {
+		counts.putIfAbsent(key, new AtomicInteger());
+		counts.get(key).incrementAndGet();
+	}
+
+	private static String hostName(int index) {
+		return "host" + index;
+	}
+
+	private static long percentile(long[] sortedNanos, int percentile) {
+		if (sortedNanos.length == 0) {
+			return 0;
+		}
+		int index = (int) Math.ceil(percentile / 100.0 * sortedNanos.length) - 1;
+		return TimeUnit.NANOSECONDS.toMillis(sortedNanos[Math.max(0, index)]);
+	}
+}
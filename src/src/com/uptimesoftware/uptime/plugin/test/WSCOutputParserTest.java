@@ -0,0 +1,67 @@
+package com.uptimesoftware.uptime.plugin.test;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+
+import com.uptimesoftware.uptime.plugin.WSCOutputParser;
+import com.uptimesoftware.uptime.plugin.WSCOutputParser.LineType;
+
+public class WSCOutputParserTest {
+
+	private static final String COLUMN_NAMES = "Caption,Name,StartMode,State";
+
+	@Test
+	public void linuxOutputTest() {
+		WSCOutputParser outputParser = new WSCOutputParser(COLUMN_NAMES);
+		assertEquals(LineType.PREAMBLE, outputParser.classify("[librpc/rpc/dcerpc_util.c:1290] failed NT status"));
+		assertEquals(LineType.BLANK, outputParser.classify("  "));
+		assertEquals(LineType.CLASS_MARKER, outputParser.classify("CLASS: Win32_Service"));
+		assertFalse(outputParser.isColumnNamesFound());
+		assertEquals(LineType.COLUMN_NAMES, outputParser.classify(COLUMN_NAMES));
+		assertTrue(outputParser.isColumnNamesFound());
+
+		assertEquals(LineType.SERVICE, outputParser.classify("Windows Update,wuauserv,Manual,Stopped"));
+		// Display names that start like a class marker or the column names are services.
+		assertEquals(LineType.SERVICE, outputParser.classify("CLASSY Service,classy,Auto,Running"));
+		assertEquals(LineType.SERVICE, outputParser.classify("Caption Service,caption,Auto,Running"));
+		assertEquals(LineType.CLASS_MARKER, outputParser.classify("CLASS: Win32_Service"));
+		assertEquals(LineType.COLUMN_NAMES, outputParser.classify(COLUMN_NAMES));
+		assertEquals(LineType.CLASS_MARKER, outputParser.classify("CLASS: Win32_TerminalService"));
+		assertEquals("Win32_TerminalService", outputParser.getClassName());
+		assertEquals(LineType.SERVICE, outputParser.classify("Remote Desktop Services,TermService,Manual,Running"));
+
+		assertEquals(1, outputParser.getPreambleLines());
+		assertEquals(Arrays.asList("[librpc/rpc/dcerpc_util.c:1290] failed NT status"), outputParser.getDiagnostics());
+	}
+
+	@Test
+	public void windowsOutputTest() {
+		WSCOutputParser outputParser = new WSCOutputParser(COLUMN_NAMES);
+		assertEquals(LineType.BLANK, outputParser.classify(""));
+		assertEquals(LineType.COLUMN_NAMES, outputParser.classify("Node," + COLUMN_NAMES));
+		assertEquals(LineType.SERVICE, outputParser.classify("CORP-DC1,Windows Update,wuauserv,Manual,Stopped"));
+		assertEquals(LineType.SERVICE, outputParser.classify("NODE1,DHCP Client,Dhcp,Auto,Running"));
+		assertEquals(0, outputParser.getPreambleLines());
+	}
+
+	@Test
+	public void diagnosticsTest() {
+		// Authentication failed, the output is only a preamble.
+		WSCOutputParser outputParser = new WSCOutputParser(COLUMN_NAMES);
+		StringBuilder longLine = new StringBuilder();
+		for (int i = 0; i < 1000; i++) {
+			longLine.append('x');
+		}
+		for (int i = 0; i < 100; i++) {
+			assertEquals(LineType.PREAMBLE, outputParser.classify(longLine));
+		}
+		assertFalse(outputParser.isColumnNamesFound());
+		assertEquals(100, outputParser.getPreambleLines());
+		// The diagnostics are bounded.
+		assertTrue(outputParser.getDiagnostics().size() < 100);
+		assertTrue(outputParser.getDiagnostics().get(0).length() < 1000);
+	}
+}
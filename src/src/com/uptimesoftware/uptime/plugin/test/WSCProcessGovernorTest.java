@@ -0,0 +1,113 @@
+package com.uptimesoftware.uptime.plugin.test;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+import org.junit.Test;
+
+import com.uptimesoftware.uptime.plugin.WSCProcessGovernor;
+import com.uptimesoftware.uptime.plugin.WSCProcessGovernor.Priority;
+
+public class WSCProcessGovernorTest {
+
+	@Test
+	public void limitTest() throws InterruptedException {
+		WSCProcessGovernor governor = new WSCProcessGovernor(2, 1);
+		WSCProcessGovernor.Permit host1 = governor.acquire("host1", Priority.NORMAL, 1000);
+		assertNotNull(host1);
+		// host1 is at its own limit, host names are case-insensitive.
+		assertNull(governor.acquire("HOST1", Priority.CRITICAL, 50));
+		WSCProcessGovernor.Permit host2 = governor.acquire("host2", Priority.NORMAL, 1000);
+		assertNotNull(host2);
+		// Every slot is taken.
+		assertNull(governor.acquire("host3", Priority.CRITICAL, 50));
+		assertEquals(0, governor.getQueueLength());
+
+		host1.release();
+		// Releasing twice does not free a slot of another check.
+		host1.release();
+		assertNotNull(governor.acquire("host3", Priority.NORMAL, 1000));
+		assertNull(governor.acquire("host4", Priority.NORMAL, 50));
+	}
+
+	@Test
+	public void localeTest() throws InterruptedException {
+		Locale locale = Locale.getDefault();
+		// In Turkish, "I" is the upper case of a dotless i.
+		Locale.setDefault(new Locale("tr", "TR"));
+		try {
+			WSCProcessGovernor governor = new WSCProcessGovernor(2, 1);
+			assertNotNull(governor.acquire("winhost", Priority.NORMAL, 1000));
+			assertNull(governor.acquire("WINHOST", Priority.CRITICAL, 50));
+		} finally {
+			Locale.setDefault(locale);
+		}
+	}
+
+	@Test
+	public void priorityTest() throws InterruptedException {
+		WSCProcessGovernor governor = new WSCProcessGovernor(1, 1);
+		WSCProcessGovernor.Permit permit = governor.acquire("host1", Priority.NORMAL, 1000);
+		List<String> admitted = Collections.synchronizedList(new ArrayList<String>());
+		Thread low = waitForSlot(governor, "low", Priority.LOW, admitted);
+		awaitQueueLength(governor, 1);
+		Thread critical = waitForSlot(governor, "critical", Priority.CRITICAL, admitted);
+		awaitQueueLength(governor, 2);
+
+		// The critical check queued last but gets the slot first.
+		permit.release();
+		low.join(5000);
+		critical.join(5000);
+		assertEquals(2, admitted.size());
+		assertEquals("critical", admitted.get(0));
+		assertEquals("low", admitted.get(1));
+	}
+
+	@Test
+	public void slowHostTest() throws InterruptedException {
+		WSCProcessGovernor governor = new WSCProcessGovernor(2, 1);
+		WSCProcessGovernor.Permit slow = governor.acquire("slow", Priority.NORMAL, 1000);
+		List<String> admitted = Collections.synchronizedList(new ArrayList<String>());
+		// Waits behind the slow check of the same host.
+		Thread slowAgain = waitForSlot(governor, "slow", Priority.CRITICAL, admitted);
+		awaitQueueLength(governor, 1);
+
+		// Other hosts still get the free slot.
+		assertNotNull(governor.acquire("fast", Priority.LOW, 1000));
+		assertTrue(admitted.isEmpty());
+		slow.release();
+		slowAgain.join(5000);
+		assertEquals(1, admitted.size());
+	}
+
+	private Thread waitForSlot(final WSCProcessGovernor governor, final String host, final Priority priority,
+			final List<String> admitted) {
+		Thread thread = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					WSCProcessGovernor.Permit permit = governor.acquire(host, priority, 5000);
+					if (permit != null) {
+						admitted.add(host);
+						permit.release();
+					}
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			}
+		});
+		thread.start();
+		return thread;
+	}
+
+	private void awaitQueueLength(WSCProcessGovernor governor, int length) throws InterruptedException {
+		for (int i = 0; i < 500 && governor.getQueueLength() < length; i++) {
+			Thread.sleep(10);
+		}
+		assertEquals(length, governor.getQueueLength());
+	}
+}
@@ -0,0 +1,72 @@
+package com.uptimesoftware.uptime.plugin.test;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import com.uptimesoftware.uptime.plugin.WSCProcessMetrics;
+
+public class WSCProcessMetricsTest {
+
+	@Test
+	public void whereClauseTest() {
+		assertEquals("ProcessId=860 or ProcessId=1200", WSCProcessMetrics.whereClause(Arrays.asList(860L, 1200L)));
+		assertNull(WSCProcessMetrics.whereClause(Collections.<Long> emptyList()));
+		// Too many processes, every process is queried.
+		List<Long> processIds = new ArrayList<Long>();
+		for (long i = 1; i <= WSCProcessMetrics.MAX_PROCESS_IDS + 1; i++) {
+			processIds.add(i);
+		}
+		assertNull(WSCProcessMetrics.whereClause(processIds));
+	}
+
+	@Test
+	public void addTest() {
+		WSCProcessMetrics processMetrics = new WSCProcessMetrics(',');
+		processMetrics.start(0);
+		// Windows, with the Node column.
+		assertTrue(processMetrics.add("DEV-SYOON,156250,860,312500,50331648"));
+		// Linux.
+		assertTrue(processMetrics.add("0,1200,0,12582912"));
+		assertFalse(processMetrics.add("1200,0,12582912"));
+		assertFalse(processMetrics.add("0,1200,,12582912"));
+		assertFalse(processMetrics.add("0,svchost,0,12582912"));
+		// Nothing is visible before commit().
+		assertEquals(-1, processMetrics.getWorkingSet(860));
+		processMetrics.commit();
+		assertEquals(50331648, processMetrics.getWorkingSet(860));
+		assertEquals(12582912, processMetrics.getWorkingSet(1200));
+		assertEquals(-1, processMetrics.getWorkingSet(2300));
+	}
+
+	@Test
+	public void cpuUsageTest() {
+		WSCProcessMetrics processMetrics = new WSCProcessMetrics(',');
+		processMetrics.start(0);
+		assertTrue(processMetrics.add("1000000,860,1000000,50331648"));
+		assertTrue(processMetrics.add("5000000,1200,0,12582912"));
+		processMetrics.commit();
+		// The first sample has no CPU usage.
+		assertEquals(-1, processMetrics.getCpuUsage(860), 0);
+
+		// 0.5 s of CPU time in 10 s.
+		processMetrics.start(TimeUnit.SECONDS.toNanos(10));
+		assertTrue(processMetrics.add("3500000,860,3500000,50331648"));
+		// Another process with the same ID, its CPU time is lower.
+		assertTrue(processMetrics.add("1000,1200,0,12582912"));
+		processMetrics.commit();
+		assertEquals(5.0, processMetrics.getCpuUsage(860), 0.001);
+		assertEquals(-1, processMetrics.getCpuUsage(1200), 0);
+
+		// A sample that is not committed does not change anything.
+		processMetrics.start(TimeUnit.SECONDS.toNanos(20));
+		assertTrue(processMetrics.add("0,860,0,50331648"));
+		assertEquals(5.0, processMetrics.getCpuUsage(860), 0.001);
+	}
+}
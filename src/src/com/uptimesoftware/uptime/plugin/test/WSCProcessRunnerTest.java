@@ -0,0 +1,93 @@
+package com.uptimesoftware.uptime.plugin.test;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.uptimesoftware.uptime.plugin.WSCProcessFactory;
+import com.uptimesoftware.uptime.plugin.WSCProcessGovernor;
+import com.uptimesoftware.uptime.plugin.WSCProcessGovernor.Priority;
+import com.uptimesoftware.uptime.plugin.WSCProcessResult;
+import com.uptimesoftware.uptime.plugin.WSCProcessRunner;
+import com.uptimesoftware.uptime.plugin.test.FakeWmic.Recording;
+
+public class WSCProcessRunnerTest {
+
+	private static final List<String> COMMAND = Arrays.asList("wmic", "//host1",
+			"select Caption,Name,StartMode,State from Win32_Service");
+
+	private static final WSCProcessRunner.OutputHandler DRAIN = new WSCProcessRunner.OutputHandler() {
+		@Override
+		public void handle(InputStream stdout) throws IOException {
+			byte[] buffer = new byte[4096];
+			while (stdout.read(buffer) != -1) {
+				// Read until the end of the stream.
+			}
+		}
+	};
+
+	private FakeWmic fakeWmic;
+
+	@Before
+	public void setup() {
+		Recording hang = WmicRecordings.services("host1");
+		hang.setHang(true);
+		fakeWmic = new FakeWmic(hang);
+		WSCProcessRunner.setProcessFactory(fakeWmic);
+	}
+
+	@After
+	public void teardown() {
+		WSCProcessRunner.setProcessFactory(WSCProcessFactory.DEFAULT);
+	}
+
+	@Test
+	public void saturatedGovernorTest() throws IOException, InterruptedException {
+		WSCProcessGovernor governor = new WSCProcessGovernor(1, 1);
+		WSCProcessGovernor.Permit permit = governor.acquire("other", Priority.NORMAL, 1000);
+		assertNotNull(permit);
+
+		WSCProcessRunner runner = new WSCProcessRunner(300, 1024 * 1024, governor, "host1", Priority.NORMAL);
+		WSCProcessResult result = runner.run(COMMAND, DRAIN);
+		assertEquals(WSCProcessResult.Status.QUEUE_TIMED_OUT, result.getStatus());
+		assertTrue(result.getQueueWaitMillis() >= 250);
+		assertEquals(0, fakeWmic.getStarted());
+		permit.release();
+	}
+
+	@Test
+	public void queueWaitTest() throws IOException, InterruptedException {
+		WSCProcessGovernor governor = new WSCProcessGovernor(1, 1);
+		final WSCProcessGovernor.Permit permit = governor.acquire("other", Priority.NORMAL, 1000);
+		Thread releaser = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					Thread.sleep(600);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+				permit.release();
+			}
+		});
+		releaser.start();
+
+		// The process only gets what is left of the timeout after the wait for a slot.
+		WSCProcessRunner runner = new WSCProcessRunner(1000, 1024 * 1024, governor, "host1", Priority.NORMAL);
+		long startNanos = System.nanoTime();
+		WSCProcessResult result = runner.run(COMMAND, DRAIN);
+		long elapsedMillis = (System.nanoTime() - startNanos) / 1000000;
+		releaser.join(5000);
+		assertEquals(WSCProcessResult.Status.TIMED_OUT, result.getStatus());
+		assertTrue(result.getQueueWaitMillis() >= 500);
+		assertTrue("Took " + elapsedMillis + " ms", elapsedMillis < 1400);
+		assertEquals(1, fakeWmic.getStarted());
+	}
+}
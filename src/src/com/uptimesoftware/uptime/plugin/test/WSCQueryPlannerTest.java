@@ -0,0 +1,50 @@
+package com.uptimesoftware.uptime.plugin.test;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import com.uptimesoftware.uptime.plugin.WSCPluginParams;
+import com.uptimesoftware.uptime.plugin.WSCQueryPlanner;
+
+public class WSCQueryPlannerTest {
+
+	@Test
+	public void noFilterTest() {
+		assertNull(WSCQueryPlanner.whereClause(params(".*", null, null, null, null)));
+		assertNull(WSCQueryPlanner.whereClause(params(null, null, null, null, null)));
+	}
+
+	@Test
+	public void startupTypeAndServiceStatusTest() {
+		// "Auto services that are Stopped"
+		assertEquals("StartMode = 'Auto' AND State = 'Stopped'",
+				WSCQueryPlanner.whereClause(params(".*", "Auto", null, "Stopped", null)));
+		assertEquals("StartMode <> 'Disabled' AND State <> 'Running'",
+				WSCQueryPlanner.whereClause(params(".*", null, "Disabled", null, "Running")));
+		// Unknown values are left to the filters in Java.
+		assertEquals("State = 'Paused'", WSCQueryPlanner.whereClause(params(".*", "Auto ", null, "Paused", null)));
+	}
+
+	@Test
+	public void displayNameTest() {
+		// Plain names are compared with the display name and the service name.
+		assertEquals("(Caption = 'Windows Update' OR Name = 'Windows Update' OR Caption LIKE 'Uptime%')",
+				WSCQueryPlanner.whereClause(params("Windows Update,Uptime.*", null, null, null, null)));
+		// Escaped metacharacters are literals, quotes and LIKE wildcards are escaped.
+		assertEquals("(Caption = 'SQL Server (MSSQLSERVER)' OR Name = 'SQL Server (MSSQLSERVER)'"
+				+ " OR Caption LIKE 'O\\'Brien[_]%') AND State = 'Running'",
+				WSCQueryPlanner.whereClause(params("SQL Server \\(MSSQLSERVER\\),O'Brien_.*", null, null, "Running",
+						null)));
+		// One real regex means any service may match.
+		assertNull(WSCQueryPlanner.whereClause(params("Windows Update,Win.*Update", null, null, null, null)));
+		assertNull(WSCQueryPlanner.whereClause(params("Windows Update,\\d+", null, null, null, null)));
+		assertNull(WSCQueryPlanner.whereClause(params("Uptime\\.*", null, null, null, null)));
+	}
+
+	private WSCPluginParams params(String serviceDisplayName, String startupTypeInclude, String startupTypeExclude,
+			String serviceStatusInclude, String serviceStatusExclude) {
+		return new WSCPluginParams("host", "domain", "user", "pw", serviceDisplayName, startupTypeInclude,
+				startupTypeExclude, serviceStatusInclude, serviceStatusExclude);
+	}
+}
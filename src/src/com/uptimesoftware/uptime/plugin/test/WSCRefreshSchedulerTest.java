@@ -0,0 +1,109 @@
+package com.uptimesoftware.uptime.plugin.test;
+
+import static org.junit.Assert.*;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import com.uptimesoftware.uptime.plugin.WSCRefreshScheduler;
+
+public class WSCRefreshSchedulerTest {
+
+	private static final long MAX_INTERVAL_MILLIS = TimeUnit.MINUTES.toMillis(10);
+
+	@Test
+	public void intervalTest() {
+		WSCRefreshScheduler scheduler = new WSCRefreshScheduler(new Random(42));
+		WSCRefreshScheduler.Schedule schedule = new WSCRefreshScheduler.Schedule();
+		assertEquals(0, schedule.getIntervalMillis());
+		scheduler.refreshed("host1", schedule, false, MAX_INTERVAL_MILLIS, 0);
+		assertEquals(WSCRefreshScheduler.MIN_INTERVAL_MILLIS, schedule.getIntervalMillis());
+		// The interval doubles while the host is stable, up to the maximum.
+		scheduler.refreshed("host1", schedule, false, MAX_INTERVAL_MILLIS, 0);
+		assertEquals(2 * WSCRefreshScheduler.MIN_INTERVAL_MILLIS, schedule.getIntervalMillis());
+		for (int i = 0; i < 10; i++) {
+			scheduler.refreshed("HOST1", schedule, false, MAX_INTERVAL_MILLIS, 0);
+		}
+		assertEquals(MAX_INTERVAL_MILLIS, schedule.getIntervalMillis());
+		assertEquals(0, scheduler.getChangeCount("host1"));
+
+		// A change resets the interval, the next poll refreshes.
+		assertEquals(1000, scheduler.refreshed("host1", schedule, true, MAX_INTERVAL_MILLIS, 1000));
+		assertEquals(0, schedule.getIntervalMillis());
+		assertEquals(1, scheduler.getChangeCount("host1"));
+		assertEquals(1, schedule.getChangeCount());
+		// Other hosts keep their own changes.
+		assertEquals(0, scheduler.getChangeCount("host2"));
+	}
+
+	@Test
+	public void sharedHostTest() {
+		WSCRefreshScheduler scheduler = new WSCRefreshScheduler(new Random(42));
+		WSCRefreshScheduler.Schedule alone = new WSCRefreshScheduler.Schedule();
+		WSCRefreshScheduler.Schedule first = new WSCRefreshScheduler.Schedule();
+		WSCRefreshScheduler.Schedule second = new WSCRefreshScheduler.Schedule();
+		long shortMaxMillis = 4 * WSCRefreshScheduler.MIN_INTERVAL_MILLIS;
+		// Two monitors of the same host, one with a shorter maximum, get the schedule of a monitor alone on a host.
+		for (int i = 0; i < 4; i++) {
+			scheduler.refreshed("alone", alone, false, MAX_INTERVAL_MILLIS, 0);
+			scheduler.refreshed("host1", first, false, MAX_INTERVAL_MILLIS, 0);
+			scheduler.refreshed("host1", second, false, shortMaxMillis, 0);
+			assertEquals(alone.getIntervalMillis(), first.getIntervalMillis());
+			assertEquals(Math.min(alone.getIntervalMillis(), shortMaxMillis), second.getIntervalMillis());
+		}
+		// Doubled once per refresh of the monitor, not once per refresh of the host.
+		assertEquals(8 * WSCRefreshScheduler.MIN_INTERVAL_MILLIS, first.getIntervalMillis());
+
+		// A change found by one monitor restarts the interval of the other one at its next refresh.
+		scheduler.refreshed("host1", first, true, MAX_INTERVAL_MILLIS, 0);
+		assertEquals(1, scheduler.getChangeCount("host1"));
+		assertEquals(0, second.getChangeCount());
+		scheduler.refreshed("host1", second, false, shortMaxMillis, 0);
+		assertEquals(WSCRefreshScheduler.MIN_INTERVAL_MILLIS, second.getIntervalMillis());
+		assertEquals(1, second.getChangeCount());
+	}
+
+	@Test
+	public void boundTest() {
+		WSCRefreshScheduler scheduler = new WSCRefreshScheduler(new Random(42));
+		scheduler.refreshed("host0", new WSCRefreshScheduler.Schedule(), true, MAX_INTERVAL_MILLIS, 0);
+		for (int i = 1; i <= 10000; i++) {
+			scheduler.refreshed("host" + i, new WSCRefreshScheduler.Schedule(), false, MAX_INTERVAL_MILLIS, 0);
+		}
+		// Only the most recently used hosts are kept, a forgotten host has no changes.
+		assertEquals(10000, scheduler.size());
+		assertEquals(0, scheduler.getChangeCount("host0"));
+	}
+
+	@Test
+	public void jitterTest() {
+		WSCRefreshScheduler scheduler = new WSCRefreshScheduler(new Random(42));
+		long intervalNanos = TimeUnit.MILLISECONDS.toNanos(WSCRefreshScheduler.MIN_INTERVAL_MILLIS);
+		boolean spread = false;
+		long first = -1;
+		long maxDelayNanos = TimeUnit.SECONDS.toNanos(5);
+		for (int i = 0; i < 20; i++) {
+			// The first deadline also gets the delay of the first refresh.
+			long next = scheduler.refreshed("host1", new WSCRefreshScheduler.Schedule(), false, MAX_INTERVAL_MILLIS, 0);
+			assertTrue(next >= intervalNanos * 8 / 10 && next <= intervalNanos * 12 / 10 + maxDelayNanos);
+			spread |= first >= 0 && next != first;
+			first = next;
+		}
+		assertTrue(spread);
+
+		// The next deadlines only get the jitter.
+		WSCRefreshScheduler.Schedule schedule = new WSCRefreshScheduler.Schedule();
+		scheduler.refreshed("host1", schedule, false, MAX_INTERVAL_MILLIS, 0);
+		long next = scheduler.refreshed("host1", schedule, false, MAX_INTERVAL_MILLIS, 0);
+		assertTrue(next >= 2 * intervalNanos * 8 / 10 && next <= 2 * intervalNanos * 12 / 10);
+
+		for (int i = 0; i < 20; i++) {
+			long delay = scheduler.getInitialDelayMillis(MAX_INTERVAL_MILLIS);
+			assertTrue(delay >= 0 && delay < 5000);
+		}
+		// A short interval is not delayed longer than a tenth of it.
+		assertTrue(scheduler.getInitialDelayMillis(1000) < 100);
+	}
+}
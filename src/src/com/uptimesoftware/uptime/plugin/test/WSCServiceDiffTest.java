@@ -0,0 +1,68 @@
+package com.uptimesoftware.uptime.plugin.test;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.HashMap;
+
+import org.junit.Test;
+
+import com.uptimesoftware.uptime.plugin.WSCServiceDiff;
+
+public class WSCServiceDiffTest {
+
+	@Test
+	public void noChangeTest() {
+		HashMap<String, String[]> previous = result("Windows Update", "Auto", "Running");
+		HashMap<String, String[]> current = result("Windows Update", "Auto", "Running");
+		WSCServiceDiff diff = new WSCServiceDiff(previous, current);
+		assertTrue(diff.isEmpty());
+		assertEquals("", diff.getChanges());
+	}
+
+	@Test
+	public void changesTest() {
+		HashMap<String, String[]> previous = result("Windows Update", "Auto", "Running");
+		previous.putAll(result("Print Spooler", "Auto", "Running"));
+		previous.putAll(result("Fax", "Manual", "Stopped"));
+		HashMap<String, String[]> current = result("Windows Update", "Auto", "Stopped");
+		current.putAll(result("Print Spooler", "Disabled", "Running"));
+		current.putAll(result("Uptime Agent", "Auto", "Running"));
+
+		WSCServiceDiff diff = new WSCServiceDiff(previous, current);
+		assertFalse(diff.isEmpty());
+		assertEquals(Arrays.asList("Uptime Agent (Auto / Running)"), diff.getAdded());
+		assertEquals(Arrays.asList("Fax (Manual / Stopped)"), diff.getRemoved());
+		assertEquals(Arrays.asList("Print Spooler : Auto -> Disabled"), diff.getStartupTypeChanges());
+		assertEquals(Arrays.asList("Windows Update : Running -> Stopped"), diff.getStateTransitions());
+		String n = System.lineSeparator();
+		assertEquals("+ Uptime Agent (Auto / Running)" + n + "- Fax (Manual / Stopped)" + n
+				+ "Startup Type : Print Spooler : Auto -> Disabled" + n
+				+ "Status : Windows Update : Running -> Stopped", diff.getChanges());
+	}
+
+	@Test
+	public void displayNameTest() {
+		// Results are keyed by service name, the changes list the display names.
+		HashMap<String, String[]> previous = new HashMap<String, String[]>();
+		previous.put("wuauserv", new String[] { "Auto", "Running", "Windows Update" });
+		previous.put("Fax", new String[] { "Manual", "Stopped", "Fax" });
+		HashMap<String, String[]> current = new HashMap<String, String[]>();
+		current.put("wuauserv", new String[] { "Disabled", "Stopped", "Windows Update" });
+		current.put("Spooler", new String[] { "Auto", "Running", "Print Spooler" });
+
+		WSCServiceDiff diff = new WSCServiceDiff(previous, current);
+		assertEquals(Arrays.asList("Print Spooler (Auto / Running)"), diff.getAdded());
+		assertEquals(Arrays.asList("Fax (Manual / Stopped)"), diff.getRemoved());
+		assertEquals(Arrays.asList("Windows Update : Auto -> Disabled"), diff.getStartupTypeChanges());
+		assertEquals(Arrays.asList("Windows Update : Running -> Stopped"), diff.getStateTransitions());
+		assertFalse(diff.getChanges().contains("wuauserv"));
+		assertFalse(diff.getChanges().contains("+ Spooler"));
+	}
+
+	private HashMap<String, String[]> result(String displayName, String startupType, String status) {
+		HashMap<String, String[]> result = new HashMap<String, String[]>();
+		result.put(displayName, new String[] { startupType, status });
+		return result;
+	}
+}
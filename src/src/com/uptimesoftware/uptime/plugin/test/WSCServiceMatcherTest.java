@@ -0,0 +1,77 @@
+package com.uptimesoftware.uptime.plugin.test;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.regex.PatternSyntaxException;
+
+import org.junit.Test;
+
+import com.uptimesoftware.uptime.plugin.WSCServiceMatcher;
+
+public class WSCServiceMatcherTest {
+
+	@Test
+	public void matchesTest() {
+		WSCServiceMatcher matcher = new WSCServiceMatcher(Arrays.asList("Uptime.*", "SQL Server \\(.*\\)",
+				"Windows Update"));
+		assertTrue(matcher.matches("Uptime Data Collector"));
+		assertTrue(matcher.matches("SQL Server (MSSQLSERVER)"));
+		assertTrue(matcher.matches("Windows Update"));
+		// Same as String.matches(), the whole display name has to match.
+		assertFalse(matcher.matches("Windows Update Medic Service"));
+		assertFalse(matcher.matches("My Uptime Agent"));
+	}
+
+	@Test
+	public void literalTest() {
+		// Plain names and escaped metacharacters are literals, only the others are regexes.
+		WSCServiceMatcher matcher = new WSCServiceMatcher(Arrays.asList("Spooler", "SQL Server \\(MSSQLSERVER\\)",
+				"Uptime.*"));
+		assertEquals(new HashSet<String>(Arrays.asList("Spooler", "SQL Server (MSSQLSERVER)")), matcher.getLiterals());
+		assertEquals(Arrays.asList("Uptime.*"), matcher.getRegexes());
+		// A literal matches the display name or the service name, a regex only the display name.
+		assertTrue(matcher.matches("Print Spooler", "Spooler"));
+		assertTrue(matcher.matches("SQL Server (MSSQLSERVER)", "MSSQLSERVER"));
+		assertTrue(matcher.matches("Uptime Agent", "UptimeAgent"));
+		assertFalse(matcher.matches("Windows Update", "Uptime"));
+		assertFalse(matcher.matches("Print Spooler", "spooler"));
+		assertTrue(matcher.containsLiteral("Spooler"));
+		assertFalse(matcher.containsLiteral("Spool"));
+	}
+
+	@Test
+	public void notCombinableTest() {
+		// Backreference, \Q without \E and comments would change their meaning when joined with |.
+		WSCServiceMatcher matcher = new WSCServiceMatcher(Arrays.asList("(a)\\1", "\\Q.NET", "(?x)IIS # comment"));
+		assertTrue(matcher.matches("aa"));
+		assertTrue(matcher.matches(".NET"));
+		assertTrue(matcher.matches("IIS"));
+		assertFalse(matcher.matches("ab"));
+		assertFalse(matcher.matches("xNET"));
+	}
+
+	@Test
+	public void namedGroupTest() {
+		// Each regex is valid, but the same group name twice would not compile once joined.
+		WSCServiceMatcher matcher = new WSCServiceMatcher(Arrays.asList("(?<g>SQL).*", "(?<g>IIS).*"));
+		assertTrue(matcher.matches("SQL Server (MSSQLSERVER)"));
+		assertTrue(matcher.matches("IIS Admin Service"));
+		assertFalse(matcher.matches("Windows Update"));
+		// Lookbehinds are not named groups.
+		matcher = new WSCServiceMatcher(Arrays.asList(".*(?<=Win)dows.*", ".*(?<!x)Update"));
+		assertTrue(matcher.matches("Windows Update"));
+	}
+
+	@Test
+	public void emptyTest() {
+		WSCServiceMatcher matcher = new WSCServiceMatcher(Arrays.<String> asList());
+		assertFalse(matcher.matches("Windows Update"));
+	}
+
+	@Test(expected = PatternSyntaxException.class)
+	public void invalidRegexTest() {
+		new WSCServiceMatcher(Arrays.asList("Win.*", "*"));
+	}
+}
@@ -0,0 +1,78 @@
+package com.uptimesoftware.uptime.plugin.test;
+
+import static org.junit.Assert.*;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.junit.Test;
+
+import com.uptimesoftware.uptime.plugin.WSCServiceRenderer;
+
+public class WSCServiceRendererTest {
+
+	private static final String NL = System.lineSeparator();
+
+	@Test
+	public void sortedTest() {
+		Map<String, String[]> services = new LinkedHashMap<String, String[]>();
+		services.put("Windows Update", new String[] { "Manual", "Stopped" });
+		services.put("DHCP Client", new String[] { "Auto", "Running" });
+		services.put("Print Spooler", new String[] { "Auto", "Running" });
+		assertEquals("DHCP Client / Startup Type : Auto / Status : Running" + NL
+				+ "Print Spooler / Startup Type : Auto / Status : Running" + NL
+				+ "Windows Update / Startup Type : Manual / Status : Stopped",
+				new WSCServiceRenderer().render(services));
+		assertEquals("", new WSCServiceRenderer().render(new HashMap<String, String[]>()));
+	}
+
+	@Test
+	public void maxLinesTest() {
+		WSCServiceRenderer renderer = new WSCServiceRenderer();
+		renderer.setLimits(2, 0);
+		assertEquals("Service 0 / Startup Type : Auto / Status : Running" + NL
+				+ "Service 1 / Startup Type : Auto / Status : Running" + NL + "+3 more", renderer.render(services(5)));
+		// Exactly at the limit, nothing is left out.
+		assertEquals(2, renderer.render(services(2)).split(NL).length);
+	}
+
+	@Test
+	public void maxCharactersTest() {
+		WSCServiceRenderer renderer = new WSCServiceRenderer();
+		renderer.setLimits(0, 120);
+		String output = renderer.render(services(10));
+		assertTrue(output.length() <= 120);
+		// Two lines of 51 characters fit, with room for the last line.
+		assertTrue(output.endsWith(NL + "+8 more"));
+		// The first line alone is longer than the limit.
+		renderer.setLimits(0, 20);
+		assertEquals("+10 more", renderer.render(services(10)));
+	}
+
+	@Test
+	public void memoizedTest() {
+		WSCServiceRenderer renderer = new WSCServiceRenderer();
+		String output = renderer.render(services(100));
+		// Same services in another map, the output of the previous call is re-used.
+		assertSame(output, renderer.render(new LinkedHashMap<String, String[]>(services(100))));
+
+		Map<String, String[]> changed = services(100);
+		changed.put("Service 42", new String[] { "Auto", "Stopped" });
+		String changedOutput = renderer.render(changed);
+		assertNotSame(output, changedOutput);
+		assertTrue(changedOutput.contains("Service 42 / Startup Type : Auto / Status : Stopped"));
+
+		// New limits, the output is built again.
+		renderer.setLimits(10, 0);
+		assertTrue(renderer.render(changed).endsWith("+90 more"));
+	}
+
+	private Map<String, String[]> services(int count) {
+		Map<String, String[]> services = new HashMap<String, String[]>();
+		for (int i = count - 1; i >= 0; i--) {
+			services.put(String.format("Service %d", i), new String[] { "Auto", "Running" });
+		}
+		return services;
+	}
+}
@@ -0,0 +1,150 @@
+package com.uptimesoftware.uptime.plugin.test;
+
+import static org.junit.Assert.*;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.uptimesoftware.uptime.plugin.WSCPluginParams;
+import com.uptimesoftware.uptime.plugin.WSCServiceSnapshot;
+import com.uptimesoftware.uptime.plugin.WSCServiceSnapshotCache;
+
+public class WSCServiceSnapshotCacheTest {
+
+	private static final String KEY = "host|domain|user|digest";
+
+	private WSCServiceSnapshotCache cache = WSCServiceSnapshotCache.getInstance();
+	private AtomicInteger fetches = new AtomicInteger();
+
+	@Before
+	public void setup() {
+		// clear for re-use.
+		cache.clear();
+		fetches.set(0);
+	}
+
+	@Test
+	public void singleFlightTest() throws InterruptedException {
+		final CountDownLatch started = new CountDownLatch(1);
+		final CountDownLatch release = new CountDownLatch(1);
+		final Callable<WSCServiceSnapshot> slowLoader = new Callable<WSCServiceSnapshot>() {
+			@Override
+			public WSCServiceSnapshot call() throws Exception {
+				fetches.incrementAndGet();
+				started.countDown();
+				release.await();
+				return newSnapshot();
+			}
+		};
+
+		// 8 monitors of the same host poll at the same time.
+		final WSCServiceSnapshot[] snapshots = new WSCServiceSnapshot[8];
+		Thread[] monitors = new Thread[snapshots.length];
+		for (int i = 0; i < monitors.length; i++) {
+			final int index = i;
+			monitors[i] = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						snapshots[index] = cache.get(KEY, 60000, slowLoader);
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+					}
+				}
+			});
+			monitors[i].start();
+		}
+		started.await();
+		release.countDown();
+		for (Thread monitor : monitors) {
+			monitor.join();
+		}
+
+		// Only one wmic command, every monitor got the same snapshot.
+		assertEquals(1, fetches.get());
+		for (WSCServiceSnapshot snapshot : snapshots) {
+			assertSame(snapshots[0], snapshot);
+		}
+	}
+
+	@Test
+	public void maxAgeTest() throws InterruptedException {
+		WSCServiceSnapshot first = cache.get(KEY, 60000, countingLoader(newSnapshot()));
+		// Fresh enough, shared.
+		assertSame(first, cache.get(KEY, 60000, countingLoader(newSnapshot())));
+		assertEquals(1, fetches.get());
+		// Monitor does not accept the age of cached snapshot, fetch again.
+		Thread.sleep(5);
+		assertNotSame(first, cache.get(KEY, 0, countingLoader(newSnapshot())));
+		assertEquals(2, fetches.get());
+	}
+
+	@Test
+	public void failureIsNotCachedTest() throws InterruptedException {
+		WSCServiceSnapshot failed = cache.get(KEY, 60000,
+				countingLoader(WSCServiceSnapshot.failed("Authentication failed")));
+		assertFalse(failed.isSuccessful());
+		assertEquals("Authentication failed", failed.getErrorMessage());
+		// Next poll tries again.
+		assertTrue(cache.get(KEY, 60000, countingLoader(newSnapshot())).isSuccessful());
+		assertEquals(2, fetches.get());
+	}
+
+	@Test
+	public void removeExpiredTest() throws InterruptedException {
+		cache.get(KEY, 50, countingLoader(newSnapshot()));
+		Thread.sleep(100);
+		cache.get("host2|domain|user|digest", 50, countingLoader(newSnapshot()));
+		assertEquals(2, cache.size());
+		// Older than any monitor accepts, the snapshot of the first key is removed. The second one is still shared.
+		cache.removeExpired();
+		assertEquals(1, cache.size());
+		cache.get("host2|domain|user|digest", 50, countingLoader(newSnapshot()));
+		assertEquals(2, fetches.get());
+	}
+
+	@Test
+	public void keyOfTest() {
+		WSCPluginParams params = new WSCPluginParams("HOST", "domain", "user", "pw", null, null, null, null, null);
+		WSCPluginParams sameHost = new WSCPluginParams("host", "domain", "user", "pw", ".*", "Auto", null, null, null);
+		WSCPluginParams otherPassword = new WSCPluginParams("host", "domain", "user", "pw2", null, null, null, null,
+				null);
+		// Filters do not matter, host name is case insensitive.
+		assertEquals(WSCServiceSnapshotCache.keyOf(params), WSCServiceSnapshotCache.keyOf(sameHost));
+		assertFalse(WSCServiceSnapshotCache.keyOf(params).equals(WSCServiceSnapshotCache.keyOf(otherPassword)));
+		// Password is not kept in clear text, nor as its plain SHA-256.
+		assertFalse(WSCServiceSnapshotCache.keyOf(params).contains("pw"));
+		assertFalse(WSCServiceSnapshotCache.keyOf(params).contains(
+				"30c952fab122c3f9759f02a6d95c3758b246b4fee239957b2d4fee46e26170c4"));
+		// Logs only show host name, domain and user name.
+		assertEquals("host|domain|user", WSCServiceSnapshotCache.describe(WSCServiceSnapshotCache.keyOf(params)));
+	}
+
+	@Test
+	public void keyOfSeparatorTest() {
+		WSCPluginParams params = new WSCPluginParams("host", "D|x", "y", "pw", null, null, null, null, null);
+		WSCPluginParams otherUser = new WSCPluginParams("host", "D", "x|y", "pw", null, null, null, null, null);
+		// Same credentials joined with the separator are still other credentials.
+		assertFalse(WSCServiceSnapshotCache.keyOf(params).equals(WSCServiceSnapshotCache.keyOf(otherUser)));
+	}
+
+	private Callable<WSCServiceSnapshot> countingLoader(final WSCServiceSnapshot snapshot) {
+		return new Callable<WSCServiceSnapshot>() {
+			@Override
+			public WSCServiceSnapshot call() {
+				fetches.incrementAndGet();
+				return snapshot;
+			}
+		};
+	}
+
+	private WSCServiceSnapshot newSnapshot() {
+		WSCServiceSnapshot.Builder services = new WSCServiceSnapshot.Builder();
+		services.add("Windows Update", "wuauserv", "Manual", "Stopped");
+		return services.build();
+	}
+}
@@ -0,0 +1,55 @@
+package com.uptimesoftware.uptime.plugin.test;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import com.uptimesoftware.uptime.plugin.WSCServiceSnapshot;
+import com.uptimesoftware.uptime.plugin.WSCServiceStatus;
+import com.uptimesoftware.uptime.plugin.WSCStartupType;
+import com.uptimesoftware.uptime.plugin.WSCStringPool;
+
+public class WSCServiceSnapshotTest {
+
+	@Test
+	public void snapshotTest() {
+		WSCServiceSnapshot.Builder builder = new WSCServiceSnapshot.Builder();
+		// More services than the initial capacity of the builder.
+		for (int i = 0; i < 1000; i++) {
+			builder.add(new StringBuilder("Service ").append(i), "svc" + i, "Auto", i % 2 == 0 ? "Running"
+					: "Start Pending");
+		}
+		builder.add("Odd Service", "odd", "Delayed", "Degraded");
+		WSCServiceSnapshot snapshot = builder.build();
+
+		assertEquals(1001, snapshot.size());
+		assertEquals("Service 999", snapshot.getDisplayName(999));
+		assertEquals("svc999", snapshot.getServiceName(999));
+		assertEquals(WSCStartupType.AUTO, snapshot.getStartupType(999));
+		assertEquals(WSCServiceStatus.START_PENDING, snapshot.getStatus(999));
+		assertEquals(WSCServiceStatus.RUNNING, snapshot.getStatus(0));
+		// Values that WMI does not document.
+		assertEquals(WSCStartupType.UNKNOWN, snapshot.getStartupType(1000));
+		assertEquals(WSCServiceStatus.UNKNOWN, snapshot.getStatus(1000));
+
+		assertTrue(WSCServiceSnapshot.failed("Authentication failed").size() == 0);
+	}
+
+	@Test
+	public void sharedStringsTest() {
+		// Two hosts with the same services share the Strings.
+		WSCServiceSnapshot.Builder host1 = new WSCServiceSnapshot.Builder();
+		host1.add(new StringBuilder("Windows Update"), "wuauserv", "Manual", "Stopped");
+		WSCServiceSnapshot.Builder host2 = new WSCServiceSnapshot.Builder();
+		host2.add(new StringBuilder("Windows Update"), "wuauserv", "Auto", "Running");
+		assertSame(host1.build().getDisplayName(0), host2.build().getDisplayName(0));
+		assertSame(WSCStringPool.getInstance().intern("wuauserv"), host1.build().getServiceName(0));
+
+		String[] values = WSCStringPool.getInstance().resultValues(new StringBuilder("Windows Update"),
+				WSCStartupType.MANUAL, WSCServiceStatus.STOPPED);
+		assertArrayEquals(new String[] { "Manual", "Stopped", "Windows Update" }, values);
+		assertSame(values, WSCStringPool.getInstance().resultValues("Windows Update", WSCStartupType.MANUAL,
+				WSCServiceStatus.STOPPED));
+		assertSame(host1.build().getDisplayName(0), values[2]);
+	}
+}
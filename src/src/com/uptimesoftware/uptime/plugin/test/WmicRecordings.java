@@ -0,0 +1,196 @@
+package com.uptimesoftware.uptime.plugin.test;
+
+import java.nio.charset.StandardCharsets;
+
+import org.apache.commons.lang.SystemUtils;
+
+import com.uptimesoftware.uptime.plugin.test.FakeWmic.Recording;
+
+/**
+ * WmicRecordings class with outputs of wmic commands as the plug-in gets them on Windows and on Linux, for FakeWmic.
+ * The Linux outputs keep what the WMIC client really prints : error messages before the column names, "CLASS:
+ * Win32_Service" and the column names again in the middle of the list, and a Win32_TerminalService section.
+ * 
+ * @author uptime software
+ */
+public class WmicRecordings {
+
+	private static final String NL = System.lineSeparator();
+	private static final String WINDOWS_NL = "\r\r\n";
+	private static final String COLUMN_NAMES = "Caption,Name,StartMode,State";
+	private static final String PROCESS_ID_COLUMN_NAMES = "Caption,Name,ProcessId,StartMode,State";
+	private static final String PROCESS_COLUMN_NAMES = "KernelModeTime,ProcessId,UserModeTime,WorkingSetSize";
+
+	/**
+	 * Services of the recordings, "Caption,Name,StartMode,State". The last one is listed as Win32_TerminalService on
+	 * Linux.
+	 */
+	public static final String[] SERVICES = { "Windows Update,wuauserv,Manual,Stopped",
+			"Windows Firewall,MpsSvc,Auto,Running", "Windows Time,W32Time,Manual,Running",
+			"Print Spooler,Spooler,Auto,Running", "DHCP Client,Dhcp,Auto,Running",
+			"Windows Installer,msiserver,Manual,Stopped", "Remote Desktop Services,TermService,Manual,Running" };
+
+	/**
+	 * ProcessId of each of the SERVICES, 0 for the stopped ones. Windows Time, DHCP Client and Remote Desktop Services
+	 * share a svchost process.
+	 */
+	public static final long[] PROCESS_IDS = { 0, 1200, 860, 2300, 860, 0, 860 };
+
+	/**
+	 * Working set in bytes of each running process, by ProcessId.
+	 */
+	public static final long[][] WORKING_SETS = { { 860, 48 * 1024 * 1024 }, { 1200, 12 * 1024 * 1024 },
+			{ 2300, 8 * 1024 * 1024 } };
+
+	// Printed by the WMIC client on Linux before the output, even when the query works.
+	private static final String LINUX_PREAMBLE = "[librpc/rpc/dcerpc_util.c:1290:dcerpc_pipe_auth_recv()] "
+			+ "dcerpc_pipe_auth_recv: failed NT status (c0000022) in dcerpc_pipe_auth_recv" + NL
+			+ "[librpc/rpc/dcerpc_connect.c:790:dcerpc_pipe_auth_recv()] failed NT status (c0000022) in "
+			+ "dcerpc_pipe_auth_recv" + NL;
+
+	private WmicRecordings() {
+	}
+
+	/**
+	 * Get the output of a host with all SERVICES, in the format of the operating system the test runs on.
+	 * 
+	 * @param host
+	 *            Host name, output in the Node column on Windows.
+	 * @return Recording.
+	 */
+	public static Recording services(String host) {
+		return SystemUtils.IS_OS_WINDOWS ? windowsServices(host) : linuxServices();
+	}
+
+	/**
+	 * Get the output of a host with the given services, in the format of the operating system the test runs on.
+	 * 
+	 * @param host
+	 *            Host name, output in the Node column on Windows.
+	 * @param services
+	 *            Services, "Caption,Name,StartMode,State".
+	 * @return Recording.
+	 */
+	public static Recording services(String host, String... services) {
+		if (SystemUtils.IS_OS_WINDOWS) {
+			return windowsOutput(host, COLUMN_NAMES, services);
+		}
+		return linuxOutput("Win32_Service", COLUMN_NAMES, services);
+	}
+
+	/**
+	 * Get the output of "wmic /node:host Service GET Caption,Name,StartMode,State /format:csv", in UTF-16LE with a
+	 * byte order mark and "\r\r\n" line endings like Windows WMIC.
+	 * 
+	 * @param host
+	 *            Host name, output in the Node column.
+	 * @return Recording.
+	 */
+	public static Recording windowsServices(String host) {
+		return windowsOutput(host, COLUMN_NAMES, SERVICES);
+	}
+
+	/**
+	 * Get the output of "wmic //host "select Caption,Name,StartMode,State from Win32_Service" --delimiter=," of the
+	 * WMIC client on Linux.
+	 * 
+	 * @return Recording.
+	 */
+	public static Recording linuxServices() {
+		StringBuilder stdout = new StringBuilder(LINUX_PREAMBLE);
+		for (int i = 0; i < SERVICES.length - 1; i++) {
+			if (i % 3 == 0) {
+				// The WMIC client repeats the class and the column names every few services.
+				stdout.append("CLASS: Win32_Service" + NL + "Caption,Name,StartMode,State" + NL);
+			}
+			stdout.append(SERVICES[i] + NL);
+		}
+		stdout.append("CLASS: Win32_TerminalService" + NL + "Caption,Name,StartMode,State" + NL);
+		stdout.append(SERVICES[SERVICES.length - 1] + NL);
+		return new Recording(stdout.toString(), "", 0);
+	}
+
+	/**
+	 * Get the output of a host with all SERVICES and their PROCESS_IDS, "Caption,Name,ProcessId,StartMode,State", in
+	 * the format of the operating system the test runs on.
+	 * 
+	 * @param host
+	 *            Host name, output in the Node column on Windows.
+	 * @return Recording.
+	 */
+	public static Recording servicesWithProcessIds(String host) {
+		String[] rows = new String[SERVICES.length];
+		for (int i = 0; i < SERVICES.length; i++) {
+			// ProcessId is between Name and StartMode.
+			int startMode = SERVICES[i].lastIndexOf(',', SERVICES[i].lastIndexOf(',') - 1);
+			rows[i] = SERVICES[i].substring(0, startMode) + "," + PROCESS_IDS[i] + SERVICES[i].substring(startMode);
+		}
+		if (SystemUtils.IS_OS_WINDOWS) {
+			return windowsOutput(host, PROCESS_ID_COLUMN_NAMES, rows);
+		}
+		return linuxOutput("Win32_Service", PROCESS_ID_COLUMN_NAMES, rows);
+	}
+
+	/**
+	 * Get the output of the Win32_Process query of the processes in WORKING_SETS, in the format of the operating
+	 * system the test runs on.
+	 * 
+	 * @param host
+	 *            Host name, output in the Node column on Windows.
+	 * @param cpuTime
+	 *            KernelModeTime and UserModeTime of every process, in 100 ns units.
+	 * @return Recording.
+	 */
+	public static Recording processes(String host, long cpuTime) {
+		String[] rows = new String[WORKING_SETS.length];
+		for (int i = 0; i < WORKING_SETS.length; i++) {
+			rows[i] = cpuTime + "," + WORKING_SETS[i][0] + "," + cpuTime + "," + WORKING_SETS[i][1];
+		}
+		if (SystemUtils.IS_OS_WINDOWS) {
+			return windowsOutput(host, PROCESS_COLUMN_NAMES, rows);
+		}
+		return linuxOutput("Win32_Process", PROCESS_COLUMN_NAMES, rows);
+	}
+
+	/**
+	 * Get the output of a wmic command with a wrong user name or password, in the format of the operating system the
+	 * test runs on.
+	 * 
+	 * @return Recording.
+	 */
+	public static Recording authenticationFailed() {
+		if (SystemUtils.IS_OS_WINDOWS) {
+			return new Recording(NL, "Node - HOST" + NL + "ERROR:" + NL + "Description = Access is denied." + NL,
+					-2147024891);
+		}
+		return new Recording(LINUX_PREAMBLE + "[wmi/wmic.c:196:main()] ERROR: Login to remote object." + NL,
+				"NTSTATUS: NT_STATUS_LOGON_FAILURE - Logon failure" + NL, 1);
+	}
+
+	/**
+	 * Get the output of Windows WMIC with "/format:csv", in UTF-16LE with a byte order mark and "\r\r\n" line endings.
+	 */
+	private static Recording windowsOutput(String host, String columnNames, String[] rows) {
+		// Byte order mark, then an empty line before the column names.
+		StringBuilder stdout = new StringBuilder("\ufeff" + WINDOWS_NL + "Node," + columnNames + WINDOWS_NL);
+		for (String row : rows) {
+			stdout.append(host.toUpperCase() + "," + row + WINDOWS_NL);
+		}
+		return new Recording(stdout.toString().getBytes(StandardCharsets.UTF_16LE), new byte[0], 0);
+	}
+
+	/**
+	 * Get the output of the WMIC client on Linux with one class, the class and the column names repeated every few
+	 * rows.
+	 */
+	private static Recording linuxOutput(String className, String columnNames, String[] rows) {
+		StringBuilder stdout = new StringBuilder(LINUX_PREAMBLE);
+		for (int i = 0; i < rows.length; i++) {
+			if (i % 3 == 0) {
+				stdout.append("CLASS: " + className + NL + columnNames + NL);
+			}
+			stdout.append(rows[i] + NL);
+		}
+		return new Recording(stdout.toString(), "", 0);
+	}
+}